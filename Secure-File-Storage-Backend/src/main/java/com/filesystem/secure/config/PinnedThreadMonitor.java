@@ -0,0 +1,85 @@
+package com.filesystem.secure.config;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordedFrame;
+import jdk.jfr.consumer.RecordedStackTrace;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jdk.jfr.consumer.RecordingStream;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+
+/**
+ * Reports virtual threads that stay pinned to their carrier longer than the threshold,
+ * typically by blocking inside a {@code synchronized} block in a JDBC driver or crypto
+ * provider. Listens to the JFR {@code jdk.VirtualThreadPinned} event in-process and
+ * logs the top of the offending stack, so no recording file or JVM flag is needed.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "diagnostics.pinned-threads.enabled", havingValue = "true")
+public class PinnedThreadMonitor {
+
+    private static final String PINNED_EVENT = "jdk.VirtualThreadPinned";
+    private static final int LOGGED_FRAMES = 8;
+
+    private final Duration threshold;
+    private final LongAdder pinnedCount = new LongAdder();
+    private RecordingStream recordingStream;
+
+    public PinnedThreadMonitor(@Value("${diagnostics.pinned-threads.threshold:20ms}") Duration threshold,
+                               MeterRegistry registry) {
+        this.threshold = threshold;
+        FunctionCounter.builder("jvm.threads.virtual.pinned", pinnedCount, LongAdder::sum)
+                .description("Virtual threads pinned to their carrier for longer than the threshold")
+                .register(registry);
+    }
+
+    @PostConstruct
+    public void start() {
+        recordingStream = new RecordingStream();
+        recordingStream.enable(PINNED_EVENT).withThreshold(threshold).withStackTrace();
+        recordingStream.onEvent(PINNED_EVENT, this::onPinned);
+        recordingStream.startAsync();
+        log.info("Reporting virtual threads pinned for longer than {}", threshold);
+    }
+
+    @PreDestroy
+    public void stop() {
+        recordingStream.close();
+    }
+
+    /**
+     * @return the number of pinning events seen since startup
+     */
+    public long getPinnedCount() {
+        return pinnedCount.sum();
+    }
+
+    private void onPinned(RecordedEvent event) {
+        pinnedCount.increment();
+        log.warn("Virtual thread pinned for {} ms at:\n\t{}", event.getDuration().toMillis(), topFrames(event.getStackTrace()));
+    }
+
+    private static String topFrames(RecordedStackTrace stackTrace) {
+        if (stackTrace == null) {
+            return "<no stack trace>";
+        }
+        return stackTrace.getFrames().stream()
+                .limit(LOGGED_FRAMES)
+                .map(PinnedThreadMonitor::describe)
+                .collect(Collectors.joining("\n\t"));
+    }
+
+    private static String describe(RecordedFrame frame) {
+        return frame.getMethod().getType().getName() + "." + frame.getMethod().getName() + ":" + frame.getLineNumber();
+    }
+}
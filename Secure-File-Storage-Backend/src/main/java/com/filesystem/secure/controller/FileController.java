@@ -1,17 +1,33 @@
 package com.filesystem.secure.controller;
 
+import com.filesystem.secure.model.FileSummary;
 import com.filesystem.secure.model.SecureFile;
+import com.filesystem.secure.repository.FileQuery;
+import com.filesystem.secure.service.CompressionService;
+import com.filesystem.secure.service.ExpiredFileSweeper;
+import com.filesystem.secure.service.FileMetrics;
+import com.filesystem.secure.service.FileListingCache;
 import com.filesystem.secure.service.FileService;
+import com.filesystem.secure.service.UsageLimiter;
+import jakarta.servlet.http.HttpServletRequest;
 import lombok.RequiredArgsConstructor;
-import org.springframework.core.io.ByteArrayResource;
-import org.springframework.core.io.Resource;
+import org.springframework.http.CacheControl;
 import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpRange;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.IOException;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
 import java.util.stream.Collectors;
 
 @RestController
@@ -21,112 +37,409 @@ import java.util.stream.Collectors;
 public class FileController {
 
     private final FileService fileService;
+    private final FileMetrics fileMetrics;
+    private final UsageLimiter usageLimiter;
+    private final ExpiredFileSweeper expiredFileSweeper;
 
+    /**
+     * Uploads a file, optionally expiring after {@code expiresIn}, an ISO-8601 duration such as {@code PT24H}
+     */
     @PostMapping("/upload")
     public ResponseEntity<FileResponse> uploadFile(
             @RequestParam("file") MultipartFile file,
-            @RequestParam("userId") String userId) {
+            @RequestParam("userId") String userId,
+            @RequestParam(value = "expiresIn", required = false) Duration expiresIn,
+            HttpServletRequest request) {
         try {
-            SecureFile savedFile = fileService.uploadFile(file, userId);
+            if (!UploadAdmissionInterceptor.isAdmitted(request)) {
+                usageLimiter.acquireUpload(userId, file.getSize());
+            }
+            SecureFile savedFile = fileService.uploadFile(file, userId, expiresIn);
             FileResponse response = new FileResponse(
                     savedFile.getId(),
                     savedFile.getOriginalFileName(),
                     savedFile.getContentType(),
                     savedFile.getFileSize(),
                     savedFile.getUploadDate().toString(),
-                    savedFile.getDownloadKey()
+                    savedFile.getDownloadKey(),
+                    formatDateTime(savedFile.getExpiresAt())
             );
             return ResponseEntity.ok(response);
+        } catch (UsageLimiter.RateLimitExceededException | UsageLimiter.QuotaExceededException e) {
+            return usageLimitRejection(e, fileMetrics);
+        } catch (Exception e) {
+            fileMetrics.recordRejected("bad_request");
+            return ResponseEntity.badRequest().build();
+        }
+    }
+
+    /**
+     * Uploads a folder's worth of files in one request, see {@link FileService#uploadFiles(List, String, Duration)}
+     */
+    @PostMapping("/upload/batch")
+    public ResponseEntity<List<FileResponse>> uploadFiles(
+            @RequestParam("files") List<MultipartFile> files,
+            @RequestParam("userId") String userId,
+            @RequestParam(value = "expiresIn", required = false) Duration expiresIn,
+            HttpServletRequest request) {
+        try {
+            if (!UploadAdmissionInterceptor.isAdmitted(request)) {
+                usageLimiter.acquireUpload(userId, files.stream().mapToLong(MultipartFile::getSize).sum());
+            }
+            List<FileResponse> response = fileService.uploadFiles(files, userId, expiresIn).stream()
+                    .map(savedFile -> new FileResponse(
+                            savedFile.getId(),
+                            savedFile.getOriginalFileName(),
+                            savedFile.getContentType(),
+                            savedFile.getFileSize(),
+                            savedFile.getUploadDate().toString(),
+                            savedFile.getDownloadKey(),
+                            formatDateTime(savedFile.getExpiresAt())
+                    ))
+                    .collect(Collectors.toList());
+            return ResponseEntity.ok(response);
+        } catch (UsageLimiter.RateLimitExceededException | UsageLimiter.QuotaExceededException e) {
+            return usageLimitRejection(e, fileMetrics);
         } catch (Exception e) {
+            fileMetrics.recordRejected("bad_request");
             return ResponseEntity.badRequest().build();
         }
     }
+
+    /**
+     * Lists a user's files. Polling clients should send the last ETag in If-None-Match,
+     * an unchanged listing is then answered with 304 without querying the database.
+     * ETags are only recognised by the instance that issued them, see {@link FileListingCache}.
+     */
     @GetMapping("/user/{userId}")
-    public ResponseEntity<List<FileResponse>> getFilesByUserId(@PathVariable String userId) {
+    public ResponseEntity<List<FileResponse>> getFilesByUserId(
+            @PathVariable String userId,
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        String eTag = fileService.getListingETag(userId);
+        if (matchesETag(ifNoneMatch, eTag)) {
+            return listingHeaders(ResponseEntity.status(HttpStatus.NOT_MODIFIED), eTag).build();
+        }
         List<FileResponse> files = fileService.getFilesByUserId(userId).stream()
-                .map(file -> new FileResponse(
-                        file.getId(),
-                        file.getOriginalFileName(),
-                        file.getContentType(),
-                        file.getFileSize(),
-                        file.getUploadDate().toString(),
-                        file.getDownloadKey()
-                ))
+                .map(this::toFileResponse)
                 .collect(Collectors.toList());
         
-        return ResponseEntity.ok(files);
+        return listingHeaders(ResponseEntity.ok(), eTag).body(files);
+    }
+
+    @GetMapping("/user/{userId}/page")
+    public ResponseEntity<FilePageResponse> getFilePageByUserId(
+            @PathVariable String userId,
+            @RequestParam(value = "cursor", required = false) String cursor,
+            @RequestParam(value = "limit", defaultValue = "50") int limit,
+            @RequestParam(value = "contentType", required = false) String contentType,
+            @RequestParam(value = "minSize", required = false) Long minSize,
+            @RequestParam(value = "maxSize", required = false) Long maxSize,
+            @RequestParam(value = "namePrefix", required = false) String namePrefix,
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        // Any page of the user's files is unchanged while the listing version is
+        String eTag = fileService.getListingETag(userId);
+        if (matchesETag(ifNoneMatch, eTag)) {
+            return listingHeaders(ResponseEntity.status(HttpStatus.NOT_MODIFIED), eTag).build();
+        }
+        ResponseEntity<FilePageResponse> page = getFilePage(userId, cursor, limit, contentType, minSize, maxSize, namePrefix);
+        if (!page.getStatusCode().is2xxSuccessful()) {
+            return page;
+        }
+        return listingHeaders(ResponseEntity.ok(), eTag).body(page.getBody());
+    }
+
+    @GetMapping("/page")
+    public ResponseEntity<FilePageResponse> getFilePage(
+            @RequestParam(value = "cursor", required = false) String cursor,
+            @RequestParam(value = "limit", defaultValue = "50") int limit,
+            @RequestParam(value = "contentType", required = false) String contentType,
+            @RequestParam(value = "minSize", required = false) Long minSize,
+            @RequestParam(value = "maxSize", required = false) Long maxSize,
+            @RequestParam(value = "namePrefix", required = false) String namePrefix) {
+        return getFilePage(null, cursor, limit, contentType, minSize, maxSize, namePrefix);
+    }
+
+    private ResponseEntity<FilePageResponse> getFilePage(String userId, String cursor, int limit, String contentType,
+                                                         Long minSize, Long maxSize, String namePrefix) {
+        FileQuery query = FileQuery.builder()
+                .userId(userId)
+                .contentType(contentType)
+                .minSize(minSize)
+                .maxSize(maxSize)
+                .namePrefix(namePrefix)
+                .limit(limit)
+                .build();
+        try {
+            FileService.FilePage page = fileService.getFilePage(query, cursor);
+            List<FileResponse> files = page.getFiles().stream()
+                    .map(this::toFileResponse)
+                    .collect(Collectors.toList());
+            return ResponseEntity.ok(new FilePageResponse(files, page.getNextCursor()));
+        } catch (IllegalArgumentException e) {
+            fileMetrics.recordRejected("bad_request");
+            return ResponseEntity.badRequest().build(); // Malformed cursor
+        }
     }
+
+    private static ResponseEntity.BodyBuilder listingHeaders(ResponseEntity.BodyBuilder response, String eTag) {
+        if (eTag != null) {
+            // Revalidate on every poll, the check is cheap
+            response.eTag(eTag).cacheControl(CacheControl.noCache());
+        }
+        return response;
+    }
+
+    /**
+     * @return whether If-None-Match lists the ETag, compared weakly as compression may weaken it
+     */
+    private static boolean matchesETag(String ifNoneMatch, String eTag) {
+        if (ifNoneMatch == null || eTag == null) {
+            return false;
+        }
+        for (String candidate : ifNoneMatch.split(",")) {
+            String tag = candidate.trim();
+            if (tag.startsWith("W/")) {
+                tag = tag.substring(2);
+            }
+            if (tag.equals(eTag) || tag.equals("*")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private FileResponse toFileResponse(FileSummary file) {
+        return new FileResponse(
+                file.getId(),
+                file.getOriginalFileName(),
+                file.getContentType(),
+                file.getFileSize(),
+                file.getUploadDate().toString(),
+                null, // Only hashes are stored, the key is returned once by the upload
+                formatDateTime(file.getExpiresAt())
+        );
+    }
+
+    private static String formatDateTime(LocalDateTime dateTime) {
+        return dateTime != null ? dateTime.toString() : null;
+    }
+    /**
+     * Streams a decrypted file. A single byte range is answered with 206 and
+     * Content-Range, but only for seekable files, which are advertised with
+     * {@code Accept-Ranges: bytes}: compressed files, see {@link CompressionService},
+     * and files stored before segmented encryption ignore Range and come back whole
+     * with 200, so clients must check the status instead of assuming a 206.
+     */
 @GetMapping("/download/{fileId}")
-public ResponseEntity<Resource> downloadFile(
+public ResponseEntity<StreamingResponseBody> downloadFile(
         @PathVariable Long fileId, 
         @RequestParam("key") String downloadKey,
-        @RequestParam("userId") String userId) {
-    try {
-        FileService.FileDownloadDto downloadDto = this.fileService.downloadFile(fileId, downloadKey, userId);
-        ByteArrayResource resource = new ByteArrayResource(downloadDto.getContent());
+        @RequestParam("userId") String userId,
+        @RequestHeader(value = HttpHeaders.RANGE, required = false) String range,
+        @RequestHeader(value = HttpHeaders.IF_RANGE, required = false) String ifRange) {
+    return streamDownload(fileId, downloadKey, userId, range, ifRange);
+}
+
+    /**
+     * Streams several files as one ZIP archive. Files and keys are given as repeated,
+     * paired parameters: {@code ?userId=...&id=1&key=A1B2C3&id=2&key=D4E5F6}.
+     */
+    @GetMapping("/download/archive")
+    public ResponseEntity<StreamingResponseBody> downloadArchive(
+            @RequestParam("id") List<Long> fileIds,
+            @RequestParam("key") List<String> downloadKeys,
+            @RequestParam("userId") String userId) {
+        if (fileIds.size() != downloadKeys.size() || fileIds.size() > FileService.MAX_BATCH_SIZE) {
+            fileMetrics.recordRejected("bad_request");
+            return ResponseEntity.badRequest().build();
+        }
+        Map<Long, String> keysById = new LinkedHashMap<>();
+        for (int i = 0; i < fileIds.size(); i++) {
+            keysById.put(fileIds.get(i), downloadKeys.get(i));
+        }
+
+        FileService.ContentWriter archive;
+        try {
+            archive = fileService.openArchive(keysById, userId);
+        } catch (UsageLimiter.RateLimitExceededException e) {
+            return usageLimitRejection(e, fileMetrics);
+        } catch (IllegalArgumentException e) {
+            fileMetrics.recordRejected("forbidden");
+            return ResponseEntity.status(403).build(); // Forbidden if any key is invalid or user unauthorized
+        } catch (Exception e) {
+            fileMetrics.recordRejected("not_found");
+            return ResponseEntity.notFound().build();
+        }
         return ResponseEntity.ok()
-                .contentType(MediaType.parseMediaType(downloadDto.getContentType()))
-                .header("Content-Disposition", "attachment; filename=\"" + downloadDto.getFileName() + "\"")
-                .body(resource);
-    } catch (IllegalArgumentException e) {
-        return ResponseEntity.status(403).build(); // Forbidden if key is invalid or user unauthorized
-    } catch (Exception e) {
-        return ResponseEntity.notFound().build();
+                .contentType(MediaType.parseMediaType("application/zip"))
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"files.zip\"")
+                .body(out -> {
+                    try {
+                        archive.writeTo(out);
+                    } catch (IOException e) {
+                        throw e;
+                    } catch (Exception e) {
+                        throw new IOException("Failed to write archive of file IDs: " + fileIds, e);
+                    }
+                });
     }
-}
 
     @GetMapping("/raw/{fileId}")
     public ResponseEntity<String> getRawEncryptedData(@PathVariable Long fileId, @RequestParam("key") String downloadKey) {
         try {
-            // Verify the download key first
-            String actualKey = fileService.getDownloadKey(fileId);
-            if (!actualKey.equals(downloadKey)) {
-                return ResponseEntity.status(403).body("Invalid download key");
-            }
-            
-            SecureFile file = fileService.getFileById(fileId);
-            byte[] bytes = file.getEncryptedContent();
+            // Verifies the download key and reads the preview from a single row lookup
+            byte[] bytes = fileService.getEncryptedPreview(fileId, downloadKey, 50);
             StringBuilder hexPreview = new StringBuilder("Encrypted data preview (hex): ");
             for (int i = 0; i < Math.min(bytes.length, 50); i++) {
                 hexPreview.append(String.format("%02X ", bytes[i]));
             }
             return ResponseEntity.ok(hexPreview.toString());
+        } catch (IllegalArgumentException e) {
+            fileMetrics.recordRejected("forbidden");
+            return ResponseEntity.status(403).body("Invalid download key");
+        } catch (NoSuchElementException e) {
+            fileMetrics.recordRejected("not_found");
+            return ResponseEntity.notFound().build();
         } catch (Exception e) {
             return ResponseEntity.status(500).body("Error: " + e.getMessage());
         }
     }
 
+    /**
+     * Same as {@link #downloadFile}, including its handling of Range
+     */
     @GetMapping("/{fileId}")
-    public ResponseEntity<Resource> getFileById(
+    public ResponseEntity<StreamingResponseBody> getFileById(
             @PathVariable Long fileId, 
             @RequestParam("key") String downloadKey,
-            @RequestParam("userId") String userId) {
-        try {
-            FileService.FileDownloadDto downloadDto = fileService.downloadFile(fileId, downloadKey, userId);
-            ByteArrayResource resource = new ByteArrayResource(downloadDto.getContent());
+            @RequestParam("userId") String userId,
+            @RequestHeader(value = HttpHeaders.RANGE, required = false) String range,
+            @RequestHeader(value = HttpHeaders.IF_RANGE, required = false) String ifRange) {
+        return streamDownload(fileId, downloadKey, userId, range, ifRange);
+    }
 
-            return ResponseEntity.ok()
-                    .contentType(MediaType.parseMediaType(downloadDto.getContentType()))
-                    .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + downloadDto.getFileName() + "\"")
-                    .body(resource);
+    /**
+     * Authorizes the download up front, then decrypts straight into the response
+     * stream so memory per download stays at a few segment buffers. A single byte
+     * range is answered with 206 for seekable files, decrypting only the segments
+     * it covers; anything else, including any Range on a compressed file, gets the
+     * full content with 200.
+     */
+    private ResponseEntity<StreamingResponseBody> streamDownload(Long fileId, String downloadKey, String userId,
+                                                                 String range, String ifRange) {
+        FileService.FileDownloadStream download;
+        try {
+            download = fileService.openDownload(fileId, downloadKey, userId);
         } catch (IllegalArgumentException e) {
+            fileMetrics.recordRejected("forbidden");
             return ResponseEntity.status(403).build(); // Forbidden if key is invalid or user unauthorized
         } catch (Exception e) {
+            fileMetrics.recordRejected("not_found");
             return ResponseEntity.notFound().build();
         }
+
+        // If-Range only keeps the range when the client's copy is still current
+        List<HttpRange> ranges = range == null || !download.isSeekable()
+                || (ifRange != null && !ifRange.equals(download.getETag()))
+                ? List.of()
+                : parseRanges(range);
+        if (ranges.size() != 1) {
+            try {
+                usageLimiter.acquireDownload(userId, download.getContentLength());
+            } catch (UsageLimiter.RateLimitExceededException e) {
+                return usageLimitRejection(e, fileMetrics);
+            }
+            return downloadHeaders(ResponseEntity.ok(), download)
+                    .contentLength(download.getContentLength())
+                    .body(out -> writeDownload(fileId, () -> download.writeTo(out)));
+        }
+
+        long length = download.getContentLength();
+        long rangeStart;
+        long rangeEnd;
+        try {
+            rangeStart = ranges.get(0).getRangeStart(length);
+            rangeEnd = ranges.get(0).getRangeEnd(length);
+        } catch (IllegalArgumentException e) {
+            rangeStart = length;
+            rangeEnd = length - 1;
+        }
+        if (rangeEnd < rangeStart) {
+            fileMetrics.recordRejected("range_not_satisfiable");
+            return ResponseEntity.status(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE)
+                    .header(HttpHeaders.CONTENT_RANGE, "bytes */" + length)
+                    .build();
+        }
+
+        long start = rangeStart;
+        long end = rangeEnd;
+        try {
+            usageLimiter.acquireDownload(userId, end - start + 1);
+        } catch (UsageLimiter.RateLimitExceededException e) {
+            return usageLimitRejection(e, fileMetrics);
+        }
+        return downloadHeaders(ResponseEntity.status(HttpStatus.PARTIAL_CONTENT), download)
+                .header(HttpHeaders.CONTENT_RANGE, "bytes " + start + "-" + end + "/" + length)
+                .contentLength(end - start + 1)
+                .body(out -> writeDownload(fileId, () -> download.writeRangeTo(out, start, end)));
+    }
+
+    /**
+     * Answers a request refused by the {@link UsageLimiter}: 429 with Retry-After when
+     * the user has to slow down, 413 when the content does not fit the user's quota
+     */
+    static <T> ResponseEntity<T> usageLimitRejection(RuntimeException e, FileMetrics fileMetrics) {
+        if (e instanceof UsageLimiter.RateLimitExceededException rateLimited) {
+            fileMetrics.recordRejected("rate_limited");
+            return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                    .header(HttpHeaders.RETRY_AFTER, String.valueOf(rateLimited.getRetryAfterSeconds()))
+                    .build();
+        }
+        fileMetrics.recordRejected("quota_exceeded");
+        return ResponseEntity.status(HttpStatus.PAYLOAD_TOO_LARGE).build();
+    }
+
+    private static ResponseEntity.BodyBuilder downloadHeaders(ResponseEntity.BodyBuilder response,
+                                                              FileService.FileDownloadStream download) {
+        response.contentType(MediaType.parseMediaType(download.getContentType()))
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + download.getFileName() + "\"");
+        if (download.getETag() != null) {
+            response.eTag(download.getETag());
+        }
+        if (download.isSeekable()) {
+            response.header(HttpHeaders.ACCEPT_RANGES, "bytes");
+        }
+        return response;
+    }
+
+    private static List<HttpRange> parseRanges(String range) {
+        try {
+            return HttpRange.parseRanges(range);
+        } catch (IllegalArgumentException e) {
+            // A malformed Range header is ignored rather than rejected
+            return List.of();
+        }
+    }
+
+    private static void writeDownload(Long fileId, DownloadWriter writer) throws IOException {
+        try {
+            writer.write();
+        } catch (IOException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IOException("Failed to decrypt file ID: " + fileId, e);
+        }
+    }
+
+    @FunctionalInterface
+    private interface DownloadWriter {
+        void write() throws Exception;
     }
 
     @GetMapping
     public ResponseEntity<List<FileResponse>> getAllFiles() {
         List<FileResponse> files = fileService.getAllFiles().stream()
-                .map(file -> new FileResponse(
-                        file.getId(),
-                        file.getOriginalFileName(),
-                        file.getContentType(),
-                        file.getFileSize(),
-                        file.getUploadDate().toString(),
-                        file.getDownloadKey()
-                ))
+                .map(this::toFileResponse)
                 .collect(Collectors.toList());
         
         return ResponseEntity.ok(files);
@@ -138,21 +451,49 @@ public ResponseEntity<Resource> downloadFile(
             @RequestParam("key") String downloadKey,
             @RequestParam("userId") String userId) {
         try {
-            // Verify the download key first
-            String actualKey = fileService.getDownloadKey(fileId);
-            if (!actualKey.equals(downloadKey)) {
-                return ResponseEntity.status(403).build();
-            }
-            
-            fileService.deleteFile(fileId, userId);
+            fileService.deleteFile(fileId, downloadKey, userId);
             return ResponseEntity.ok().build();
         } catch (IllegalArgumentException e) {
-            return ResponseEntity.status(403).build(); // Forbidden if user unauthorized
+            fileMetrics.recordRejected("forbidden");
+            return ResponseEntity.status(403).build(); // Forbidden if key is invalid or user unauthorized
         } catch (Exception e) {
+            fileMetrics.recordRejected("not_found");
             return ResponseEntity.notFound().build();
         }
     }
 
+    /**
+     * Deletes several files and returns at once, their storage is reclaimed in the
+     * background by the {@link ExpiredFileSweeper}. Files and keys are given as repeated,
+     * paired parameters like for {@link #downloadArchive}. Nothing is deleted unless
+     * every file exists and every key is valid.
+     */
+    @DeleteMapping
+    public ResponseEntity<Void> deleteFiles(
+            @RequestParam("id") List<Long> fileIds,
+            @RequestParam("key") List<String> downloadKeys,
+            @RequestParam("userId") String userId) {
+        if (fileIds.size() != downloadKeys.size() || fileIds.size() > FileService.MAX_BATCH_SIZE) {
+            fileMetrics.recordRejected("bad_request");
+            return ResponseEntity.badRequest().build();
+        }
+        Map<Long, String> keysById = new LinkedHashMap<>();
+        for (int i = 0; i < fileIds.size(); i++) {
+            keysById.put(fileIds.get(i), downloadKeys.get(i));
+        }
+        try {
+            fileService.expireFiles(keysById, userId);
+        } catch (IllegalArgumentException e) {
+            fileMetrics.recordRejected("forbidden");
+            return ResponseEntity.status(403).build(); // Forbidden if any key is invalid or user unauthorized
+        } catch (Exception e) {
+            fileMetrics.recordRejected("not_found");
+            return ResponseEntity.notFound().build();
+        }
+        expiredFileSweeper.requestSweep();
+        return ResponseEntity.accepted().build();
+    }
+
     // DTO for file response
     public static class FileResponse {
         private final Long id;
@@ -161,14 +502,17 @@ public ResponseEntity<Resource> downloadFile(
         private final Long size;
         private final String uploadDate;
         private final String downloadKey;
+        private final String expiresAt;
 
-        public FileResponse(Long id, String fileName, String contentType, Long size, String uploadDate, String downloadKey) {
+        public FileResponse(Long id, String fileName, String contentType, Long size, String uploadDate, String downloadKey,
+                            String expiresAt) {
             this.id = id;
             this.fileName = fileName;
             this.contentType = contentType;
             this.size = size;
             this.uploadDate = uploadDate;
             this.downloadKey = downloadKey;
+            this.expiresAt = expiresAt;
         }
 
         public Long getId() {
@@ -194,5 +538,28 @@ public ResponseEntity<Resource> downloadFile(
         public String getDownloadKey() {
             return downloadKey;
         }
+
+        public String getExpiresAt() {
+            return expiresAt;
+        }
+    }
+
+    // DTO for a page of file responses
+    public static class FilePageResponse {
+        private final List<FileResponse> files;
+        private final String nextCursor;
+
+        public FilePageResponse(List<FileResponse> files, String nextCursor) {
+            this.files = files;
+            this.nextCursor = nextCursor;
+        }
+
+        public List<FileResponse> getFiles() {
+            return files;
+        }
+
+        public String getNextCursor() {
+            return nextCursor;
+        }
     }
 }
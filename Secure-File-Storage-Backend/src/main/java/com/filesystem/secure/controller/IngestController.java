@@ -0,0 +1,134 @@
+package com.filesystem.secure.controller;
+
+import com.filesystem.secure.model.SecureFile;
+import com.filesystem.secure.service.FileMetrics;
+import com.filesystem.secure.service.IngestionService;
+import com.filesystem.secure.service.UsageLimiter;
+import jakarta.servlet.http.HttpServletRequest;
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.net.URI;
+import java.util.NoSuchElementException;
+
+/**
+ * Asynchronous uploads, enabled with {@code ingest.async.enabled}. {@code POST} answers
+ * 202 with a job handle as soon as the upload is spooled, or 429 when the ingest queue
+ * is full; the client then polls {@code GET /{ingestId}} until the job has completed,
+ * which carries the stored file, or failed.
+ */
+@RestController
+@RequestMapping("/api/files/ingest")
+@RequiredArgsConstructor
+@CrossOrigin(origins = "*") // For development - restrict in production
+@ConditionalOnProperty(name = "ingest.async.enabled", havingValue = "true")
+public class IngestController {
+
+    private static final String RETRY_AFTER_SECONDS = "5";
+
+    private final IngestionService ingestionService;
+    private final FileMetrics fileMetrics;
+    private final UsageLimiter usageLimiter;
+
+    @PostMapping
+    public ResponseEntity<IngestResponse> submit(
+            @RequestParam("file") MultipartFile file,
+            @RequestParam("userId") String userId,
+            HttpServletRequest request) {
+        try {
+            if (!UploadAdmissionInterceptor.isAdmitted(request)) {
+                usageLimiter.acquireUpload(userId, file.getSize());
+                // Refused up front; the worker reserves the room when it stores the file
+                usageLimiter.checkStorage(userId, file.getSize());
+            }
+            IngestionService.IngestJob job = ingestionService.submit(file, userId);
+            return ResponseEntity.accepted()
+                    .location(URI.create("/api/files/ingest/" + job.getId()))
+                    .body(toResponse(job));
+        } catch (IngestionService.IngestQueueFullException e) {
+            fileMetrics.recordRejected("ingest_queue_full");
+            return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                    .header(HttpHeaders.RETRY_AFTER, RETRY_AFTER_SECONDS)
+                    .build();
+        } catch (UsageLimiter.RateLimitExceededException | UsageLimiter.QuotaExceededException e) {
+            return FileController.usageLimitRejection(e, fileMetrics);
+        } catch (IllegalArgumentException e) {
+            fileMetrics.recordRejected("bad_request");
+            return ResponseEntity.badRequest().build();
+        } catch (Exception e) {
+            return ResponseEntity.internalServerError().build();
+        }
+    }
+
+    @GetMapping("/{ingestId}")
+    public ResponseEntity<IngestResponse> getJob(
+            @PathVariable String ingestId,
+            @RequestParam("userId") String userId) {
+        try {
+            return ResponseEntity.ok(toResponse(ingestionService.getJob(ingestId, userId)));
+        } catch (NoSuchElementException e) {
+            fileMetrics.recordRejected("not_found");
+            return ResponseEntity.notFound().build();
+        } catch (SecurityException e) {
+            fileMetrics.recordRejected("forbidden");
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
+        }
+    }
+
+    private static IngestResponse toResponse(IngestionService.IngestJob job) {
+        SecureFile savedFile = job.getFile();
+        FileController.FileResponse file = savedFile == null ? null : new FileController.FileResponse(
+                savedFile.getId(),
+                savedFile.getOriginalFileName(),
+                savedFile.getContentType(),
+                savedFile.getFileSize(),
+                savedFile.getUploadDate().toString(),
+                savedFile.getDownloadKey(),
+                null
+        );
+        return new IngestResponse(job.getId(), job.getStatus().name(), job.getSubmittedAt().toString(), file, job.getError());
+    }
+
+    // DTO for an ingest job
+    public static class IngestResponse {
+        private final String ingestId;
+        private final String status;
+        private final String submittedAt;
+        private final FileController.FileResponse file;
+        private final String error;
+
+        public IngestResponse(String ingestId, String status, String submittedAt, FileController.FileResponse file,
+                              String error) {
+            this.ingestId = ingestId;
+            this.status = status;
+            this.submittedAt = submittedAt;
+            this.file = file;
+            this.error = error;
+        }
+
+        public String getIngestId() {
+            return ingestId;
+        }
+
+        public String getStatus() {
+            return status;
+        }
+
+        public String getSubmittedAt() {
+            return submittedAt;
+        }
+
+        public FileController.FileResponse getFile() {
+            return file;
+        }
+
+        public String getError() {
+            return error;
+        }
+    }
+}
@@ -0,0 +1,40 @@
+package com.filesystem.secure.controller;
+
+import com.filesystem.secure.service.DataKeyService;
+import com.filesystem.secure.service.KeyRotationService;
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.endpoint.annotation.WriteOperation;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.util.Map;
+
+/**
+ * Operator view of envelope encryption at {@code /actuator/keys}: {@code GET} shows the
+ * current key-encryption key version and how many data keys still wait for rewrapping,
+ * {@code POST} rotates the key-encryption key. Not exposed over HTTP unless added to
+ * {@code management.endpoints.web.exposure.include}.
+ */
+@Component
+@Endpoint(id = "keys")
+@RequiredArgsConstructor
+public class KeysEndpoint {
+
+    private final DataKeyService dataKeyService;
+    private final KeyRotationService keyRotationService;
+
+    @ReadOperation
+    public Map<String, Object> keys() {
+        return Map.of(
+                "currentVersion", dataKeyService.getCurrentVersion(),
+                "pendingRewrap", keyRotationService.countPending()
+        );
+    }
+
+    @WriteOperation
+    public Map<String, Object> rotate() throws IOException {
+        return Map.of("currentVersion", keyRotationService.rotate());
+    }
+}
@@ -0,0 +1,42 @@
+package com.filesystem.secure.controller;
+
+import com.filesystem.secure.service.FileMigrationRunner;
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.endpoint.annotation.Selector;
+import org.springframework.boot.actuate.endpoint.annotation.WriteOperation;
+import org.springframework.boot.actuate.endpoint.web.WebEndpointResponse;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+/**
+ * Operator view of the background file migrations at {@code /actuator/migrations}:
+ * {@code GET} shows each migration's checkpoint and remaining files, {@code POST
+ * /actuator/migrations/{name}} forgets a migration's checkpoint and runs it again.
+ * Not exposed over HTTP unless added to {@code management.endpoints.web.exposure.include}.
+ */
+@Component
+@Endpoint(id = "migrations")
+@RequiredArgsConstructor
+public class MigrationsEndpoint {
+
+    private final FileMigrationRunner migrationRunner;
+
+    @ReadOperation
+    public List<Map<String, Object>> migrations() {
+        return migrationRunner.getStatus();
+    }
+
+    @WriteOperation
+    public WebEndpointResponse<Map<String, Object>> restart(@Selector String name) {
+        try {
+            return new WebEndpointResponse<>(Map.of("restarted", migrationRunner.restart(name)));
+        } catch (NoSuchElementException e) {
+            return new WebEndpointResponse<>(WebEndpointResponse.STATUS_NOT_FOUND);
+        }
+    }
+}
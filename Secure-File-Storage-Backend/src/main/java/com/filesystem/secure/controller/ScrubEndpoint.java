@@ -0,0 +1,37 @@
+package com.filesystem.secure.controller;
+
+import com.filesystem.secure.service.ScrubService;
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.endpoint.annotation.WriteOperation;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+
+/**
+ * Operator view of the integrity scrub at {@code /actuator/scrub}: {@code GET} shows
+ * the progress of the current pass and the missing, unreadable or corrupt blobs found
+ * in it and the previous one, {@code POST} starts a new pass right away. Not exposed
+ * over HTTP unless added to {@code management.endpoints.web.exposure.include}.
+ */
+@Component
+@Endpoint(id = "scrub")
+@RequiredArgsConstructor
+@ConditionalOnProperty(name = "scrub.enabled", havingValue = "true", matchIfMissing = true)
+public class ScrubEndpoint {
+
+    private final ScrubService scrubService;
+
+    @ReadOperation
+    public Map<String, Object> scrub() {
+        return scrubService.getStatus();
+    }
+
+    @WriteOperation
+    public Map<String, Object> startPass() {
+        scrubService.requestNewPass();
+        return Map.of("newPassRequested", true);
+    }
+}
@@ -0,0 +1,77 @@
+package com.filesystem.secure.controller;
+
+import com.filesystem.secure.service.FileMetrics;
+import com.filesystem.secure.service.UsageLimiter;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.HandlerInterceptor;
+import org.springframework.web.util.UriComponentsBuilder;
+import org.springframework.web.util.UriUtils;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Applies the storage quota and upload rate limits to multipart uploads before their
+ * body is read. Multipart requests are resolved lazily, so at this point nothing but
+ * the headers has arrived; the declared {@code Content-Length} stands in for the file
+ * sizes, which makes the few hundred bytes of multipart framing count as content.
+ * This only works when {@code userId} is sent in the query string: reading a form
+ * field would mean parsing the body. Uploads naming the user in a form field are
+ * still limited, by their handler, but only once the body has been received.
+ */
+@Component
+@RequiredArgsConstructor
+public class UploadAdmissionInterceptor implements HandlerInterceptor {
+
+    private static final String ADMITTED = UploadAdmissionInterceptor.class.getName() + ".admitted";
+
+    private final UsageLimiter usageLimiter;
+    private final FileMetrics fileMetrics;
+
+    /**
+     * @param request the upload request
+     * @return whether the request was already charged to its user's limits, so the handler must not charge it again
+     */
+    public static boolean isAdmitted(HttpServletRequest request) {
+        return Boolean.TRUE.equals(request.getAttribute(ADMITTED));
+    }
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        String userId = queryParameter(request, "userId");
+        long contentLength = request.getContentLengthLong();
+        if (userId == null || contentLength < 0) {
+            return true;
+        }
+        try {
+            usageLimiter.checkStorage(userId, contentLength);
+            usageLimiter.acquireUpload(userId, contentLength);
+        } catch (UsageLimiter.RateLimitExceededException | UsageLimiter.QuotaExceededException e) {
+            ResponseEntity<Void> rejection = FileController.usageLimitRejection(e, fileMetrics);
+            response.setStatus(rejection.getStatusCode().value());
+            rejection.getHeaders().forEach((name, values) -> values.forEach(value -> response.addHeader(name, value)));
+            // The body stays unread, so the connection cannot carry another request
+            response.setHeader(HttpHeaders.CONNECTION, "close");
+            return false;
+        }
+        request.setAttribute(ADMITTED, true);
+        return true;
+    }
+
+    /**
+     * Reads a parameter from the query string only, as {@link HttpServletRequest#getParameter}
+     * would parse a multipart body to look for it there too
+     */
+    private static String queryParameter(HttpServletRequest request, String name) {
+        String query = request.getQueryString();
+        if (query == null) {
+            return null;
+        }
+        String value = UriComponentsBuilder.newInstance().query(query).build().getQueryParams().getFirst(name);
+        return value == null ? null : UriUtils.decode(value, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,164 @@
+package com.filesystem.secure.controller;
+
+import com.filesystem.secure.model.SecureFile;
+import com.filesystem.secure.model.UploadSession;
+import com.filesystem.secure.service.FileMetrics;
+import com.filesystem.secure.service.UploadSessionService;
+import com.filesystem.secure.service.UsageLimiter;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.io.InputStream;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * Resumable chunked uploads. A client initiates a session with the file size, sends
+ * the chunks it is told about as {@code application/octet-stream} bodies of
+ * {@code PUT .../chunks/{index}} (in parallel and in any order, sending failed ones
+ * again), checks which chunks arrived with {@code GET} after a reconnect, and finishes
+ * with {@code POST .../complete}. A chunk sent while another request is still sending
+ * it is rejected with 409.
+ */
+@RestController
+@RequestMapping("/api/files/uploads")
+@RequiredArgsConstructor
+@CrossOrigin(origins = "*") // For development - restrict in production
+public class UploadSessionController {
+
+    private final UploadSessionService uploadSessionService;
+    private final FileMetrics fileMetrics;
+
+    @PostMapping
+    public ResponseEntity<UploadSessionResponse> initiateUpload(
+            @RequestParam("userId") String userId,
+            @RequestParam("fileName") String fileName,
+            @RequestParam(value = "contentType", required = false) String contentType,
+            @RequestParam("size") long size) {
+        try {
+            UploadSession session = uploadSessionService.initiate(userId, fileName, contentType, size);
+            return ResponseEntity.status(HttpStatus.CREATED).body(toResponse(session, List.of()));
+        } catch (Exception e) {
+            return rejection(e);
+        }
+    }
+
+    @PutMapping(value = "/{uploadId}/chunks/{chunkIndex}", consumes = MediaType.APPLICATION_OCTET_STREAM_VALUE)
+    public ResponseEntity<Void> uploadChunk(
+            @PathVariable String uploadId,
+            @PathVariable int chunkIndex,
+            @RequestParam("userId") String userId,
+            InputStream content) {
+        try {
+            uploadSessionService.uploadChunk(uploadId, userId, chunkIndex, content);
+            return ResponseEntity.noContent().build();
+        } catch (Exception e) {
+            return rejection(e);
+        }
+    }
+
+    @GetMapping("/{uploadId}")
+    public ResponseEntity<UploadSessionResponse> getUpload(
+            @PathVariable String uploadId,
+            @RequestParam("userId") String userId) {
+        try {
+            UploadSession session = uploadSessionService.getSession(uploadId, userId);
+            return ResponseEntity.ok(toResponse(session, uploadSessionService.getReceivedChunks(session)));
+        } catch (Exception e) {
+            return rejection(e);
+        }
+    }
+
+    @PostMapping("/{uploadId}/complete")
+    public ResponseEntity<FileController.FileResponse> completeUpload(
+            @PathVariable String uploadId,
+            @RequestParam("userId") String userId) {
+        try {
+            SecureFile savedFile = uploadSessionService.complete(uploadId, userId);
+            return ResponseEntity.ok(new FileController.FileResponse(
+                    savedFile.getId(),
+                    savedFile.getOriginalFileName(),
+                    savedFile.getContentType(),
+                    savedFile.getFileSize(),
+                    savedFile.getUploadDate().toString(),
+                    savedFile.getDownloadKey(),
+                    null
+            ));
+        } catch (Exception e) {
+            return rejection(e);
+        }
+    }
+
+    @DeleteMapping("/{uploadId}")
+    public ResponseEntity<Void> abortUpload(
+            @PathVariable String uploadId,
+            @RequestParam("userId") String userId) {
+        try {
+            uploadSessionService.abort(uploadId, userId);
+            return ResponseEntity.noContent().build();
+        } catch (Exception e) {
+            return rejection(e);
+        }
+    }
+
+    private <T> ResponseEntity<T> rejection(Exception e) {
+        if (e instanceof UsageLimiter.RateLimitExceededException || e instanceof UsageLimiter.QuotaExceededException) {
+            return FileController.usageLimitRejection((RuntimeException) e, fileMetrics);
+        }
+        if (e instanceof NoSuchElementException) {
+            fileMetrics.recordRejected("not_found");
+            return ResponseEntity.notFound().build();
+        }
+        if (e instanceof SecurityException) {
+            fileMetrics.recordRejected("forbidden");
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
+        }
+        if (e instanceof IllegalArgumentException) {
+            fileMetrics.recordRejected("bad_request");
+            return ResponseEntity.badRequest().build();
+        }
+        if (e instanceof IllegalStateException) {
+            fileMetrics.recordRejected("conflict"); // Chunks still missing, or a chunk being sent by another request
+            return ResponseEntity.status(HttpStatus.CONFLICT).build();
+        }
+        return ResponseEntity.internalServerError().build();
+    }
+
+    private static UploadSessionResponse toResponse(UploadSession session, List<Integer> receivedChunks) {
+        return new UploadSessionResponse(session.getId(), session.getChunkSize(), session.getChunkCount(), receivedChunks);
+    }
+
+    // DTO for an upload session
+    public static class UploadSessionResponse {
+        private final String uploadId;
+        private final Integer chunkSize;
+        private final Integer chunkCount;
+        private final List<Integer> receivedChunks;
+
+        public UploadSessionResponse(String uploadId, Integer chunkSize, Integer chunkCount, List<Integer> receivedChunks) {
+            this.uploadId = uploadId;
+            this.chunkSize = chunkSize;
+            this.chunkCount = chunkCount;
+            this.receivedChunks = receivedChunks;
+        }
+
+        public String getUploadId() {
+            return uploadId;
+        }
+
+        public Integer getChunkSize() {
+            return chunkSize;
+        }
+
+        public Integer getChunkCount() {
+            return chunkCount;
+        }
+
+        public List<Integer> getReceivedChunks() {
+            return receivedChunks;
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package com.filesystem.secure.keys;
+
+import javax.crypto.SecretKey;
+import java.io.IOException;
+import java.util.NoSuchElementException;
+
+/**
+ * Holds the versioned key-encryption keys (KEKs) that wrap the per-file data keys.
+ * Old versions stay available for unwrapping until no data key is wrapped with them
+ * anymore; new data keys are always wrapped with the current version.
+ */
+public interface KeyEncryptionKeyStore {
+
+    /**
+     * @return the version new data keys are wrapped with
+     */
+    int getCurrentVersion();
+
+    /**
+     * @param version the key version
+     * @return the AES key-encryption key of that version
+     * @throws NoSuchElementException if the store has no such version
+     */
+    SecretKey getKey(int version);
+
+    /**
+     * Creates a new key version and makes it current. Data keys wrapped with older
+     * versions stay readable and are rewrapped in the background.
+     * @return the new current version
+     */
+    int rotate() throws IOException;
+}
@@ -0,0 +1,116 @@
+package com.filesystem.secure.keys;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import javax.crypto.SecretKey;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileAttribute;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.EnumSet;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Keeps key-encryption keys as files on the local filesystem, one Base64-encoded
+ * AES-256 key per version under {@code <root>/kek-<version>.key}, readable by the
+ * owner only. The highest version is current; the first version is generated on
+ * startup if the directory is empty. All versions are held in memory once loaded.
+ * Meant for development and single-node setups, a KMS-backed store can replace it.
+ */
+@Component
+@ConditionalOnProperty(name = "keys.type", havingValue = "local", matchIfMissing = true)
+public class LocalKeyEncryptionKeyStore implements KeyEncryptionKeyStore {
+
+    private static final Pattern KEY_FILE = Pattern.compile("kek-(\\d+)\\.key");
+    private static final int KEY_LENGTH = 32;
+
+    private final Path root;
+    private final SecureRandom random = new SecureRandom();
+    private final Map<Integer, SecretKey> keys = new ConcurrentHashMap<>();
+    private volatile int currentVersion;
+
+    public LocalKeyEncryptionKeyStore(@Value("${keys.local.root:./data/keys}") String root) throws IOException {
+        this.root = Path.of(root).toAbsolutePath().normalize();
+        Files.createDirectories(this.root);
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(this.root, "kek-*.key")) {
+            for (Path file : files) {
+                Matcher matcher = KEY_FILE.matcher(file.getFileName().toString());
+                if (matcher.matches()) {
+                    int version = Integer.parseInt(matcher.group(1));
+                    keys.put(version, readKey(file));
+                    currentVersion = Math.max(currentVersion, version);
+                }
+            }
+        }
+        if (keys.isEmpty()) {
+            rotate();
+        }
+    }
+
+    @Override
+    public int getCurrentVersion() {
+        return currentVersion;
+    }
+
+    @Override
+    public SecretKey getKey(int version) {
+        SecretKey key = keys.get(version);
+        if (key == null) {
+            throw new NoSuchElementException("Key-encryption key version " + version + " not found");
+        }
+        return key;
+    }
+
+    @Override
+    public synchronized int rotate() throws IOException {
+        int version = currentVersion + 1;
+        byte[] keyBytes = new byte[KEY_LENGTH];
+        random.nextBytes(keyBytes);
+
+        // Created owner-only, so the key is never readable by others, not even until a chmod
+        Path tempFile = root.resolve("kek-" + version + ".key.tmp");
+        FileAttribute<?>[] attributes = FileSystems.getDefault().supportedFileAttributeViews().contains("posix")
+                ? new FileAttribute<?>[] {PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rw-------"))}
+                : new FileAttribute<?>[0];
+        Files.deleteIfExists(tempFile); // Left over from a crash, and maybe not owner-only
+        try (SeekableByteChannel channel = Files.newByteChannel(tempFile,
+                EnumSet.of(StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE), attributes)) {
+            ByteBuffer encoded = ByteBuffer.wrap(Base64.getEncoder().encode(keyBytes));
+            while (encoded.hasRemaining()) {
+                channel.write(encoded);
+            }
+        } catch (IOException e) {
+            Files.deleteIfExists(tempFile);
+            throw e;
+        }
+        Files.move(tempFile, root.resolve("kek-" + version + ".key"), StandardCopyOption.ATOMIC_MOVE);
+
+        keys.put(version, new SecretKeySpec(keyBytes, "AES"));
+        currentVersion = version;
+        return version;
+    }
+
+    private static SecretKey readKey(Path file) throws IOException {
+        byte[] keyBytes = Base64.getDecoder().decode(Files.readString(file).trim());
+        if (keyBytes.length != KEY_LENGTH) {
+            throw new IOException("Key-encryption key " + file + " must hold " + KEY_LENGTH + " bytes");
+        }
+        return new SecretKeySpec(keyBytes, "AES");
+    }
+}
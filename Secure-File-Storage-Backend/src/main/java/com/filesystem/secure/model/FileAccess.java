@@ -0,0 +1,35 @@
+package com.filesystem.secure.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.time.LocalDateTime;
+
+/**
+ * The columns of a {@link SecureFile} needed to authorize a request and locate its
+ * content, selected by primary key without loading the entity.
+ */
+@Data
+@AllArgsConstructor
+public class FileAccess {
+
+    private Long id;
+
+    private String userId;
+
+    private String downloadKeyHash;
+
+    private String legacyDownloadKey; // Only consulted for rows stored before keys were hashed
+
+    private String blobId;
+
+    private String contentHash;
+
+    private Long fileSize;
+
+    private LocalDateTime expiresAt;
+
+    public boolean isExpired() {
+        return SecureFile.isExpired(expiresAt);
+    }
+}
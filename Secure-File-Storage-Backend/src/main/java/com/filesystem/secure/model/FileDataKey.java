@@ -0,0 +1,19 @@
+package com.filesystem.secure.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+/**
+ * The wrapped data key of a {@link SecureFile}, selected without loading the entity
+ * when data keys are rewrapped after a key rotation.
+ */
+@Data
+@AllArgsConstructor
+public class FileDataKey {
+
+    private Long id;
+
+    private String wrappedDataKey;
+
+    private Integer keyVersion;
+}
@@ -0,0 +1,29 @@
+package com.filesystem.secure.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.time.LocalDateTime;
+
+/**
+ * Metadata-only view of a {@link SecureFile} for listings, selected column by
+ * column so neither the stored content nor the full entity is ever loaded.
+ */
+@Data
+@AllArgsConstructor
+public class FileSummary {
+
+    private Long id;
+
+    private String originalFileName;
+
+    private String contentType;
+
+    private Long fileSize;
+
+    private LocalDateTime uploadDate;
+
+    private String userId;
+
+    private LocalDateTime expiresAt;
+}
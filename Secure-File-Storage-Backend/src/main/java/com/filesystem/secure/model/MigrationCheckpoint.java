@@ -0,0 +1,45 @@
+package com.filesystem.secure.model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import java.time.LocalDateTime;
+
+/**
+ * Progress of one background file migration, saved after every batch so an
+ * interrupted migration resumes after the last file it got to.
+ */
+@Entity
+@Table(name = "migration_checkpoints")
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class MigrationCheckpoint {
+
+    @Id
+    @Column(length = 64)
+    private String name;
+
+    @Column(nullable = false)
+    private Long lastFileId; // Files up to this ID have been processed
+
+    @Column(nullable = false)
+    private Long processedFiles;
+
+    @Column(nullable = false)
+    private Long failedFiles; // Skipped after an error in the current pass, which then does not complete
+
+    @Column(nullable = false)
+    private Long processedBytes;
+
+    @Column(nullable = false)
+    private LocalDateTime startedAt;
+
+    @Column(nullable = false)
+    private LocalDateTime updatedAt;
+
+    private LocalDateTime completedAt; // Null while the migration still has files to visit
+}
@@ -4,11 +4,22 @@ import jakarta.persistence.*;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
+import lombok.EqualsAndHashCode;
 import lombok.NoArgsConstructor;
+import lombok.ToString;
 import java.time.LocalDateTime;
 
 @Entity
-@Table(name = "secure_files")
+@Table(name = "secure_files", indexes = {
+        @Index(name = "idx_secure_files_user_upload", columnList = "userId, uploadDate, id"),
+        @Index(name = "idx_secure_files_user_type_upload", columnList = "userId, contentType, uploadDate, id"),
+        @Index(name = "idx_secure_files_user_name", columnList = "userId, originalFileName"),
+        @Index(name = "idx_secure_files_upload", columnList = "uploadDate, id"),
+        @Index(name = "idx_secure_files_user_content", columnList = "userId, contentHash"),
+        @Index(name = "idx_secure_files_blob", columnList = "blobId"),
+        @Index(name = "idx_secure_files_key_version", columnList = "keyVersion, id"),
+        @Index(name = "idx_secure_files_expires", columnList = "expiresAt, id")
+})
 @Data
 @Builder
 @NoArgsConstructor
@@ -32,17 +43,46 @@ public class SecureFile {
     private Long fileSize;
     
     @Lob
-    @Column(nullable = false)
-    private byte[] encryptedData;
+    @Basic(fetch = FetchType.LAZY)
+    @ToString.Exclude
+    @EqualsAndHashCode.Exclude
+    private byte[] encryptedData; // Legacy in-database ciphertext, null once the content lives in the blob store
+
+    @Column(length = 64)
+    private String blobId; // Blob store reference of the ciphertext
+
+    @Column(length = 64)
+    private String cipherDigest; // SHA-256 of the stored ciphertext in hex, what the scrub verifies the blob against
     
     @Column(nullable = false)
     private LocalDateTime uploadDate;
+
+    private LocalDateTime expiresAt; // No longer served from then on and deleted by the sweeper, null to keep the file
     
     @Column(length = 32)
     private String encryptionIv; // Initialization vector for encryption
+
+    private Integer segmentSize; // Plaintext bytes per GCM segment, null for single-shot encryption
+
+    @Column(length = 64)
+    private String wrappedDataKey; // Per-file data key wrapped by a key-encryption key, null for the legacy global key
+
+    private Integer keyVersion; // Version of the key-encryption key that wrapped the data key
+
+    @Column(length = 64)
+    private String contentHash; // Keyed per-user hash of the plaintext, shared by deduplicated uploads
+
+    @Column(length = 16)
+    private String compressionCodec; // Codec applied before encryption, null if stored uncompressed
     
-    @Column(length = 16, nullable = false)
-    private String downloadKey; // Key required to download the file
+    @Transient
+    private String downloadKey; // Key required to download the file, only held to return it once from the upload
+
+    @Column(name = "download_key", length = 16)
+    private String legacyDownloadKey; // Plaintext key of rows stored before keys were hashed, null for newer rows
+
+    @Column(length = 64)
+    private String downloadKeyHash; // Keyed hash of the download key, what requests are checked against
     
     @Column(nullable = false)
     private String userId; 
@@ -50,4 +90,12 @@ public class SecureFile {
     public byte[] getEncryptedContent() {
         return this.encryptedData;
     }
+
+    public boolean isExpired() {
+        return isExpired(expiresAt);
+    }
+
+    public static boolean isExpired(LocalDateTime expiresAt) {
+        return expiresAt != null && !expiresAt.isAfter(LocalDateTime.now());
+    }
 }
@@ -0,0 +1,46 @@
+package com.filesystem.secure.model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import java.io.Serializable;
+import java.time.LocalDateTime;
+
+/**
+ * Claims one chunk of an {@link UploadSession} for the attempt sending it, and records
+ * the base IV that attempt encrypts under and whether its ciphertext is durably staged.
+ * Every attempt draws a fresh IV, so a chunk can be sent again without reusing nonces.
+ */
+@Entity
+@Table(name = "upload_chunks")
+@IdClass(UploadChunk.Key.class)
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class UploadChunk {
+
+    @Id
+    @Column(length = 36)
+    private String uploadId;
+
+    @Id
+    private Integer chunkIndex;
+
+    @Column(nullable = false)
+    private LocalDateTime receivedAt; // When the current attempt claimed the chunk, or staged it
+
+    @Column(length = 32, nullable = false)
+    private String encryptionIv; // Base IV of the current attempt, never shared with another attempt
+
+    @Column(nullable = false)
+    private boolean staged; // False while the current attempt is encrypting
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Key implements Serializable {
+        private String uploadId;
+        private Integer chunkIndex;
+    }
+}
@@ -0,0 +1,65 @@
+package com.filesystem.secure.model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import java.time.LocalDateTime;
+
+/**
+ * A chunked upload in progress. Chunks are encrypted into a staging area of the
+ * blob store as they arrive and recorded as {@link UploadChunk} rows; the session
+ * is replaced by a {@link SecureFile} once every chunk is in.
+ */
+@Entity
+@Table(name = "upload_sessions", indexes = {
+        @Index(name = "idx_upload_sessions_updated", columnList = "updatedAt")
+})
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class UploadSession {
+
+    @Id
+    @Column(length = 36)
+    private String id; // Also names the staging area in the blob store
+
+    @Column(nullable = false)
+    private String userId;
+
+    @Column(nullable = false)
+    private String originalFileName;
+
+    @Column(nullable = false)
+    private String contentType;
+
+    @Column(nullable = false)
+    private Long totalSize; // Plaintext bytes announced by the client
+
+    @Column(nullable = false)
+    private Integer chunkSize; // Plaintext bytes per chunk, a multiple of segmentSize
+
+    @Column(nullable = false)
+    private Integer segmentSize;
+
+    @Column(length = 64)
+    private String wrappedDataKey; // Data key shared by all chunks, wrapped by a key-encryption key
+
+    private Integer keyVersion;
+
+    @Column(nullable = false)
+    private LocalDateTime createdAt;
+
+    @Column(nullable = false)
+    private LocalDateTime updatedAt; // Last chunk activity, drives garbage collection
+
+    public int getChunkCount() {
+        return (int) Math.max(1, (totalSize + chunkSize - 1) / chunkSize);
+    }
+
+    public long getChunkLength(int chunkIndex) {
+        return Math.min(chunkSize, totalSize - (long) chunkIndex * chunkSize);
+    }
+}
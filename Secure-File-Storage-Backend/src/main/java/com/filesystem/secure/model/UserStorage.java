@@ -0,0 +1,16 @@
+package com.filesystem.secure.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+/**
+ * The plaintext bytes a user has stored, summed over their {@link SecureFile}s
+ */
+@Data
+@AllArgsConstructor
+public class UserStorage {
+
+    private String userId;
+
+    private Long storedBytes;
+}
@@ -0,0 +1,33 @@
+package com.filesystem.secure.repository;
+
+import lombok.Builder;
+import lombok.Data;
+
+import java.time.LocalDateTime;
+
+/**
+ * Filters and keyset position for a page of file summaries. Pages are ordered by
+ * upload date then ID, both descending, and start strictly after the cursor
+ * position when one is given. Unset filters are not applied; expired files are
+ * never included.
+ */
+@Data
+@Builder
+public class FileQuery {
+
+    private String userId;
+
+    private String contentType;
+
+    private Long minSize;
+
+    private Long maxSize;
+
+    private String namePrefix;
+
+    private LocalDateTime afterUploadDate;
+
+    private Long afterId;
+
+    private int limit;
+}
@@ -0,0 +1,9 @@
+package com.filesystem.secure.repository;
+
+import com.filesystem.secure.model.MigrationCheckpoint;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public interface MigrationCheckpointRepository extends JpaRepository<MigrationCheckpoint, String> {
+}
@@ -0,0 +1,60 @@
+package com.filesystem.secure.repository;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.ResultSet;
+import java.sql.Statement;
+
+/**
+ * Schema changes that {@code ddl-auto=update} never makes to existing columns
+ */
+@Slf4j
+public final class SchemaConstraints {
+
+    private SchemaConstraints() {
+    }
+
+    /**
+     * Drops the NOT NULL constraint of a column, if it has one
+     * @param jdbcTemplate the template of the database holding the table
+     * @param table the table name, in lower case
+     * @param column the column name
+     */
+    public static void dropNotNull(JdbcTemplate jdbcTemplate, String table, String column) {
+        jdbcTemplate.execute((Connection connection) -> {
+            DatabaseMetaData metaData = connection.getMetaData();
+            for (String tableName : new String[] {table, table.toUpperCase()}) {
+                try (ResultSet columns = metaData.getColumns(connection.getCatalog(), null, tableName, null)) {
+                    while (columns.next()) {
+                        if (!column.equalsIgnoreCase(columns.getString("COLUMN_NAME"))
+                                || columns.getInt("NULLABLE") != DatabaseMetaData.columnNoNulls) {
+                            continue;
+                        }
+                        String product = metaData.getDatabaseProductName().toLowerCase();
+                        String ddl;
+                        if (product.contains("mysql") || product.contains("mariadb")) {
+                            String type = columns.getString("TYPE_NAME");
+                            if (type.toUpperCase().contains("CHAR")) {
+                                type += "(" + columns.getInt("COLUMN_SIZE") + ")";
+                            }
+                            ddl = "ALTER TABLE " + table + " MODIFY " + column + " " + type + " NULL";
+                        } else if (product.contains("h2")) {
+                            ddl = "ALTER TABLE " + table + " ALTER COLUMN " + column + " SET NULL";
+                        } else {
+                            ddl = "ALTER TABLE " + table + " ALTER COLUMN " + column + " DROP NOT NULL";
+                        }
+                        log.info("Relaxing legacy column: {}", ddl);
+                        try (Statement statement = connection.createStatement()) {
+                            statement.execute(ddl);
+                        }
+                        return null;
+                    }
+                }
+            }
+            return null;
+        });
+    }
+}
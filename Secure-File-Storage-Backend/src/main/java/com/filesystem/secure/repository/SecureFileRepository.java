@@ -1,15 +1,132 @@
 package com.filesystem.secure.repository;
 
+import com.filesystem.secure.model.FileAccess;
+import com.filesystem.secure.model.FileDataKey;
+import com.filesystem.secure.model.FileSummary;
 import com.filesystem.secure.model.SecureFile;
+import com.filesystem.secure.model.UserStorage;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
 @Repository
-public interface SecureFileRepository extends JpaRepository<SecureFile, Long> {
-    List<SecureFile> findByUserIdOrderByUploadDateDesc(String userId);
-    List<SecureFile> findAllByOrderByUploadDateDesc();
+public interface SecureFileRepository extends JpaRepository<SecureFile, Long>, SecureFileRepositoryCustom {
+    String SUMMARY_SELECT = "select new com.filesystem.secure.model.FileSummary("
+            + "f.id, f.originalFileName, f.contentType, f.fileSize, f.uploadDate, f.userId, f.expiresAt) "
+            + "from SecureFile f ";
+    String NOT_EXPIRED = "(f.expiresAt is null or f.expiresAt > :now) ";
+    String ACCESS_SELECT = "select new com.filesystem.secure.model.FileAccess("
+            + "f.id, f.userId, f.downloadKeyHash, f.legacyDownloadKey, f.blobId, f.contentHash, f.fileSize, f.expiresAt) "
+            + "from SecureFile f ";
+
+    @Query(SUMMARY_SELECT + "where f.userId = :userId and " + NOT_EXPIRED + "order by f.uploadDate desc")
+    List<FileSummary> findSummariesByUserId(@Param("userId") String userId, @Param("now") LocalDateTime now);
+
+    @Query(SUMMARY_SELECT + "where " + NOT_EXPIRED + "order by f.uploadDate desc")
+    List<FileSummary> findAllSummaries(@Param("now") LocalDateTime now);
+
     Optional<SecureFile> findByFileName(String fileName);
+
+    @Query(ACCESS_SELECT + "where f.id = :id")
+    Optional<FileAccess> findAccessById(@Param("id") Long id);
+
+    @Query(ACCESS_SELECT + "where f.id in :ids")
+    List<FileAccess> findAccessByIds(@Param("ids") Collection<Long> ids);
+
+    @Query(ACCESS_SELECT + "where f.expiresAt <= :now and f.id > :afterId order by f.id")
+    List<FileAccess> findExpired(@Param("now") LocalDateTime now, @Param("afterId") Long afterId, Limit limit);
+
+    @Transactional
+    @Modifying
+    @Query("update SecureFile f set f.expiresAt = :now where f.id in :ids and f.userId = :userId "
+            + "and (f.expiresAt is null or f.expiresAt > :now)")
+    int expireFiles(@Param("ids") Collection<Long> ids, @Param("userId") String userId, @Param("now") LocalDateTime now);
+
+    @Transactional
+    @Modifying
+    @Query("delete from SecureFile f where f.id = :id")
+    int deleteFileById(@Param("id") Long id);
+
+    Optional<SecureFile> findFirstByUserIdAndContentHash(String userId, String contentHash);
+
+    long countByBlobId(String blobId);
+
+    @Query("select coalesce(sum(f.fileSize), 0) from SecureFile f where f.userId = :userId")
+    long sumFileSizeByUserId(@Param("userId") String userId);
+
+    @Query("select new com.filesystem.secure.model.UserStorage(f.userId, sum(f.fileSize)) "
+            + "from SecureFile f where f.userId in :userIds group by f.userId")
+    List<UserStorage> sumFileSizeByUserIds(@Param("userIds") Collection<String> userIds);
+
+    @Query("select new com.filesystem.secure.model.FileDataKey(f.id, f.wrappedDataKey, f.keyVersion) "
+            + "from SecureFile f where f.wrappedDataKey is not null and f.keyVersion <> :keyVersion and f.id > :afterId "
+            + "order by f.id")
+    List<FileDataKey> findDataKeysNotWrappedWith(@Param("keyVersion") int keyVersion, @Param("afterId") Long afterId,
+                                                 Limit limit);
+
+    @Query("select count(f) from SecureFile f where f.wrappedDataKey is not null and f.keyVersion <> :keyVersion")
+    long countDataKeysNotWrappedWith(@Param("keyVersion") int keyVersion);
+
+    @Query("select f.id from SecureFile f where f.blobId is null and f.encryptedData is not null and f.id > :afterId order by f.id")
+    List<Long> findLobBackedFileIds(@Param("afterId") Long afterId, Limit limit);
+
+    @Query("select count(f) from SecureFile f where f.blobId is null and f.encryptedData is not null")
+    long countLobBackedFiles();
+
+    @Transactional
+    @Modifying
+    @Query("update SecureFile f set f.blobId = :blobId, f.cipherDigest = :cipherDigest, f.encryptedData = null "
+            + "where f.id = :id and f.blobId is null")
+    int moveLobToBlob(@Param("id") Long id, @Param("blobId") String blobId, @Param("cipherDigest") String cipherDigest);
+
+    @Query("select f.id from SecureFile f where f.blobId is not null and f.id > :afterId order by f.id")
+    List<Long> findBlobBackedFileIds(@Param("afterId") Long afterId, Limit limit);
+
+    @Query("select count(f) from SecureFile f where f.blobId is not null")
+    long countBlobBackedFiles();
+
+    @Transactional
+    @Modifying
+    @Query("update SecureFile f set f.cipherDigest = :cipherDigest where f.blobId = :blobId and f.cipherDigest is null")
+    int recordCipherDigest(@Param("blobId") String blobId, @Param("cipherDigest") String cipherDigest);
+
+    @Query("select f.id from SecureFile f where f.downloadKeyHash is null and f.legacyDownloadKey is not null "
+            + "and f.id > :afterId order by f.id")
+    List<Long> findIdsWithPlaintextDownloadKey(@Param("afterId") Long afterId, Limit limit);
+
+    @Query("select count(f) from SecureFile f where f.downloadKeyHash is null and f.legacyDownloadKey is not null")
+    long countWithPlaintextDownloadKey();
+
+    @Transactional
+    @Modifying
+    @Query("update SecureFile f set f.downloadKeyHash = :downloadKeyHash, f.legacyDownloadKey = null "
+            + "where f.id = :id and f.legacyDownloadKey = :downloadKey and f.downloadKeyHash is null")
+    int hashDownloadKey(@Param("id") Long id, @Param("downloadKey") String downloadKey,
+                        @Param("downloadKeyHash") String downloadKeyHash);
+
+    @Query("select f.id from SecureFile f where f.wrappedDataKey is null and f.blobId is not null and f.id > :afterId "
+            + "order by f.id")
+    List<Long> findBlobBackedIdsWithoutDataKey(@Param("afterId") Long afterId, Limit limit);
+
+    @Query("select count(f) from SecureFile f where f.wrappedDataKey is null and f.blobId is not null")
+    long countBlobBackedWithoutDataKey();
+
+    @Transactional
+    @Modifying
+    @Query("update SecureFile f set f.blobId = :newBlobId, f.cipherDigest = :cipherDigest, f.encryptionIv = :encryptionIv, "
+            + "f.segmentSize = :segmentSize, f.wrappedDataKey = :wrappedDataKey, f.keyVersion = :keyVersion "
+            + "where f.blobId = :blobId and f.wrappedDataKey is null")
+    int replaceUnwrappedBlob(@Param("blobId") String blobId, @Param("newBlobId") String newBlobId,
+                             @Param("cipherDigest") String cipherDigest,
+                             @Param("encryptionIv") String encryptionIv, @Param("segmentSize") Integer segmentSize,
+                             @Param("wrappedDataKey") String wrappedDataKey, @Param("keyVersion") Integer keyVersion);
 }
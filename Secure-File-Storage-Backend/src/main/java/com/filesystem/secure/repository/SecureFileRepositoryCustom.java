@@ -0,0 +1,43 @@
+package com.filesystem.secure.repository;
+
+import com.filesystem.secure.model.FileSummary;
+import com.filesystem.secure.model.SecureFile;
+
+import java.io.OutputStream;
+import java.util.List;
+
+public interface SecureFileRepositoryCustom {
+
+    /**
+     * Finds one keyset page of file summaries, only adding the predicates for the
+     * filters that are actually set so the composite indexes stay usable
+     * @param query the filters, cursor position and page size
+     * @return at most {@code query.limit} summaries, newest first
+     */
+    List<FileSummary> findSummaries(FileQuery query);
+
+    /**
+     * Inserts new blob-backed files with one JDBC batch instead of a statement round-trip
+     * per row, which Hibernate cannot batch for identity-generated keys. Sets the
+     * generated ID on each file. Must run inside a transaction.
+     * @param files the files to insert, without IDs
+     */
+    void insertAll(List<SecureFile> files);
+
+    /**
+     * Deletes files by primary key with one JDBC batch, without loading them
+     * @param ids the IDs of the files to delete
+     * @return the number of rows each delete removed, in the order of {@code ids};
+     * drivers that do not report counts return {@link java.sql.Statement#SUCCESS_NO_INFO}
+     */
+    int[] deleteAllByIds(List<Long> ids);
+
+    /**
+     * Streams a file's legacy in-database ciphertext from the LOB column, which loading
+     * the entity leaves out
+     * @param id the ID of the file
+     * @param out the stream receiving the ciphertext
+     * @return the number of bytes copied, or -1 if the file has no in-database ciphertext
+     */
+    long copyEncryptedData(Long id, OutputStream out);
+}
@@ -0,0 +1,181 @@
+package com.filesystem.secure.repository;
+
+import com.filesystem.secure.model.FileSummary;
+import com.filesystem.secure.model.SecureFile;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import jakarta.persistence.criteria.CriteriaBuilder;
+import jakarta.persistence.criteria.CriteriaQuery;
+import jakarta.persistence.criteria.Path;
+import jakarta.persistence.criteria.Predicate;
+import jakarta.persistence.criteria.Root;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.support.GeneratedKeyHolder;
+import org.springframework.jdbc.support.KeyHolder;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+class SecureFileRepositoryImpl implements SecureFileRepositoryCustom {
+
+    private static final char LIKE_ESCAPE = '\\';
+    private static final String INSERT_SQL = "insert into secure_files (file_name, original_file_name, content_type, "
+            + "file_size, blob_id, upload_date, encryption_iv, segment_size, wrapped_data_key, key_version, content_hash, "
+            + "compression_codec, download_key_hash, user_id, cipher_digest, expires_at) "
+            + "values (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+    private static final String DELETE_SQL = "delete from secure_files where id = ?";
+    private static final String SELECT_ENCRYPTED_DATA_SQL =
+            "select encrypted_data from secure_files where id = ? and encrypted_data is not null";
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Override
+    public List<FileSummary> findSummaries(FileQuery query) {
+        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+        CriteriaQuery<FileSummary> criteria = cb.createQuery(FileSummary.class);
+        Root<SecureFile> file = criteria.from(SecureFile.class);
+        Path<LocalDateTime> uploadDate = file.get("uploadDate");
+        Path<Long> id = file.get("id");
+
+        List<Predicate> predicates = new ArrayList<>();
+        if (query.getUserId() != null) {
+            predicates.add(cb.equal(file.get("userId"), query.getUserId()));
+        }
+        if (query.getContentType() != null) {
+            predicates.add(cb.equal(file.get("contentType"), query.getContentType()));
+        }
+        if (query.getMinSize() != null) {
+            predicates.add(cb.ge(file.get("fileSize"), query.getMinSize()));
+        }
+        if (query.getMaxSize() != null) {
+            predicates.add(cb.le(file.get("fileSize"), query.getMaxSize()));
+        }
+        if (query.getNamePrefix() != null) {
+            predicates.add(cb.like(file.get("originalFileName"), escapeLike(query.getNamePrefix()) + "%", LIKE_ESCAPE));
+        }
+        Path<LocalDateTime> expiresAt = file.get("expiresAt");
+        predicates.add(cb.or(cb.isNull(expiresAt), cb.greaterThan(expiresAt, LocalDateTime.now())));
+        if (query.getAfterUploadDate() != null && query.getAfterId() != null) {
+            // (uploadDate, id) < (afterUploadDate, afterId) in descending order
+            predicates.add(cb.or(
+                    cb.lessThan(uploadDate, query.getAfterUploadDate()),
+                    cb.and(cb.equal(uploadDate, query.getAfterUploadDate()), cb.lessThan(id, query.getAfterId()))
+            ));
+        }
+
+        criteria.select(cb.construct(FileSummary.class,
+                        id,
+                        file.get("originalFileName"),
+                        file.get("contentType"),
+                        file.get("fileSize"),
+                        uploadDate,
+                        file.get("userId"),
+                        expiresAt))
+                .where(predicates.toArray(new Predicate[0]))
+                .orderBy(cb.desc(uploadDate), cb.desc(id));
+
+        return entityManager.createQuery(criteria)
+                .setMaxResults(query.getLimit())
+                .getResultList();
+    }
+
+    @Override
+    public void insertAll(List<SecureFile> files) {
+        if (files.isEmpty()) {
+            return;
+        }
+        KeyHolder keyHolder = new GeneratedKeyHolder();
+        jdbcTemplate.batchUpdate(
+                connection -> connection.prepareStatement(INSERT_SQL, new String[] {"id"}),
+                new BatchPreparedStatementSetter() {
+                    @Override
+                    public void setValues(PreparedStatement ps, int i) throws SQLException {
+                        SecureFile file = files.get(i);
+                        ps.setString(1, file.getFileName());
+                        ps.setString(2, file.getOriginalFileName());
+                        ps.setString(3, file.getContentType());
+                        ps.setLong(4, file.getFileSize());
+                        ps.setString(5, file.getBlobId());
+                        ps.setTimestamp(6, Timestamp.valueOf(file.getUploadDate()));
+                        ps.setString(7, file.getEncryptionIv());
+                        ps.setObject(8, file.getSegmentSize(), Types.INTEGER);
+                        ps.setString(9, file.getWrappedDataKey());
+                        ps.setObject(10, file.getKeyVersion(), Types.INTEGER);
+                        ps.setString(11, file.getContentHash());
+                        ps.setString(12, file.getCompressionCodec());
+                        ps.setString(13, file.getDownloadKeyHash());
+                        ps.setString(14, file.getUserId());
+                        ps.setString(15, file.getCipherDigest());
+                        ps.setTimestamp(16, file.getExpiresAt() != null ? Timestamp.valueOf(file.getExpiresAt()) : null);
+                    }
+
+                    @Override
+                    public int getBatchSize() {
+                        return files.size();
+                    }
+                },
+                keyHolder
+        );
+
+        List<Map<String, Object>> keys = keyHolder.getKeyList();
+        for (int i = 0; i < files.size(); i++) {
+            files.get(i).setId(((Number) keys.get(i).values().iterator().next()).longValue());
+        }
+    }
+
+    @Override
+    public int[] deleteAllByIds(List<Long> ids) {
+        if (ids.isEmpty()) {
+            return new int[0];
+        }
+        return jdbcTemplate.batchUpdate(DELETE_SQL, new BatchPreparedStatementSetter() {
+            @Override
+            public void setValues(PreparedStatement ps, int i) throws SQLException {
+                ps.setLong(1, ids.get(i));
+            }
+
+            @Override
+            public int getBatchSize() {
+                return ids.size();
+            }
+        });
+    }
+
+    @Override
+    public long copyEncryptedData(Long id, OutputStream out) {
+        Long copied = jdbcTemplate.query(SELECT_ENCRYPTED_DATA_SQL, rs -> {
+            if (!rs.next()) {
+                return -1L;
+            }
+            try (InputStream in = rs.getBinaryStream(1)) {
+                return in.transferTo(out);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }, id);
+        return copied != null ? copied : -1;
+    }
+
+    private static String escapeLike(String value) {
+        return value
+                .replace("\\", "\\\\")
+                .replace("%", "\\%")
+                .replace("_", "\\_");
+    }
+}
@@ -0,0 +1,68 @@
+package com.filesystem.secure.repository;
+
+import com.filesystem.secure.model.UploadChunk;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Repository
+public interface UploadChunkRepository extends JpaRepository<UploadChunk, UploadChunk.Key> {
+
+    @Query("select c.chunkIndex from UploadChunk c where c.uploadId = :uploadId and c.staged = true order by c.chunkIndex")
+    List<Integer> findChunkIndexes(@Param("uploadId") String uploadId);
+
+    @Query("select c from UploadChunk c where c.uploadId = :uploadId and c.staged = true order by c.chunkIndex")
+    List<UploadChunk> findStaged(@Param("uploadId") String uploadId);
+
+    /**
+     * Inserts the claim of a chunk sent for the first time, failing with a key violation
+     * if the chunk was claimed before
+     */
+    @Transactional
+    @Modifying
+    @Query(value = "insert into upload_chunks (upload_id, chunk_index, received_at, encryption_iv, staged) "
+            + "values (:uploadId, :chunkIndex, :now, :iv, false)", nativeQuery = true)
+    int claim(@Param("uploadId") String uploadId, @Param("chunkIndex") int chunkIndex, @Param("iv") String iv,
+              @Param("now") LocalDateTime now);
+
+    /**
+     * Hands a chunk claimed before to a new attempt, unless another attempt claimed it
+     * after {@code staleBefore} and is still encrypting
+     */
+    @Transactional
+    @Modifying
+    @Query("update UploadChunk c set c.encryptionIv = :iv, c.staged = false, c.receivedAt = :now "
+            + "where c.uploadId = :uploadId and c.chunkIndex = :chunkIndex "
+            + "and (c.staged = true or c.receivedAt < :staleBefore)")
+    int reclaim(@Param("uploadId") String uploadId, @Param("chunkIndex") int chunkIndex, @Param("iv") String iv,
+                @Param("now") LocalDateTime now, @Param("staleBefore") LocalDateTime staleBefore);
+
+    /**
+     * Records a chunk as staged, unless a newer attempt has taken it over
+     */
+    @Transactional
+    @Modifying
+    @Query("update UploadChunk c set c.staged = true, c.receivedAt = :now "
+            + "where c.uploadId = :uploadId and c.chunkIndex = :chunkIndex and c.encryptionIv = :iv")
+    int markStaged(@Param("uploadId") String uploadId, @Param("chunkIndex") int chunkIndex, @Param("iv") String iv,
+                   @Param("now") LocalDateTime now);
+
+    /**
+     * Drops the claim of a failed attempt, so the chunk can be sent again right away
+     */
+    @Transactional
+    @Modifying
+    @Query("delete from UploadChunk c where c.uploadId = :uploadId and c.chunkIndex = :chunkIndex "
+            + "and c.encryptionIv = :iv and c.staged = false")
+    int release(@Param("uploadId") String uploadId, @Param("chunkIndex") int chunkIndex, @Param("iv") String iv);
+
+    @Modifying
+    @Query("delete from UploadChunk c where c.uploadId = :uploadId")
+    int deleteByUploadId(@Param("uploadId") String uploadId);
+}
@@ -0,0 +1,33 @@
+package com.filesystem.secure.repository;
+
+import com.filesystem.secure.model.UploadSession;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Repository
+public interface UploadSessionRepository extends JpaRepository<UploadSession, String> {
+
+    @Transactional
+    @Modifying
+    @Query("update UploadSession s set s.updatedAt = :now where s.id = :id")
+    int touch(@Param("id") String id, @Param("now") LocalDateTime now);
+
+    @Query("select s.id from UploadSession s where s.updatedAt < :cutoff order by s.updatedAt")
+    List<String> findIdsUpdatedBefore(@Param("cutoff") LocalDateTime cutoff, Limit limit);
+
+    @Query("select s from UploadSession s where s.wrappedDataKey is not null and s.keyVersion <> :keyVersion "
+            + "and s.id > :afterId order by s.id")
+    List<UploadSession> findNotWrappedWith(@Param("keyVersion") int keyVersion, @Param("afterId") String afterId,
+                                           Limit limit);
+
+    @Query("select count(s) from UploadSession s where s.wrappedDataKey is not null and s.keyVersion <> :keyVersion")
+    long countNotWrappedWith(@Param("keyVersion") int keyVersion);
+}
@@ -0,0 +1,86 @@
+package com.filesystem.secure.service;
+
+import com.filesystem.secure.repository.SchemaConstraints;
+import com.filesystem.secure.repository.SecureFileRepository;
+import com.filesystem.secure.storage.BlobStore;
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.core.annotation.Order;
+import org.springframework.data.domain.Limit;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.List;
+
+/**
+ * Moves ciphertext still held in the legacy {@code encrypted_data} LOB column into the
+ * blob store. Run by {@link FileMigrationRunner} in the background after startup, one
+ * row per transaction, so the application keeps serving both migrated and not yet
+ * migrated files meanwhile.
+ */
+@Service
+@Order(1)
+@RequiredArgsConstructor
+@ConditionalOnProperty(name = "storage.migrate-lobs", havingValue = "true", matchIfMissing = true)
+public class BlobMigrationService implements FileMigration {
+
+    private static final String TABLE_NAME = "secure_files";
+    private static final String COLUMN_NAME = "encrypted_data";
+
+    private final SecureFileRepository fileRepository;
+    private final BlobStore blobStore;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+
+    @Override
+    public String getName() {
+        return "lob-to-blob";
+    }
+
+    @Override
+    public void prepare() {
+        relaxLobConstraint();
+    }
+
+    @Override
+    public List<Long> findPendingIds(Long afterId, Limit limit) {
+        return fileRepository.findLobBackedFileIds(afterId, limit);
+    }
+
+    @Override
+    public long countPending() {
+        return fileRepository.countLobBackedFiles();
+    }
+
+    @Override
+    public long migrate(Long fileId) {
+        Long bytes = transactionTemplate.execute(status -> migrateFile(fileId));
+        return bytes != null ? bytes : 0;
+    }
+
+    private long migrateFile(Long id) {
+        try (BlobStore.BlobWriter writer = blobStore.create()) {
+            // Streamed from the column, so a large LOB is never held in memory
+            long length = fileRepository.copyEncryptedData(id, writer.getOutputStream());
+            if (length < 0) {
+                return 0; // Deleted or migrated meanwhile
+            }
+            String blobId = writer.commit();
+            fileRepository.moveLobToBlob(id, blobId, blobStore.contentDigest(blobId));
+            return 2L * length; // Read from the database, written to the blob store
+        } catch (IOException | UncheckedIOException e) {
+            throw new IllegalStateException("Failed to migrate file ID: " + id, e);
+        }
+    }
+
+    /**
+     * Schemas created before the blob store declared the LOB column NOT NULL, and
+     * schema updates never relax existing columns, so drop the constraint here.
+     */
+    private void relaxLobConstraint() {
+        SchemaConstraints.dropNotNull(jdbcTemplate, TABLE_NAME, COLUMN_NAME);
+    }
+}
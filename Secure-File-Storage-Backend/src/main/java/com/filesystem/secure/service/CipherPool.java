@@ -0,0 +1,49 @@
+package com.filesystem.secure.service;
+
+import javax.crypto.Cipher;
+import javax.crypto.NoSuchPaddingException;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Keeps idle {@link Cipher} instances for reuse, since looking up a provider on every
+ * {@code Cipher.getInstance} call is costly for small payloads. The pool is lock-free,
+ * so borrowing never blocks or pins a virtual thread; when it is empty a new cipher is
+ * created, and at most {@code maxIdle} ciphers are kept once returned.
+ */
+class CipherPool {
+
+    private final String transformation;
+    private final int maxIdle;
+    private final ConcurrentLinkedQueue<Cipher> idle = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger idleCount = new AtomicInteger();
+
+    CipherPool(String transformation, int maxIdle) {
+        this.transformation = transformation;
+        this.maxIdle = maxIdle;
+    }
+
+    /**
+     * @return a cipher owned by the caller until it is released, it must be initialized before use
+     */
+    Cipher borrow() throws NoSuchAlgorithmException, NoSuchPaddingException {
+        Cipher cipher = idle.poll();
+        if (cipher != null) {
+            idleCount.decrementAndGet();
+            return cipher;
+        }
+        return Cipher.getInstance(transformation);
+    }
+
+    /**
+     * Returns a cipher to the pool, callers must not use it afterwards
+     */
+    void release(Cipher cipher) {
+        if (idleCount.incrementAndGet() <= maxIdle) {
+            idle.offer(cipher);
+        } else {
+            idleCount.decrementAndGet();
+        }
+    }
+}
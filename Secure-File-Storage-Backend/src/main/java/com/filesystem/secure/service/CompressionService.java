@@ -0,0 +1,160 @@
+package com.filesystem.secure.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Locale;
+import java.util.Set;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterInputStream;
+import java.util.zip.InflaterOutputStream;
+
+/**
+ * Optional compression in front of encryption, since ciphertext no longer compresses.
+ * The codec is picked per file: formats that are compressed already are skipped by
+ * content type, everything else is compressed only if a sample from the head of the
+ * stream shrinks enough.
+ */
+@Service
+public class CompressionService {
+
+    public static final String DEFLATE = "deflate";
+
+    private static final int SAMPLE_SIZE = 64 * 1024;
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private static final Set<String> COMPRESSED_TYPES = Set.of(
+            "application/zip",
+            "application/gzip",
+            "application/x-gzip",
+            "application/x-bzip2",
+            "application/x-xz",
+            "application/zstd",
+            "application/x-7z-compressed",
+            "application/x-rar-compressed",
+            "application/vnd.rar",
+            "application/java-archive",
+            "application/epub+zip"
+    );
+    private static final Set<String> COMPRESSED_TYPE_PREFIXES = Set.of(
+            "image/",
+            "video/",
+            "audio/",
+            "application/vnd.openxmlformats-officedocument.",
+            "application/vnd.oasis.opendocument."
+    );
+    private static final Set<String> UNCOMPRESSED_MEDIA_TYPES = Set.of(
+            "image/svg+xml",
+            "image/bmp",
+            "image/x-ms-bmp",
+            "audio/wav",
+            "audio/x-wav"
+    );
+
+    @Value("${compression.enabled:true}")
+    private boolean enabled;
+
+    @Value("${compression.level:1}")
+    private int level;
+
+    @Value("${compression.max-ratio:0.9}")
+    private double maxRatio; // Compressed sample size relative to the sample, at most
+
+    /**
+     * Chooses the codec for a file. Reads a sample from the head of the stream and
+     * resets it, so the stream must support {@link InputStream#mark(int)} for at least
+     * {@link #getSampleSize()} bytes.
+     * @param contentType the declared content type of the file
+     * @param in the plaintext, positioned at the start
+     * @return the codec to use, or null to store the file uncompressed
+     */
+    public String selectCodec(String contentType, InputStream in) throws IOException {
+        if (!enabled || isCompressedType(contentType)) {
+            return null;
+        }
+
+        in.mark(SAMPLE_SIZE);
+        byte[] sample = in.readNBytes(SAMPLE_SIZE);
+        in.reset();
+        if (sample.length == 0) {
+            return null;
+        }
+
+        Deflater deflater = new Deflater(level);
+        try {
+            deflater.setInput(sample);
+            deflater.finish();
+            byte[] output = new byte[sample.length];
+            long compressed = 0;
+            while (!deflater.finished()) {
+                compressed += deflater.deflate(output);
+                if (compressed > sample.length * maxRatio) {
+                    return null;
+                }
+            }
+            return DEFLATE;
+        } finally {
+            deflater.end();
+        }
+    }
+
+    /**
+     * @return the number of bytes {@link #selectCodec(String, InputStream)} samples
+     */
+    public int getSampleSize() {
+        return SAMPLE_SIZE;
+    }
+
+    /**
+     * Wraps plaintext so that reading it yields the compressed form. The caller must
+     * call {@link Deflater#end()} on the deflater once done.
+     * @param codec the codec returned by {@link #selectCodec(String, InputStream)}
+     * @param in the plaintext
+     * @param deflater the deflater to use, see {@link #newDeflater()}
+     * @return the compressed stream
+     */
+    public InputStream compress(String codec, InputStream in, Deflater deflater) {
+        requireKnown(codec);
+        return new DeflaterInputStream(in, deflater, BUFFER_SIZE);
+    }
+
+    /**
+     * @return a deflater at the configured level
+     */
+    public Deflater newDeflater() {
+        return new Deflater(level);
+    }
+
+    /**
+     * Wraps a stream so that compressed bytes written to it reach {@code out} decompressed.
+     * Call {@link InflaterOutputStream#finish()} when done; closing it would close {@code out}.
+     * @param codec the codec the content was stored with
+     * @param out the stream receiving the original bytes
+     * @return the decompressing stream
+     */
+    public static InflaterOutputStream decompress(String codec, OutputStream out) {
+        requireKnown(codec);
+        return new InflaterOutputStream(out);
+    }
+
+    private static boolean isCompressedType(String contentType) {
+        if (contentType == null) {
+            return false;
+        }
+        String mediaType = contentType.split(";", 2)[0].trim().toLowerCase(Locale.ROOT);
+        if (UNCOMPRESSED_MEDIA_TYPES.contains(mediaType)) {
+            return false;
+        }
+        return COMPRESSED_TYPES.contains(mediaType)
+                || COMPRESSED_TYPE_PREFIXES.stream().anyMatch(mediaType::startsWith);
+    }
+
+    private static void requireKnown(String codec) {
+        if (!DEFLATE.equals(codec)) {
+            throw new IllegalArgumentException("Unknown compression codec: " + codec);
+        }
+    }
+}
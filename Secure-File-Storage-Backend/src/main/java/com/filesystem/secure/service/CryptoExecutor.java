@@ -0,0 +1,68 @@
+package com.filesystem.secure.service;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.jvm.ExecutorServiceMetrics;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Fixed pool of platform threads for CPU-bound encryption work that a request fans
+ * out, such as the files of a batch upload. Its size caps how many cores crypto can
+ * take across all requests together, whatever threads the requests themselves run on.
+ * Deliberately not an {@link java.util.concurrent.Executor} bean, so Spring Boot keeps
+ * its own task executor for MVC async handling.
+ * <p>
+ * Tasks must not wait for other tasks of this executor, or a full pool deadlocks;
+ * work already running here checks {@link #isWorkerThread()} and stays inline.
+ */
+@Component
+public class CryptoExecutor {
+
+    private static final ThreadLocal<Boolean> WORKER = ThreadLocal.withInitial(() -> false);
+
+    private final int parallelism;
+    private final ExecutorService executor;
+
+    public CryptoExecutor(@Value("${crypto.parallelism:0}") int parallelism, MeterRegistry registry) {
+        this.parallelism = parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors();
+        ThreadFactory threads = Thread.ofPlatform().name("crypto-", 0).daemon().factory();
+        this.executor = ExecutorServiceMetrics.monitor(
+                registry,
+                Executors.newFixedThreadPool(this.parallelism, task -> threads.newThread(() -> {
+                    WORKER.set(true);
+                    task.run();
+                })),
+                "crypto"
+        );
+    }
+
+    /**
+     * @return the number of crypto threads
+     */
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    /**
+     * @return whether the calling thread is one of the crypto threads
+     */
+    public boolean isWorkerThread() {
+        return WORKER.get();
+    }
+
+    public <T> Future<T> submit(Callable<T> task) {
+        return executor.submit(task);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,47 @@
+package com.filesystem.secure.service;
+
+import com.filesystem.secure.repository.SecureFileRepository;
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.core.annotation.Order;
+import org.springframework.data.domain.Limit;
+import org.springframework.stereotype.Service;
+
+import java.util.List;
+
+/**
+ * Re-encrypts files stored before envelope encryption under data keys of their own, see
+ * {@link DataKeyService}, so that {@code encryption.secret} eventually protects nothing and
+ * key rotation covers every file. Runs after the LOB migration, which it depends on for
+ * moving content into the blob store first. Off by default, since it rewrites all such
+ * content once.
+ */
+@Service
+@Order(2)
+@RequiredArgsConstructor
+@ConditionalOnProperty(name = "migrations.data-keys.enabled", havingValue = "true")
+public class DataKeyMigration implements FileMigration {
+
+    private final SecureFileRepository fileRepository;
+    private final FileService fileService;
+
+    @Override
+    public String getName() {
+        return "data-keys";
+    }
+
+    @Override
+    public List<Long> findPendingIds(Long afterId, Limit limit) {
+        return fileRepository.findBlobBackedIdsWithoutDataKey(afterId, limit);
+    }
+
+    @Override
+    public long countPending() {
+        return fileRepository.countBlobBackedWithoutDataKey();
+    }
+
+    @Override
+    public long migrate(Long fileId) throws Exception {
+        return fileService.reencryptWithDataKey(fileId);
+    }
+}
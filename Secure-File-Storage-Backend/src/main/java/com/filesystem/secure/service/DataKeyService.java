@@ -0,0 +1,160 @@
+package com.filesystem.secure.service;
+
+import com.filesystem.secure.keys.KeyEncryptionKeyStore;
+import com.filesystem.secure.model.SecureFile;
+import com.filesystem.secure.model.UploadSession;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.SecretKeySpec;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.time.Duration;
+import java.util.Base64;
+
+/**
+ * Envelope encryption of file content. Every file is encrypted with its own random
+ * AES-256 data key, which is stored with the file wrapped (RFC 3394 AES key wrap) by
+ * a versioned key-encryption key from the {@link KeyEncryptionKeyStore}. Rotating the
+ * key-encryption key therefore only means rewrapping the small data keys, which
+ * {@link KeyRotationService} does in the background. Unwrapped data keys are kept in a
+ * bounded cache, so repeated downloads and the chunks of an upload unwrap only once.
+ * Files stored before envelope encryption carry no data key and keep using the key
+ * derived from {@code encryption.secret}.
+ */
+@Service
+public class DataKeyService {
+
+    private static final String WRAP_ALGORITHM = "AESWrap";
+    private static final int DATA_KEY_LENGTH = 32;
+
+    private final KeyEncryptionKeyStore keyStore;
+    private final EncryptionService encryptionService;
+    private final SecureRandom random = new SecureRandom();
+    private final Cache<String, SecretKey> unwrappedKeys;
+
+    public DataKeyService(KeyEncryptionKeyStore keyStore,
+                          EncryptionService encryptionService,
+                          @Value("${keys.cache.max-size:10000}") long maxSize,
+                          @Value("${keys.cache.ttl:PT10M}") Duration ttl,
+                          MeterRegistry registry) {
+        this.keyStore = keyStore;
+        this.encryptionService = encryptionService;
+        this.unwrappedKeys = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterAccess(ttl)
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(registry, unwrappedKeys, "data-keys");
+    }
+
+    /**
+     * Creates a data key for a new file, wrapped with the current key-encryption key
+     * @return the data key and its wrapped form
+     */
+    public DataKey generate() {
+        byte[] keyBytes = new byte[DATA_KEY_LENGTH];
+        random.nextBytes(keyBytes);
+        return wrap(new SecretKeySpec(keyBytes, "AES"));
+    }
+
+    /**
+     * @param file the stored file
+     * @return the key the file's content is encrypted with
+     */
+    public SecretKey keyFor(SecureFile file) {
+        if (file.getWrappedDataKey() == null) {
+            return encryptionService.getSecretKey();
+        }
+        return unwrap(file.getWrappedDataKey(), file.getKeyVersion());
+    }
+
+    /**
+     * @param session the chunked upload
+     * @return the key the upload's chunks are encrypted with
+     */
+    public SecretKey keyFor(UploadSession session) {
+        if (session.getWrappedDataKey() == null) {
+            return encryptionService.getSecretKey(); // Started before envelope encryption
+        }
+        return unwrap(session.getWrappedDataKey(), session.getKeyVersion());
+    }
+
+    /**
+     * @param wrappedKey the wrapped data key in Base64 format
+     * @param keyVersion the version of the key-encryption key it is wrapped with
+     * @return the data key
+     * @throws IllegalStateException if the key cannot be unwrapped
+     */
+    public SecretKey unwrap(String wrappedKey, int keyVersion) {
+        return unwrappedKeys.get(keyVersion + ":" + wrappedKey, cacheKey -> {
+            try {
+                Cipher cipher = Cipher.getInstance(WRAP_ALGORITHM);
+                cipher.init(Cipher.UNWRAP_MODE, keyStore.getKey(keyVersion));
+                return (SecretKey) cipher.unwrap(Base64.getDecoder().decode(wrappedKey), "AES", Cipher.SECRET_KEY);
+            } catch (GeneralSecurityException e) {
+                throw new IllegalStateException("Failed to unwrap data key of version " + keyVersion, e);
+            }
+        });
+    }
+
+    /**
+     * Wraps an existing data key again with the current key-encryption key
+     * @param wrappedKey the wrapped data key in Base64 format
+     * @param keyVersion the version of the key-encryption key it is wrapped with
+     * @return the same data key, wrapped with the current version
+     */
+    public DataKey rewrap(String wrappedKey, int keyVersion) {
+        return wrap(unwrap(wrappedKey, keyVersion));
+    }
+
+    /**
+     * @return the version of the key-encryption key new data keys are wrapped with
+     */
+    public int getCurrentVersion() {
+        return keyStore.getCurrentVersion();
+    }
+
+    private DataKey wrap(SecretKey dataKey) {
+        int version = keyStore.getCurrentVersion();
+        try {
+            Cipher cipher = Cipher.getInstance(WRAP_ALGORITHM);
+            cipher.init(Cipher.WRAP_MODE, keyStore.getKey(version));
+            String wrappedKey = Base64.getEncoder().encodeToString(cipher.wrap(dataKey));
+            unwrappedKeys.put(version + ":" + wrappedKey, dataKey);
+            return new DataKey(dataKey, wrappedKey, version);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Failed to wrap data key with version " + version, e);
+        }
+    }
+
+    public static class DataKey {
+        private final SecretKey key;
+        private final String wrappedKey;
+        private final int keyVersion;
+
+        public DataKey(SecretKey key, String wrappedKey, int keyVersion) {
+            this.key = key;
+            this.wrappedKey = wrappedKey;
+            this.keyVersion = keyVersion;
+        }
+
+        public SecretKey getKey() {
+            return key;
+        }
+
+        public String getWrappedKey() {
+            return wrappedKey;
+        }
+
+        public int getKeyVersion() {
+            return keyVersion;
+        }
+    }
+}
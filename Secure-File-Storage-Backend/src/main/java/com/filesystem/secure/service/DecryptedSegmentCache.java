@@ -0,0 +1,206 @@
+package com.filesystem.secure.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import com.github.benmanes.caffeine.cache.Scheduler;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Opt-in cache of decrypted segments for hot files, so repeated downloads of the same
+ * content skip the blob read and the cipher. Segments are held in direct buffers,
+ * outside the heap, weighed by their size against a byte budget, and evicted by
+ * Caffeine's W-TinyLFU policy, which keeps a few popular files resident while one-off
+ * downloads pass through. Entries expire a fixed time after they were decrypted, on
+ * the system scheduler rather than on the next cache access, and every buffer is
+ * zeroed once it leaves the cache so plaintext does not linger in memory.
+ * <p>
+ * Segments are read and decrypted outside of Caffeine's per-key computation, so a slow
+ * blob read never holds a cache lock or pins a virtual thread to its carrier; two
+ * concurrent misses on one segment may both decrypt it, and only one copy is kept.
+ * The segments of each blob are indexed for {@link #invalidate(String)}. An entry
+ * evicted while the same segment is cached again can drop out of the index, in which
+ * case invalidation misses it and it simply expires.
+ */
+@Component
+public class DecryptedSegmentCache {
+
+    private static final byte[] ZEROS = new byte[8192];
+
+    private final boolean enabled;
+    private final Cache<SegmentKey, Segment> cache;
+    private final Map<String, Set<SegmentKey>> segmentsByBlob = new ConcurrentHashMap<>();
+
+    public DecryptedSegmentCache(@Value("${cache.decrypted.enabled:false}") boolean enabled,
+                                 @Value("${cache.decrypted.max-size:256MB}") DataSize maxSize,
+                                 @Value("${cache.decrypted.ttl:PT5M}") Duration ttl,
+                                 MeterRegistry registry) {
+        this.enabled = enabled;
+        this.cache = Caffeine.newBuilder()
+                .maximumWeight(maxSize.toBytes())
+                .weigher((SegmentKey key, Segment segment) -> segment.length())
+                .expireAfterWrite(ttl)
+                .scheduler(Scheduler.systemScheduler())
+                // Runs atomically with the eviction, so a segment cached again right after keeps its index entry
+                .evictionListener((SegmentKey key, Segment segment, RemovalCause cause) -> {
+                    if (key != null) {
+                        unindex(key);
+                    }
+                })
+                .removalListener((SegmentKey key, Segment segment, RemovalCause cause) -> {
+                    if (segment != null) {
+                        segment.clear();
+                    }
+                })
+                .recordStats()
+                .build();
+        if (enabled) {
+            CaffeineCacheMetrics.monitor(registry, cache, "decrypted-segments");
+            Gauge.builder("cache.decrypted.bytes", cache, c -> c.policy().eviction().orElseThrow().weightedSize().orElse(0))
+                    .description("Plaintext bytes currently held by the decrypted segment cache")
+                    .baseUnit("bytes")
+                    .register(registry);
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Writes part of a decrypted segment, decrypting and caching it first on a miss
+     * @param blobId the blob holding the ciphertext
+     * @param segmentIndex the zero-based segment index
+     * @param loader decrypts the segment on a miss, into a new array the cache may overwrite
+     * @param out the stream receiving the plaintext
+     * @param from the first byte of the segment to write
+     * @param to the end of the bytes to write, exclusive, or -1 for the rest of the segment
+     * @param buffer scratch space of at least the segment size for copying out of direct memory
+     */
+    public void writeSegment(String blobId, int segmentIndex, SegmentLoader loader, OutputStream out,
+                             int from, int to, byte[] buffer) throws Exception {
+        SegmentKey key = new SegmentKey(blobId, segmentIndex);
+        Segment cached = cache.getIfPresent(key);
+        if (cached != null) {
+            int copied = cached.copyTo(buffer, from, to);
+            // A segment zeroed by its removal since the lookup counts as a miss
+            if (copied >= 0) {
+                out.write(buffer, 0, copied);
+                return;
+            }
+        }
+
+        byte[] plain = loader.load();
+        try {
+            out.write(plain, from, (to < 0 ? plain.length : to) - from);
+            Segment segment = new Segment(ByteBuffer.allocateDirect(plain.length).put(plain).flip());
+            // Indexed first, so an eviction following the insert always finds the index entry to remove
+            index(key);
+            if (cache.asMap().putIfAbsent(key, segment) != null) {
+                // Another request cached it meanwhile
+                segment.clear();
+            }
+        } finally {
+            Arrays.fill(plain, (byte) 0);
+        }
+    }
+
+    /**
+     * Drops every cached segment of a blob
+     * @param blobId the blob identifier
+     */
+    public void invalidate(String blobId) {
+        if (enabled) {
+            Set<SegmentKey> keys = segmentsByBlob.remove(blobId);
+            if (keys != null) {
+                cache.invalidateAll(keys);
+            }
+        }
+    }
+
+    private void index(SegmentKey key) {
+        segmentsByBlob.compute(key.blobId(), (blobId, keys) -> {
+            Set<SegmentKey> indexed = keys != null ? keys : ConcurrentHashMap.newKeySet();
+            indexed.add(key);
+            return indexed;
+        });
+    }
+
+    private void unindex(SegmentKey key) {
+        segmentsByBlob.computeIfPresent(key.blobId(), (blobId, keys) -> {
+            keys.remove(key);
+            return keys.isEmpty() ? null : keys;
+        });
+    }
+
+    @FunctionalInterface
+    public interface SegmentLoader {
+        byte[] load() throws Exception;
+    }
+
+    private record SegmentKey(String blobId, int segmentIndex) {
+    }
+
+    /**
+     * A decrypted segment in direct memory. Reads copy out under a shared lock, so the
+     * buffer is never zeroed in the middle of a copy.
+     */
+    private static final class Segment {
+        private final ByteBuffer plain;
+        private final ReadWriteLock lock = new ReentrantReadWriteLock();
+        private boolean cleared;
+
+        private Segment(ByteBuffer plain) {
+            this.plain = plain;
+        }
+
+        int length() {
+            return plain.limit();
+        }
+
+        /**
+         * @return the number of bytes copied, or -1 if the segment was cleared
+         */
+        int copyTo(byte[] buffer, int from, int to) {
+            lock.readLock().lock();
+            try {
+                if (cleared) {
+                    return -1;
+                }
+                int length = (to < 0 ? plain.limit() : to) - from;
+                // Absolute get, so concurrent readers of the same buffer do not interfere
+                plain.get(from, buffer, 0, length);
+                return length;
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+
+        void clear() {
+            lock.writeLock().lock();
+            try {
+                for (int offset = 0; offset < plain.capacity(); offset += ZEROS.length) {
+                    plain.put(offset, ZEROS, 0, Math.min(ZEROS.length, plain.capacity() - offset));
+                }
+                cleared = true;
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package com.filesystem.secure.service;
+
+import com.filesystem.secure.model.FileAccess;
+import com.filesystem.secure.repository.SchemaConstraints;
+import com.filesystem.secure.repository.SecureFileRepository;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import org.springframework.core.annotation.Order;
+import org.springframework.data.domain.Limit;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import java.util.List;
+
+/**
+ * Replaces the plaintext download keys of files stored before keys were hashed with
+ * their {@link EncryptionService#hashDownloadKey hash}, so that no row keeps a key a
+ * leaked table would give away. Runs first, as it only rewrites a column per file.
+ */
+@Service
+@Order(0)
+@RequiredArgsConstructor
+public class DownloadKeyMigration implements FileMigration {
+
+    private static final String TABLE_NAME = "secure_files";
+    private static final String COLUMN_NAME = "download_key";
+
+    private final SecureFileRepository fileRepository;
+    private final EncryptionService encryptionService;
+    private final JdbcTemplate jdbcTemplate;
+
+    /**
+     * Schemas created before keys were hashed declared the plaintext key NOT NULL, and
+     * schema updates never relax existing columns. Dropped at startup rather than before
+     * the pass, since every upload inserts a row without a plaintext key.
+     */
+    @PostConstruct
+    void relaxKeyConstraint() {
+        SchemaConstraints.dropNotNull(jdbcTemplate, TABLE_NAME, COLUMN_NAME);
+    }
+
+    @Override
+    public String getName() {
+        return "hash-download-keys";
+    }
+
+    @Override
+    public List<Long> findPendingIds(Long afterId, Limit limit) {
+        return fileRepository.findIdsWithPlaintextDownloadKey(afterId, limit);
+    }
+
+    @Override
+    public long countPending() {
+        return fileRepository.countWithPlaintextDownloadKey();
+    }
+
+    @Override
+    public long migrate(Long fileId) {
+        FileAccess access = fileRepository.findAccessById(fileId).orElse(null);
+        if (access == null || access.getDownloadKeyHash() != null || access.getLegacyDownloadKey() == null) {
+            return 0;
+        }
+        fileRepository.hashDownloadKey(fileId, access.getLegacyDownloadKey(),
+                encryptionService.hashDownloadKey(access.getLegacyDownloadKey()));
+        return 0;
+    }
+}
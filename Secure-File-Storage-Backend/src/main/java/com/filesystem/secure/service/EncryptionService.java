@@ -1,13 +1,27 @@
 package com.filesystem.secure.service;
 
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 import javax.crypto.Cipher;
 import javax.crypto.KeyGenerator;
+import javax.crypto.Mac;
 import javax.crypto.SecretKey;
 import javax.crypto.spec.GCMParameterSpec;
 import javax.crypto.spec.SecretKeySpec;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.SeekableByteChannel;
+import java.security.GeneralSecurityException;
 import java.security.SecureRandom;
+import java.util.ArrayDeque;
 import java.util.Base64;
+import java.util.HexFormat;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 import org.springframework.beans.factory.annotation.Value;
 import java.nio.charset.StandardCharsets;
 
@@ -17,9 +31,28 @@ public class EncryptionService {
     private static final String ALGORITHM = "AES/GCM/NoPadding";
     private static final int GCM_IV_LENGTH = 12;
     private static final int GCM_TAG_LENGTH = 16;
+    private static final int SEGMENT_AAD_LENGTH = 5;
+    private static final String CONTENT_HASH_ALGORITHM = "HmacSHA256";
     
     @Value("${encryption.secret:defaultSecretKey12345678901234567890}")
     private String secretKey;
+
+    @Value("${encryption.segment-size:65536}")
+    private int segmentSize;
+
+    @Value("${encryption.parallelism:4}")
+    private int parallelism; // Segments of one stream in flight at most, 1 transforms them on the calling thread
+
+    @Autowired(required = false)
+    private CryptoExecutor cryptoExecutor;
+
+    // Shared across threads: SecureRandom and SecretKeySpec are thread-safe, Cipher
+    // instances are not and are handed out one per operation by the pool
+    private final SecureRandom random = new SecureRandom();
+    private final CipherPool cipherPool = new CipherPool(ALGORITHM, 2 * Runtime.getRuntime().availableProcessors());
+    private volatile SecretKey derivedKey;
+    private volatile SecretKey contentHashKey;
+    private volatile SecretKey downloadKeyHashKey;
     
     /**
      * Encrypts the given data using AES-GCM algorithm
@@ -29,21 +62,24 @@ public class EncryptionService {
     public EncryptionResult encrypt(byte[] data) throws Exception {
         // Generate a random 12-byte IV
         byte[] iv = new byte[GCM_IV_LENGTH];
-        SecureRandom random = new SecureRandom();
         random.nextBytes(iv);
         
         // Get the encryption key
         SecretKey key = getSecretKey();
         
-        // Initialize the cipher for encryption
-        Cipher cipher = Cipher.getInstance(ALGORITHM);
-        GCMParameterSpec spec = new GCMParameterSpec(GCM_TAG_LENGTH * 8, iv);
-        cipher.init(Cipher.ENCRYPT_MODE, key, spec);
-        
-        // Encrypt the data
-        byte[] encryptedData = cipher.doFinal(data);
-        
-        return new EncryptionResult(encryptedData, Base64.getEncoder().encodeToString(iv));
+        // Borrow a cipher and initialize it for encryption
+        Cipher cipher = cipherPool.borrow();
+        try {
+            GCMParameterSpec spec = new GCMParameterSpec(GCM_TAG_LENGTH * 8, iv);
+            cipher.init(Cipher.ENCRYPT_MODE, key, spec);
+
+            // Encrypt the data
+            byte[] encryptedData = cipher.doFinal(data);
+
+            return new EncryptionResult(encryptedData, Base64.getEncoder().encodeToString(iv));
+        } finally {
+            cipherPool.release(cipher);
+        }
     }
     
     /**
@@ -59,24 +95,524 @@ public class EncryptionService {
         // Decode the IV from Base64
         byte[] iv = Base64.getDecoder().decode(ivBase64);
         
-        // Initialize the cipher for decryption
-        Cipher cipher = Cipher.getInstance(ALGORITHM);
-        GCMParameterSpec spec = new GCMParameterSpec(GCM_TAG_LENGTH * 8, iv);
-        cipher.init(Cipher.DECRYPT_MODE, key, spec);
-        
-        // Decrypt the data
-        return cipher.doFinal(encryptedData);
+        // Borrow a cipher and initialize it for decryption
+        Cipher cipher = cipherPool.borrow();
+        try {
+            GCMParameterSpec spec = new GCMParameterSpec(GCM_TAG_LENGTH * 8, iv);
+            cipher.init(Cipher.DECRYPT_MODE, key, spec);
+
+            // Decrypt the data
+            return cipher.doFinal(encryptedData);
+        } finally {
+            cipherPool.release(cipher);
+        }
     }
     
-    private SecretKey getSecretKey() {
-        // For production, the key should be securely stored and not derived from a string
-        byte[] keyBytes = secretKey.getBytes(StandardCharsets.UTF_8);
-        // Use first 32 bytes (256 bits) for AES-256
-        byte[] key32Bytes = new byte[32];
-        System.arraycopy(keyBytes, 0, key32Bytes, 0, Math.min(keyBytes.length, 32));
-        return new SecretKeySpec(key32Bytes, "AES");
+    /**
+     * Encrypts a stream as a sequence of independently authenticated AES-GCM segments.
+     * Every segment holds {@code segmentSize} plaintext bytes (the last one may be shorter)
+     * followed by its tag, and uses the base IV with the segment index folded into its
+     * last four bytes as nonce. The segment index and a last-segment flag are bound as
+     * associated data, so reordered or truncated ciphertext fails authentication.
+     * Only a few segment-sized buffers are held in memory at any time.
+     * @param key the data key of the file, see {@link DataKeyService}
+     * @param in the plaintext to encrypt
+     * @param out the stream receiving the ciphertext segments
+     * @return the base initialization vector, segment size, byte counts and the time
+     * spent inside the cipher, which excludes reading and writing the streams
+     */
+    public StreamEncryptionResult encrypt(SecretKey key, InputStream in, OutputStream out) throws Exception {
+        return encryptSegments(key, in, out, generateIv(), segmentSize, 0, true);
+    }
+
+    /**
+     * Encrypts part of a segmented stream, starting at the given segment index, so that
+     * separately encrypted parts concatenate into the output of
+     * {@link #encrypt(SecretKey, InputStream, OutputStream)}. Every part except the final
+     * one must hold a whole number of segments.
+     * @param key the data key shared by all parts
+     * @param in the plaintext of this part
+     * @param out the stream receiving the ciphertext segments of this part
+     * @param ivBase64 the base initialization vector shared by all parts, in Base64 format
+     * @param segmentSize the plaintext segment size shared by all parts
+     * @param firstSegmentIndex the index of the first segment in this part
+     * @param finalPart whether this part ends the stream, so its last segment is flagged as such
+     * @return the initialization vector, segment size, byte counts and cipher time of this part
+     */
+    public StreamEncryptionResult encryptSegments(SecretKey key, InputStream in, OutputStream out, String ivBase64,
+                                                  int segmentSize, int firstSegmentIndex, boolean finalPart) throws Exception {
+        SegmentTotals totals = transformSegments(Cipher.ENCRYPT_MODE, key, in, out, ivBase64, segmentSize,
+                firstSegmentIndex, Long.MAX_VALUE, finalPart);
+        return new StreamEncryptionResult(ivBase64, segmentSize, totals.inputLength, totals.outputLength, totals.cipherNanos);
+    }
+
+    /**
+     * Decrypts a stream produced by {@link #encrypt(SecretKey, InputStream, OutputStream)}
+     * @param key the data key the stream was encrypted with
+     * @param in the ciphertext segments
+     * @param out the stream receiving the plaintext
+     * @param ivBase64 the base initialization vector in Base64 format
+     * @param segmentSize the plaintext segment size the data was encrypted with
+     * @return the nanoseconds spent inside the cipher, excluding stream I/O
+     */
+    public long decrypt(SecretKey key, InputStream in, OutputStream out, String ivBase64, int segmentSize) throws Exception {
+        return transformSegments(Cipher.DECRYPT_MODE, key, in, out, ivBase64, segmentSize, 0, Long.MAX_VALUE, true).cipherNanos;
+    }
+
+    /**
+     * Decrypts the plaintext byte range {@code [start, end]} of segmented ciphertext.
+     * Only the segments covering the range are read and authenticated, so the cost
+     * does not depend on where in the file the range lies.
+     * @param key the data key the ciphertext was encrypted with
+     * @param channel the ciphertext segments
+     * @param out the stream receiving the requested plaintext bytes
+     * @param ivBase64 the base initialization vector in Base64 format
+     * @param segmentSize the plaintext segment size the data was encrypted with
+     * @param start the first plaintext byte to write, inclusive
+     * @param end the last plaintext byte to write, inclusive
+     * @return the nanoseconds spent inside the cipher, excluding channel and stream I/O
+     */
+    public long decryptRange(SecretKey key, SeekableByteChannel channel, OutputStream out, String ivBase64, int segmentSize,
+                             long start, long end) throws Exception {
+        long encryptedLength = channel.size();
+        long segmentCount = segmentCount(encryptedLength, segmentSize);
+        long plainLength = encryptedLength - segmentCount * GCM_TAG_LENGTH;
+        if (start < 0 || end < start || end >= plainLength) {
+            throw new IllegalArgumentException("Range " + start + "-" + end + " outside of " + plainLength + " bytes");
+        }
+
+        int firstSegment = (int) (start / segmentSize);
+        int lastSegment = (int) (end / segmentSize);
+        channel.position(segmentOffset(firstSegment, segmentSize));
+        long cipherNanos = transformSegments(
+                Cipher.DECRYPT_MODE,
+                key,
+                Channels.newInputStream(channel),
+                new SliceOutputStream(out, start % segmentSize, end - start + 1),
+                ivBase64,
+                segmentSize,
+                firstSegment,
+                lastSegment - firstSegment + 1,
+                lastSegment == segmentCount - 1
+        ).cipherNanos;
+        out.flush();
+        return cipherNanos;
+    }
+
+    /**
+     * Reads and decrypts a single segment of segmented ciphertext
+     * @param key the data key the ciphertext was encrypted with
+     * @param channel the ciphertext segments
+     * @param ivBase64 the base initialization vector in Base64 format
+     * @param segmentSize the plaintext segment size the data was encrypted with
+     * @param segmentIndex the zero-based index of the segment
+     * @return the plaintext of the segment, {@code segmentSize} bytes except for the last segment
+     */
+    public byte[] decryptSegment(SecretKey key, SeekableByteChannel channel, String ivBase64, int segmentSize, int segmentIndex)
+            throws Exception {
+        long encryptedLength = channel.size();
+        long segmentCount = segmentCount(encryptedLength, segmentSize);
+        if (segmentIndex < 0 || segmentIndex >= segmentCount) {
+            throw new IllegalArgumentException("Segment " + segmentIndex + " outside of " + segmentCount + " segments");
+        }
+
+        long position = segmentOffset(segmentIndex, segmentSize);
+        ByteBuffer input = ByteBuffer.allocate((int) Math.min(segmentSize + GCM_TAG_LENGTH, encryptedLength - position));
+        channel.position(position);
+        while (input.hasRemaining()) {
+            if (channel.read(input) < 0) {
+                throw new IOException("Unexpected end of ciphertext in segment " + segmentIndex);
+            }
+        }
+
+        byte[] iv = Base64.getDecoder().decode(ivBase64);
+        Cipher cipher = cipherPool.borrow();
+        try {
+            cipher.init(Cipher.DECRYPT_MODE, key, segmentSpec(iv, segmentIndex));
+            cipher.updateAAD(segmentAad(segmentIndex, segmentIndex == segmentCount - 1));
+            return cipher.doFinal(input.array());
+        } finally {
+            cipherPool.release(cipher);
+        }
+    }
+
+    /**
+     * Opens the plaintext of segmented ciphertext as a stream, decrypting one segment at
+     * a time as it is read. Unlike {@link #decrypt(SecretKey, InputStream, OutputStream, String, int)}
+     * the caller pulls, so the plaintext can be fed into another encryption directly.
+     * @param key the data key the ciphertext was encrypted with
+     * @param channel the ciphertext segments, closed with the returned stream
+     * @param ivBase64 the base initialization vector in Base64 format
+     * @param segmentSize the plaintext segment size the data was encrypted with
+     * @return the plaintext stream
+     */
+    public InputStream decryptingStream(SecretKey key, SeekableByteChannel channel, String ivBase64, int segmentSize)
+            throws IOException {
+        return new DecryptingInputStream(key, channel, ivBase64, segmentSize, 0, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Opens the plaintext of consecutive segments as a stream, like
+     * {@link #decryptingStream(SecretKey, SeekableByteChannel, String, int)}, for
+     * ciphertext whose parts were encrypted under base IVs of their own
+     * @param key the data key the ciphertext was encrypted with
+     * @param channel the ciphertext segments of the whole stream, closed with the returned stream
+     * @param ivBase64 the base initialization vector of these segments in Base64 format
+     * @param segmentSize the plaintext segment size the data was encrypted with
+     * @param firstSegmentIndex the index of the first segment to decrypt
+     * @param segmentLimit the maximum number of segments to decrypt
+     * @return the plaintext stream
+     */
+    public InputStream decryptingStream(SecretKey key, SeekableByteChannel channel, String ivBase64, int segmentSize,
+                                        int firstSegmentIndex, int segmentLimit) throws IOException {
+        return new DecryptingInputStream(key, channel, ivBase64, segmentSize, firstSegmentIndex, segmentLimit);
+    }
+
+    /**
+     * Computes how many segments a segmented ciphertext holds
+     * @param encryptedLength the ciphertext length in bytes
+     * @param segmentSize the plaintext segment size
+     * @return the number of segments, at least one
+     */
+    public static long segmentCount(long encryptedLength, int segmentSize) {
+        long encryptedSegmentSize = segmentSize + GCM_TAG_LENGTH;
+        return Math.max(1, (encryptedLength + encryptedSegmentSize - 1) / encryptedSegmentSize);
+    }
+
+    /**
+     * Computes the size of the segmented ciphertext for a plaintext of the given length
+     * @param plainLength the plaintext length in bytes
+     * @param segmentSize the plaintext segment size
+     * @return the ciphertext length in bytes
+     */
+    public static long encryptedLength(long plainLength, int segmentSize) {
+        long segments = Math.max(1, (plainLength + segmentSize - 1) / segmentSize);
+        return plainLength + segments * GCM_TAG_LENGTH;
+    }
+
+    /**
+     * Computes where a segment starts within segmented ciphertext
+     * @param segmentIndex the zero-based segment index
+     * @param segmentSize the plaintext segment size
+     * @return the ciphertext byte offset of the segment
+     */
+    public static long segmentOffset(long segmentIndex, int segmentSize) {
+        return segmentIndex * (segmentSize + GCM_TAG_LENGTH);
+    }
+
+    public int getSegmentSize() {
+        return segmentSize;
+    }
+
+    /**
+     * @return a fresh random 12-byte base initialization vector in Base64 format
+     */
+    public String generateIv() {
+        byte[] iv = new byte[GCM_IV_LENGTH];
+        random.nextBytes(iv);
+        return Base64.getEncoder().encodeToString(iv);
+    }
+
+    /**
+     * Creates a MAC that fingerprints plaintext within one user's scope. The key is derived
+     * from the encryption secret and the user ID is mixed in first, so equal content yields
+     * equal hashes for the same user only and the stored hash reveals nothing without the secret.
+     * @param userId the owner of the content
+     * @return a MAC primed with the user ID, ready for the content bytes
+     */
+    public Mac contentMac(String userId) throws Exception {
+        SecretKey key = contentHashKey;
+        if (key == null) {
+            key = deriveMacKey("content-hash");
+            contentHashKey = key;
+        }
+        Mac mac = Mac.getInstance(CONTENT_HASH_ALGORITHM);
+        mac.init(key);
+        byte[] user = userId.getBytes(StandardCharsets.UTF_8);
+        mac.update(ByteBuffer.allocate(Integer.BYTES).putInt(user.length).array());
+        mac.update(user);
+        return mac;
+    }
+
+    /**
+     * Hashes a download key for storage and comparison, keyed with a secret derived from
+     * the encryption secret so a leaked table does not allow brute-forcing the short keys offline
+     * @param downloadKey the download key
+     * @return the hex-encoded HMAC-SHA256 of the key
+     */
+    public String hashDownloadKey(String downloadKey) {
+        try {
+            SecretKey key = downloadKeyHashKey;
+            if (key == null) {
+                key = deriveMacKey("download-key");
+                downloadKeyHashKey = key;
+            }
+            Mac mac = Mac.getInstance(CONTENT_HASH_ALGORITHM);
+            mac.init(key);
+            return HexFormat.of().formatHex(mac.doFinal(downloadKey.getBytes(StandardCharsets.UTF_8)));
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Failed to hash download key", e);
+        }
+    }
+
+    private SecretKey deriveMacKey(String purpose) throws GeneralSecurityException {
+        Mac derivation = Mac.getInstance(CONTENT_HASH_ALGORITHM);
+        derivation.init(new SecretKeySpec(getSecretKey().getEncoded(), CONTENT_HASH_ALGORITHM));
+        return new SecretKeySpec(derivation.doFinal(purpose.getBytes(StandardCharsets.UTF_8)), CONTENT_HASH_ALGORITHM);
+    }
+
+    /**
+     * Encrypts or decrypts consecutive segments from a stream. With a {@link CryptoExecutor}
+     * and a parallelism above one, up to that many segments are transformed concurrently
+     * while the next ones are read; results are written strictly in segment order, and
+     * reading waits for the oldest segment once the window is full, so memory stays at
+     * a few buffers per window slot however large the stream. Single-segment streams,
+     * and streams transformed on a crypto thread already, run inline on the caller.
+     * @param mode {@link Cipher#ENCRYPT_MODE} or {@link Cipher#DECRYPT_MODE}
+     * @param firstSegmentIndex the index of the first segment read
+     * @param segmentLimit the maximum number of segments to read
+     * @param finalPart whether the last segment read ends the stream, so it is flagged as such
+     */
+    private SegmentTotals transformSegments(int mode, SecretKey key, InputStream in, OutputStream out, String ivBase64,
+                                            int segmentSize, int firstSegmentIndex, long segmentLimit, boolean finalPart)
+            throws Exception {
+        byte[] iv = Base64.getDecoder().decode(ivBase64);
+        int inputSize = mode == Cipher.ENCRYPT_MODE ? segmentSize : segmentSize + GCM_TAG_LENGTH;
+        int outputSize = mode == Cipher.ENCRYPT_MODE ? segmentSize + GCM_TAG_LENGTH : segmentSize;
+        int window = cryptoExecutor != null && !cryptoExecutor.isWorkerThread() ? Math.max(1, parallelism) : 1;
+
+        // One slot more than the window, for the segment read ahead to detect the last one
+        Segment[] ring = new Segment[window + 1];
+        for (int i = 0; i < ring.length; i++) {
+            ring[i] = new Segment(new byte[inputSize], new byte[outputSize]);
+        }
+        ArrayDeque<Segment> inFlight = new ArrayDeque<>(window);
+        SegmentTotals totals = new SegmentTotals();
+        try {
+            int slot = 0;
+            Segment current = ring[slot];
+            current.length = in.readNBytes(current.input, 0, inputSize);
+            long segmentsRead = 1;
+            int segmentIndex = firstSegmentIndex;
+            while (true) {
+                if (inFlight.size() == window) {
+                    writeSegment(inFlight.poll(), out, totals);
+                }
+                Segment next = ring[(slot + 1) % ring.length];
+                next.length = current.length == inputSize && segmentsRead < segmentLimit
+                        ? in.readNBytes(next.input, 0, inputSize)
+                        : 0;
+                boolean endOfPart = next.length == 0;
+
+                current.index = segmentIndex;
+                current.last = endOfPart && finalPart;
+                if (window == 1 || (endOfPart && inFlight.isEmpty())) {
+                    current.transform(mode, key, iv);
+                    writeSegment(current, out, totals);
+                } else {
+                    Segment segment = current;
+                    segment.result = cryptoExecutor.submit(() -> segment.transform(mode, key, iv));
+                    inFlight.add(segment);
+                }
+                if (endOfPart) {
+                    break;
+                }
+
+                current = next;
+                slot = (slot + 1) % ring.length;
+                segmentsRead++;
+                segmentIndex++;
+            }
+            while (!inFlight.isEmpty()) {
+                writeSegment(inFlight.poll(), out, totals);
+            }
+        } finally {
+            inFlight.forEach(segment -> segment.result.cancel(true));
+        }
+        out.flush();
+        return totals;
+    }
+
+    private static void writeSegment(Segment segment, OutputStream out, SegmentTotals totals) throws Exception {
+        int written;
+        if (segment.result == null) {
+            written = segment.written;
+        } else {
+            try {
+                written = segment.result.get();
+            } catch (ExecutionException e) {
+                throw e.getCause() instanceof Exception cause ? cause : e;
+            } finally {
+                segment.result = null;
+            }
+        }
+        out.write(segment.output, 0, written);
+        totals.inputLength += segment.length;
+        totals.outputLength += written;
+        totals.cipherNanos += segment.cipherNanos;
+    }
+
+    private static GCMParameterSpec segmentSpec(byte[] baseIv, int segmentIndex) {
+        byte[] nonce = baseIv.clone();
+        for (int i = 0; i < 4; i++) {
+            nonce[GCM_IV_LENGTH - 1 - i] ^= (byte) (segmentIndex >>> (8 * i));
+        }
+        return new GCMParameterSpec(GCM_TAG_LENGTH * 8, nonce);
+    }
+
+    private static byte[] segmentAad(int segmentIndex, boolean last) {
+        return ByteBuffer.allocate(SEGMENT_AAD_LENGTH)
+                .putInt(segmentIndex)
+                .put((byte) (last ? 1 : 0))
+                .array();
+    }
+
+    /**
+     * @return the key derived from {@code encryption.secret}, which encrypts the content of
+     * files stored before envelope encryption and keys the content and download key hashes
+     */
+    SecretKey getSecretKey() {
+        // The key never changes at runtime, so derive it once
+        SecretKey cached = derivedKey;
+        if (cached == null) {
+            // For production, the key should be securely stored and not derived from a string
+            byte[] keyBytes = secretKey.getBytes(StandardCharsets.UTF_8);
+            // Use first 32 bytes (256 bits) for AES-256
+            byte[] key32Bytes = new byte[32];
+            System.arraycopy(keyBytes, 0, key32Bytes, 0, Math.min(keyBytes.length, 32));
+            cached = new SecretKeySpec(key32Bytes, "AES");
+            derivedKey = cached;
+        }
+        return cached;
     }
     
+    /**
+     * Buffers and state of one segment travelling through {@link #transformSegments}
+     */
+    private class Segment {
+        private final byte[] input;
+        private final byte[] output;
+        private int length;
+        private int index;
+        private boolean last;
+        private int written;
+        private long cipherNanos;
+        private Future<Integer> result;
+
+        Segment(byte[] input, byte[] output) {
+            this.input = input;
+            this.output = output;
+        }
+
+        int transform(int mode, SecretKey key, byte[] iv) throws Exception {
+            Cipher cipher = cipherPool.borrow();
+            try {
+                long cipherStart = System.nanoTime();
+                // Callers never encrypt twice under one key and nonce; the provider's refusal to
+                // reuse the pair an instance used last is left to surface if one ever does
+                cipher.init(mode, key, segmentSpec(iv, index));
+                cipher.updateAAD(segmentAad(index, last));
+                written = cipher.doFinal(input, 0, length, output, 0);
+                cipherNanos = System.nanoTime() - cipherStart;
+                return written;
+            } finally {
+                cipherPool.release(cipher);
+            }
+        }
+    }
+
+    private class DecryptingInputStream extends InputStream {
+        private final SecretKey key;
+        private final SeekableByteChannel channel;
+        private final String ivBase64;
+        private final int segmentSize;
+        private final long endSegment;
+        private int nextSegment;
+        private byte[] segment = new byte[0];
+        private int position;
+
+        DecryptingInputStream(SecretKey key, SeekableByteChannel channel, String ivBase64, int segmentSize,
+                              int firstSegmentIndex, int segmentLimit) throws IOException {
+            this.key = key;
+            this.channel = channel;
+            this.ivBase64 = ivBase64;
+            this.segmentSize = segmentSize;
+            this.nextSegment = firstSegmentIndex;
+            this.endSegment = Math.min(segmentCount(channel.size(), segmentSize), (long) firstSegmentIndex + segmentLimit);
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] single = new byte[1];
+            return read(single, 0, 1) < 0 ? -1 : single[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            while (position == segment.length) {
+                if (nextSegment >= endSegment) {
+                    return -1;
+                }
+                try {
+                    segment = decryptSegment(key, channel, ivBase64, segmentSize, nextSegment++);
+                } catch (IOException e) {
+                    throw e;
+                } catch (Exception e) {
+                    throw new IOException("Failed to decrypt segment " + (nextSegment - 1), e);
+                }
+                position = 0;
+            }
+            int count = Math.min(len, segment.length - position);
+            System.arraycopy(segment, position, b, off, count);
+            position += count;
+            return count;
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+    }
+
+    private static class SegmentTotals {
+        private long inputLength;
+        private long outputLength;
+        private long cipherNanos;
+    }
+
+    /**
+     * Passes on only {@code length} bytes after skipping the first {@code skip} bytes
+     */
+    private static class SliceOutputStream extends FilterOutputStream {
+        private long skip;
+        private long remaining;
+
+        SliceOutputStream(OutputStream out, long skip, long length) {
+            super(out);
+            this.skip = skip;
+            this.remaining = length;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[] {(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            int skipped = (int) Math.min(skip, len);
+            skip -= skipped;
+            int count = (int) Math.min(remaining, len - skipped);
+            if (count > 0) {
+                out.write(b, off + skipped, count);
+                remaining -= count;
+            }
+        }
+    }
+
     public static class EncryptionResult {
         private final byte[] encryptedData;
         private final String iv;
@@ -94,4 +630,40 @@ public class EncryptionService {
             return iv;
         }
     }
+
+    public static class StreamEncryptionResult {
+        private final String iv;
+        private final int segmentSize;
+        private final long plainLength;
+        private final long encryptedLength;
+        private final long cipherNanos;
+
+        public StreamEncryptionResult(String iv, int segmentSize, long plainLength, long encryptedLength, long cipherNanos) {
+            this.iv = iv;
+            this.segmentSize = segmentSize;
+            this.plainLength = plainLength;
+            this.encryptedLength = encryptedLength;
+            this.cipherNanos = cipherNanos;
+        }
+
+        public String getIv() {
+            return iv;
+        }
+
+        public int getSegmentSize() {
+            return segmentSize;
+        }
+
+        public long getPlainLength() {
+            return plainLength;
+        }
+
+        public long getEncryptedLength() {
+            return encryptedLength;
+        }
+
+        public long getCipherNanos() {
+            return cipherNanos;
+        }
+    }
 }
@@ -0,0 +1,113 @@
+package com.filesystem.secure.service;
+
+import com.filesystem.secure.model.FileAccess;
+import com.filesystem.secure.repository.SecureFileRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Limit;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Reclaims the storage of expired files, whether they reached the expiry they were
+ * uploaded with or were marked expired by a bulk delete. A background thread walks the
+ * expired files in ID order, in batches that are each deleted with one JDBC batch, and
+ * then deletes the blobs no other file references, so large deletions never run on a
+ * request thread. Sweeps run every {@code expiry.sweep-interval} and right away when
+ * {@link #requestSweep()} is called. Deleted files are counted in {@code files.expired}.
+ */
+@Slf4j
+@Service
+public class ExpiredFileSweeper {
+
+    private final SecureFileRepository fileRepository;
+    private final FileService fileService;
+    private final int batchSize;
+    private final Duration sweepInterval;
+    private final Counter expiredFiles;
+
+    private volatile Thread worker;
+
+    public ExpiredFileSweeper(SecureFileRepository fileRepository,
+                              FileService fileService,
+                              MeterRegistry registry,
+                              @Value("${expiry.batch-size:500}") int batchSize,
+                              @Value("${expiry.sweep-interval:PT1M}") Duration sweepInterval) {
+        this.fileRepository = fileRepository;
+        this.fileService = fileService;
+        this.batchSize = batchSize;
+        this.sweepInterval = sweepInterval;
+        this.expiredFiles = Counter.builder("files.expired")
+                .description("Expired files deleted by the sweeper")
+                .register(registry);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        worker = Thread.ofPlatform().name("expiry-sweeper").daemon().start(this::run);
+    }
+
+    /**
+     * Starts a sweep now instead of at the next interval
+     */
+    public void requestSweep() {
+        Thread thread = worker;
+        if (thread != null) {
+            LockSupport.unpark(thread);
+        }
+    }
+
+    /**
+     * Stops the sweep at the end of its current batch, before the database goes away
+     */
+    @PreDestroy
+    public void stop() {
+        Thread thread = worker;
+        if (thread != null) {
+            thread.interrupt();
+        }
+    }
+
+    private void run() {
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                sweep();
+            } catch (Exception e) {
+                log.warn("Expired file sweep failed, retrying later", e);
+            }
+            LockSupport.parkNanos(sweepInterval.toNanos());
+        }
+    }
+
+    /**
+     * Deletes every file that has expired by the time the sweep starts
+     */
+    private void sweep() {
+        LocalDateTime now = LocalDateTime.now();
+        long afterId = 0;
+        long deleted = 0;
+        List<FileAccess> files;
+        do {
+            files = fileRepository.findExpired(now, afterId, Limit.of(batchSize));
+            if (files.isEmpty()) {
+                break;
+            }
+            int batchDeleted = fileService.deleteExpiredFiles(files);
+            expiredFiles.increment(batchDeleted);
+            deleted += batchDeleted;
+            afterId = files.get(files.size() - 1).getId();
+        } while (files.size() == batchSize && !Thread.currentThread().isInterrupted());
+        if (deleted > 0) {
+            log.info("Deleted {} expired files", deleted);
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package com.filesystem.secure.service;
+
+import com.filesystem.secure.model.FileSummary;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Per-user cache of file listings for polling clients. Each user's listing carries a
+ * version stamp that changes whenever one of their files is stored or deleted, and the
+ * stamp doubles as the listing's ETag, so an unchanged listing is confirmed without a
+ * query. Stamps come from one counter seeded per process and are never reused, not
+ * even after an entry is evicted, so an ETag cannot match a listing it did not
+ * describe. A listing also gets a new version once one of its files expires.
+ * <p>
+ * Both the cache and the version stamps are local to the process. With several
+ * instances behind a load balancer, an ETag from one instance never matches on
+ * another, so a poll that lands elsewhere misses the 304 and gets the full listing,
+ * which is correct but costs the query; and a change stored through one instance is
+ * only seen by the others once their entry expires, so {@code cache.listings.ttl}
+ * bounds how stale a listing can get. Such deployments should route each user to one
+ * instance, or set a short TTL, or disable the cache.
+ */
+@Component
+public class FileListingCache {
+
+    private final boolean enabled;
+    private final Cache<String, Listing> listings;
+    private final String instance = Long.toString(ThreadLocalRandom.current().nextLong() & Long.MAX_VALUE, 36);
+    private final AtomicLong stamps = new AtomicLong();
+
+    public FileListingCache(@Value("${cache.listings.enabled:true}") boolean enabled,
+                            @Value("${cache.listings.max-size:10000}") long maxSize,
+                            @Value("${cache.listings.ttl:PT10M}") Duration ttl,
+                            MeterRegistry registry) {
+        this.enabled = enabled;
+        this.listings = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(ttl)
+                .recordStats()
+                .build();
+        if (enabled) {
+            CaffeineCacheMetrics.monitor(registry, listings, "file-listings");
+        }
+    }
+
+    /**
+     * @param userId the Firebase user ID
+     * @return the ETag of the user's current listing, or null if the cache is disabled
+     */
+    public String getETag(String userId) {
+        if (!enabled) {
+            return null;
+        }
+        return "\"" + instance + "-" + listing(userId).version + "\"";
+    }
+
+    /**
+     * @param userId the Firebase user ID
+     * @param loader queries the listing on a miss
+     * @return the user's listing, at least as recent as the last {@link #getETag(String)}
+     */
+    public List<FileSummary> get(String userId, Supplier<List<FileSummary>> loader) {
+        if (!enabled) {
+            return loader.get();
+        }
+        Listing current = listing(userId);
+        if (current.files != null) {
+            return current.files;
+        }
+        List<FileSummary> files = List.copyOf(loader.get());
+        LocalDateTime staleAt = files.stream()
+                .map(FileSummary::getExpiresAt)
+                .filter(Objects::nonNull)
+                .min(Comparator.naturalOrder())
+                .orElse(null);
+        // Kept only if no file changed while the query ran
+        listings.asMap().replace(userId, current, new Listing(current.version, files, staleAt));
+        return files;
+    }
+
+    /**
+     * Gives the user's listing a new version, to be called once a change is committed
+     * @param userId the Firebase user ID
+     */
+    public void invalidate(String userId) {
+        if (enabled) {
+            listings.put(userId, newListing());
+        }
+    }
+
+    private Listing listing(String userId) {
+        Listing listing = listings.get(userId, id -> newListing());
+        while (listing.staleAt != null && !listing.staleAt.isAfter(LocalDateTime.now())) {
+            // One of the listed files has expired since the listing was loaded
+            Listing next = newListing();
+            listing = listings.asMap().replace(userId, listing, next) ? next : listings.get(userId, id -> newListing());
+        }
+        return listing;
+    }
+
+    private Listing newListing() {
+        return new Listing(stamps.incrementAndGet(), null, null);
+    }
+
+    private record Listing(long version, List<FileSummary> files, LocalDateTime staleAt) {
+    }
+}
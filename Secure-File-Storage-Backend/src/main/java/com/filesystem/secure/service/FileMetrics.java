@@ -0,0 +1,163 @@
+package com.filesystem.secure.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Meters for the upload and download hot paths, so a slow transfer can be attributed
+ * to the cipher, the database or the network. Cipher time is measured inside
+ * {@link EncryptionService} and excludes stream I/O; repository calls are timed by
+ * Spring Data's own {@code spring.data.repository.invocations} meter.
+ */
+@Component
+public class FileMetrics {
+
+    public static final String UPLOAD = "upload";
+    public static final String DOWNLOAD = "download";
+
+    public static final String ENCRYPT = "encrypt";
+    public static final String DECRYPT = "decrypt";
+
+    private static final long[] SIZE_BUCKETS = {64L << 10, 1L << 20, 16L << 20, 256L << 20};
+    private static final String[] SIZE_BUCKET_NAMES = {"64KiB", "1MiB", "16MiB", "256MiB", "larger"};
+
+    private final MeterRegistry registry;
+    private final AtomicInteger activeUploads = new AtomicInteger();
+    private final AtomicInteger activeDownloads = new AtomicInteger();
+
+    public FileMetrics(MeterRegistry registry) {
+        this.registry = registry;
+        Gauge.builder("file.transfers.active", activeUploads, AtomicInteger::get)
+                .description("Uploads currently being received")
+                .tag("direction", UPLOAD)
+                .register(registry);
+        Gauge.builder("file.transfers.active", activeDownloads, AtomicInteger::get)
+                .description("Downloads currently being streamed")
+                .tag("direction", DOWNLOAD)
+                .register(registry);
+    }
+
+    /**
+     * Records time spent inside the cipher for one file or range
+     * @param operation {@link #ENCRYPT} or {@link #DECRYPT}
+     * @param plainBytes the number of plaintext bytes processed, used to pick the size bucket
+     * @param nanos the cipher time in nanoseconds
+     */
+    public void recordCrypto(String operation, long plainBytes, long nanos) {
+        Timer.builder("file.crypto")
+                .description("Time spent encrypting or decrypting, excluding stream I/O")
+                .tag("operation", operation)
+                .tag("size", sizeBucket(plainBytes))
+                .publishPercentileHistogram()
+                .register(registry)
+                .record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Counts an upload whose content was already stored for the same user
+     * @param bytes the plaintext bytes that did not have to be stored again
+     */
+    public void recordDeduplicated(long bytes) {
+        Counter.builder("file.uploads.deduplicated.bytes")
+                .description("Plaintext bytes of uploads served by an existing blob")
+                .baseUnit("bytes")
+                .register(registry)
+                .increment(bytes);
+    }
+
+    /**
+     * Records how much compression saved on one upload
+     * @param originalBytes the plaintext size
+     * @param storedBytes the compressed size that was encrypted and stored
+     */
+    public void recordCompression(long originalBytes, long storedBytes) {
+        Counter.builder("file.compression.saved.bytes")
+                .description("Plaintext bytes saved by compressing before encryption")
+                .baseUnit("bytes")
+                .register(registry)
+                .increment(Math.max(0, originalBytes - storedBytes));
+    }
+
+    /**
+     * Counts a request that was turned away before any content was transferred
+     * @param reason a short, low-cardinality reason such as {@code forbidden}
+     */
+    public void recordRejected(String reason) {
+        Counter.builder("file.requests.rejected")
+                .description("Requests rejected before transferring content")
+                .tag("reason", reason)
+                .register(registry)
+                .increment();
+    }
+
+    /**
+     * Starts timing a transfer and counts it as active until the returned handle is closed
+     * @param direction {@link #UPLOAD} or {@link #DOWNLOAD}
+     */
+    public Transfer startTransfer(String direction) {
+        AtomicInteger active = UPLOAD.equals(direction) ? activeUploads : activeDownloads;
+        active.incrementAndGet();
+        return new Transfer(direction, active, Timer.start(registry));
+    }
+
+    static String sizeBucket(long bytes) {
+        for (int i = 0; i < SIZE_BUCKETS.length; i++) {
+            if (bytes <= SIZE_BUCKETS[i]) {
+                return SIZE_BUCKET_NAMES[i];
+            }
+        }
+        return SIZE_BUCKET_NAMES[SIZE_BUCKETS.length];
+    }
+
+    /**
+     * One upload or download in flight. Closing it records the transfer time, tagged
+     * with the outcome, and the bytes moved if it completed.
+     */
+    public class Transfer implements AutoCloseable {
+
+        private final String direction;
+        private final AtomicInteger active;
+        private final Timer.Sample sample;
+        private long bytes = -1;
+
+        private Transfer(String direction, AtomicInteger active, Timer.Sample sample) {
+            this.direction = direction;
+            this.active = active;
+            this.sample = sample;
+        }
+
+        /**
+         * Marks the transfer as successful
+         * @param bytes the plaintext bytes received or sent
+         */
+        public void completed(long bytes) {
+            this.bytes = bytes;
+        }
+
+        @Override
+        public void close() {
+            active.decrementAndGet();
+            boolean succeeded = bytes >= 0;
+            sample.stop(Timer.builder("file.transfer")
+                    .description("End-to-end upload or download time, including network and storage")
+                    .tag("direction", direction)
+                    .tag("outcome", succeeded ? "success" : "error")
+                    .publishPercentileHistogram()
+                    .register(registry));
+            if (succeeded) {
+                Counter.builder("file.transfer.bytes")
+                        .description("Plaintext bytes uploaded or downloaded")
+                        .baseUnit("bytes")
+                        .tag("direction", direction)
+                        .register(registry)
+                        .increment(bytes);
+            }
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package com.filesystem.secure.service;
+
+import org.springframework.data.domain.Limit;
+
+import java.util.List;
+
+/**
+ * One pass over {@code secure_files} that rewrites the files still needing it, such as
+ * moving content into the blob store or re-encrypting it. {@link FileMigrationRunner}
+ * pages through the pending files in ID order, throttles and checkpoints; a migration
+ * only has to select its files and migrate one at a time. Migrating a file must be
+ * idempotent, since the files of an interrupted batch are visited again on resume.
+ */
+public interface FileMigration {
+
+    /**
+     * @return the name progress is checkpointed and reported under
+     */
+    String getName();
+
+    /**
+     * Runs once before each pass, for example to adjust the schema
+     */
+    default void prepare() {
+    }
+
+    /**
+     * @param afterId the last file ID visited
+     * @param limit the maximum number of IDs to return
+     * @return the IDs of files still to migrate, above {@code afterId} and in ascending order
+     */
+    List<Long> findPendingIds(Long afterId, Limit limit);
+
+    /**
+     * @return the number of files still to migrate
+     */
+    long countPending();
+
+    /**
+     * Migrates one file, doing nothing if it no longer needs it
+     * @param fileId the file ID
+     * @return the number of bytes read and written, which the throttle charges
+     */
+    long migrate(Long fileId) throws Exception;
+}
@@ -0,0 +1,202 @@
+package com.filesystem.secure.service;
+
+import com.filesystem.secure.model.MigrationCheckpoint;
+import com.filesystem.secure.repository.MigrationCheckpointRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Limit;
+import org.springframework.stereotype.Service;
+import org.springframework.util.unit.DataSize;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Runs the {@link FileMigration}s one after another on a background thread after
+ * startup. Each walks its pending files in keyset-paged batches, saving a checkpoint
+ * after every batch, so a restarted application resumes where it stopped and a
+ * completed migration is not run again unless restarted explicitly. A file that fails
+ * is skipped for the rest of the pass, but a pass with failures does not complete the
+ * migration: it starts over on the next run, revisiting only the files still pending,
+ * and the migrations after it wait until then. Files are
+ * migrated one at a time and paced to a byte and a file rate budget, so live traffic
+ * keeps most of the disk and database.
+ */
+@Slf4j
+@Service
+public class FileMigrationRunner {
+
+    private final List<FileMigration> migrations;
+    private final MigrationCheckpointRepository checkpointRepository;
+    private final int batchSize;
+    private final long maxBytesPerSecond;
+    private final double maxFilesPerSecond;
+
+    private final AtomicBoolean active = new AtomicBoolean();
+    private volatile String running;
+
+    public FileMigrationRunner(List<FileMigration> migrations,
+                               MigrationCheckpointRepository checkpointRepository,
+                               @Value("${migrations.batch-size:100}") int batchSize,
+                               @Value("${migrations.max-bytes-per-second:20MB}") DataSize maxBytesPerSecond,
+                               @Value("${migrations.max-files-per-second:50}") double maxFilesPerSecond) {
+        this.migrations = migrations;
+        this.checkpointRepository = checkpointRepository;
+        this.batchSize = batchSize;
+        this.maxBytesPerSecond = maxBytesPerSecond.toBytes();
+        this.maxFilesPerSecond = maxFilesPerSecond;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        if (!migrations.isEmpty()) {
+            Thread.ofPlatform().name("file-migrations").daemon().start(this::runAll);
+        }
+    }
+
+    /**
+     * Forgets the checkpoint of a migration and runs the migrations again, unless they are running
+     * @param name the migration name
+     * @return whether the migrations were started
+     * @throws NoSuchElementException if there is no migration with this name
+     */
+    public boolean restart(String name) {
+        migrations.stream()
+                .filter(migration -> migration.getName().equals(name))
+                .findFirst()
+                .orElseThrow(() -> new NoSuchElementException("Migration not found: " + name));
+        if (active.get()) {
+            return false;
+        }
+        checkpointRepository.deleteById(name);
+        start();
+        return true;
+    }
+
+    /**
+     * @return the progress of every migration, in the order they run
+     */
+    public List<Map<String, Object>> getStatus() {
+        List<Map<String, Object>> status = new ArrayList<>(migrations.size());
+        for (FileMigration migration : migrations) {
+            MigrationCheckpoint checkpoint = checkpointRepository.findById(migration.getName()).orElse(null);
+            Map<String, Object> entry = new LinkedHashMap<>();
+            entry.put("name", migration.getName());
+            if (migration.getName().equals(running)) {
+                entry.put("state", "running");
+            } else if (checkpoint == null) {
+                entry.put("state", "not_started");
+            } else if (checkpoint.getCompletedAt() == null && checkpoint.getLastFileId() == 0
+                    && checkpoint.getFailedFiles() > 0) {
+                entry.put("state", "failed");
+            } else {
+                entry.put("state", checkpoint.getCompletedAt() != null ? "completed" : "interrupted");
+            }
+            entry.put("pendingFiles", migration.countPending());
+            if (checkpoint != null) {
+                entry.put("lastFileId", checkpoint.getLastFileId());
+                entry.put("processedFiles", checkpoint.getProcessedFiles());
+                entry.put("failedFiles", checkpoint.getFailedFiles());
+                entry.put("processedBytes", checkpoint.getProcessedBytes());
+                entry.put("startedAt", checkpoint.getStartedAt());
+                entry.put("updatedAt", checkpoint.getUpdatedAt());
+                entry.put("completedAt", checkpoint.getCompletedAt());
+            }
+            status.add(entry);
+        }
+        return status;
+    }
+
+    private void runAll() {
+        if (!active.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            for (FileMigration migration : migrations) {
+                if (!run(migration)) {
+                    break;
+                }
+            }
+        } finally {
+            active.set(false);
+        }
+    }
+
+    /**
+     * @return whether the migration got to the end of its files
+     */
+    private boolean run(FileMigration migration) {
+        LocalDateTime now = LocalDateTime.now();
+        MigrationCheckpoint checkpoint = checkpointRepository.findById(migration.getName())
+                .orElseGet(() -> MigrationCheckpoint.builder()
+                        .name(migration.getName())
+                        .lastFileId(0L)
+                        .processedFiles(0L)
+                        .failedFiles(0L)
+                        .processedBytes(0L)
+                        .startedAt(now)
+                        .updatedAt(now)
+                        .build());
+        if (checkpoint.getCompletedAt() != null) {
+            return true;
+        }
+
+        if (checkpoint.getLastFileId() == 0) {
+            // A new pass, which only completes the migration if none of its files fail
+            checkpoint.setFailedFiles(0L);
+        }
+
+        running = migration.getName();
+        IoThrottle throttle = new IoThrottle(maxBytesPerSecond, maxFilesPerSecond);
+        try {
+            migration.prepare();
+            List<Long> ids;
+            while (!(ids = migration.findPendingIds(checkpoint.getLastFileId(), Limit.of(batchSize))).isEmpty()) {
+                for (Long id : ids) {
+                    long bytes = 0;
+                    try {
+                        bytes = migration.migrate(id);
+                        checkpoint.setProcessedFiles(checkpoint.getProcessedFiles() + 1);
+                        checkpoint.setProcessedBytes(checkpoint.getProcessedBytes() + bytes);
+                    } catch (Exception e) {
+                        log.warn("Migration {} skipped file ID: {}", migration.getName(), id, e);
+                        checkpoint.setFailedFiles(checkpoint.getFailedFiles() + 1);
+                    }
+                    throttle.acquire(bytes);
+                }
+                checkpoint.setLastFileId(ids.get(ids.size() - 1));
+                checkpoint.setUpdatedAt(LocalDateTime.now());
+                checkpointRepository.save(checkpoint);
+            }
+            if (checkpoint.getFailedFiles() > 0) {
+                log.warn("Migration {} left {} files unmigrated, retrying them on the next run", migration.getName(),
+                        checkpoint.getFailedFiles());
+                checkpoint.setLastFileId(0L);
+                checkpoint.setUpdatedAt(LocalDateTime.now());
+                checkpointRepository.save(checkpoint);
+                return false;
+            }
+            checkpoint.setCompletedAt(LocalDateTime.now());
+            checkpoint.setUpdatedAt(checkpoint.getCompletedAt());
+            checkpointRepository.save(checkpoint);
+            log.info("Migration {} completed: {} files, {} bytes", migration.getName(),
+                    checkpoint.getProcessedFiles(), checkpoint.getProcessedBytes());
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } catch (Exception e) {
+            log.error("Migration {} stopped after file ID: {}", migration.getName(), checkpoint.getLastFileId(), e);
+            return false;
+        } finally {
+            running = null;
+        }
+    }
+}
@@ -1,63 +1,329 @@
 package com.filesystem.secure.service;
 
+import com.filesystem.secure.model.FileAccess;
+import com.filesystem.secure.model.FileSummary;
 import com.filesystem.secure.model.SecureFile;
+import com.filesystem.secure.repository.FileQuery;
 import com.filesystem.secure.repository.SecureFileRepository;
+import com.filesystem.secure.storage.BlobStore;
 import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.web.multipart.MultipartFile;
+
+import javax.crypto.Mac;
+import javax.crypto.SecretKey;
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.sql.Statement;
+import java.time.Duration;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.HexFormat;
 import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
 import java.util.UUID;
 import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.Deflater;
+import java.util.zip.InflaterOutputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
 
+@Slf4j
 @Service
 @RequiredArgsConstructor
 public class FileService {
 
     private final SecureFileRepository fileRepository;
     private final EncryptionService encryptionService;
+    private final DataKeyService dataKeyService;
+    private final CompressionService compressionService;
+    private final BlobStore blobStore;
+    private final FileMetrics fileMetrics;
+    private final DecryptedSegmentCache segmentCache;
+    private final FileListingCache listingCache;
+    private final CryptoExecutor cryptoExecutor;
+    private final UsageLimiter usageLimiter;
+    private final TransactionTemplate transactionTemplate;
+
+    public static final int MAX_BATCH_SIZE = 500;
+
+    private static final int MAX_PAGE_SIZE = 200;
+    private static final String CURSOR_SEPARATOR = "|";
+    private static final int DEDUP_LOCK_STRIPES = 64;
+
+    // Serializes the lookup-then-reference of deduplicated blobs against the
+    // last-reference check on delete for the same user and content. The locks only
+    // exclude requests within this JVM: instances sharing a database and blob store
+    // can delete a blob as unreferenced while another instance references it, so
+    // such deployments must route each user's uploads and deletes to one instance
+    private final Lock[] dedupLocks = newLocks(DEDUP_LOCK_STRIPES);
+
     /**
-     * Uploads and encrypts a file
+     * Uploads and encrypts a file. Content the same user has stored before is
+     * recognized by its keyed hash, and the new record then references the
+     * existing blob instead of committing a second copy; blobs are counted by their
+     * referencing records and deleted with the last one, which is only safe within one
+     * process, see {@code dedupLocks}. Compressible content is deflated before it
+     * is encrypted, see {@link CompressionService}.
      * @param file the file to upload
      * @param userId the Firebase user ID
      * @return the stored secure file metadata
+     * @throws UsageLimiter.QuotaExceededException if the file does not fit the user's quota
      */
     public SecureFile uploadFile(MultipartFile file, String userId) throws Exception {
+        return uploadFile(file, userId, null);
+    }
+
+    /**
+     * Uploads and encrypts a file that expires after the given time, see {@link #uploadFile(MultipartFile, String)}
+     * @param file the file to upload
+     * @param userId the Firebase user ID
+     * @param expiresIn how long the file is kept, or null to keep it until it is deleted
+     * @return the stored secure file metadata
+     * @throws IllegalArgumentException if the file is empty or expiresIn is not positive
+     * @throws UsageLimiter.QuotaExceededException if the file does not fit the user's quota
+     */
+    public SecureFile uploadFile(MultipartFile file, String userId, Duration expiresIn) throws Exception {
         if (file.isEmpty()) {
             throw new IllegalArgumentException("File cannot be empty");
         }
+        LocalDateTime expiresAt = expiresAt(expiresIn);
 
-        // Generate a unique filename
-        String uniqueFileName = UUID.randomUUID().toString();
-        
-        // Generate a random download key (6 characters alphanumeric)
-        String downloadKey = generateDownloadKey();
-        
-        // Encrypt the file content
-        byte[] fileContent = file.getBytes();
-        EncryptionService.EncryptionResult encryptionResult = encryptionService.encrypt(fileContent);
-        
-        // Create and save the secure file entity
-        SecureFile secureFile = SecureFile.builder()
-                .fileName(uniqueFileName)
-                .originalFileName(file.getOriginalFilename())
-                .contentType(file.getContentType())
-                .fileSize(file.getSize())
-                .encryptedData(encryptionResult.getEncryptedData())
-                .encryptionIv(encryptionResult.getIv())
-                .uploadDate(LocalDateTime.now())
-                .downloadKey(downloadKey)
-                .userId(userId)
-                .build();
-        
-        return fileRepository.save(secureFile);
+        try (UsageLimiter.Reservation reservation = usageLimiter.reserveStorage(userId, file.getSize());
+             FileMetrics.Transfer transfer = fileMetrics.startTransfer(FileMetrics.UPLOAD);
+             StagedUpload upload = stageUpload(file, userId, expiresAt)) {
+            Lock lock = dedupLock(userId, upload.contentHash);
+            lock.lock();
+            try {
+                String committedBlobId = referenceOrCommitBlob(upload, userId, Map.of());
+                try {
+                    SecureFile saved = fileRepository.save(upload.file.build());
+                    reservation.commit();
+                    listingCache.invalidate(userId);
+                    transfer.completed(upload.fileSize);
+                    return saved;
+                } catch (RuntimeException e) {
+                    if (committedBlobId != null) {
+                        deleteBlobQuietly(committedBlobId);
+                    }
+                    throw e;
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
     }
-    
+
+    /**
+     * Uploads several files at once. The files are encrypted in parallel on the
+     * {@link CryptoExecutor}, deduplicated like single uploads, also against each other,
+     * and their records are inserted with one JDBC batch in a single transaction. Either
+     * all files are stored or none.
+     * @param files the files to upload, at most {@value #MAX_BATCH_SIZE}
+     * @param userId the Firebase user ID
+     * @param expiresIn how long the files are kept, or null to keep them until they are deleted
+     * @return the stored secure file metadata, in the order of {@code files}
+     * @throws IllegalArgumentException if the batch is empty, too large or holds an empty file
+     * @throws UsageLimiter.QuotaExceededException if the files together do not fit the user's quota
+     */
+    public List<SecureFile> uploadFiles(List<MultipartFile> files, String userId, Duration expiresIn) throws Exception {
+        if (files.isEmpty() || files.size() > MAX_BATCH_SIZE) {
+            throw new IllegalArgumentException("A batch must hold 1 to " + MAX_BATCH_SIZE + " files");
+        }
+        LocalDateTime expiresAt = expiresAt(expiresIn);
+        for (MultipartFile file : files) {
+            if (file.isEmpty()) {
+                throw new IllegalArgumentException("File cannot be empty: " + file.getOriginalFilename());
+            }
+        }
+
+        List<StagedUpload> uploads = new ArrayList<>(files.size());
+        long batchSize = files.stream().mapToLong(MultipartFile::getSize).sum();
+        try (UsageLimiter.Reservation reservation = usageLimiter.reserveStorage(userId, batchSize);
+             FileMetrics.Transfer transfer = fileMetrics.startTransfer(FileMetrics.UPLOAD)) {
+            List<Future<StagedUpload>> staging = new ArrayList<>(files.size());
+            for (MultipartFile file : files) {
+                staging.add(cryptoExecutor.submit(() -> stageUpload(file, userId, expiresAt)));
+            }
+            awaitAll(staging, uploads);
+
+            List<Lock> locks = dedupLocks(userId, uploads);
+            locks.forEach(Lock::lock);
+            List<String> committedBlobIds = new ArrayList<>();
+            try {
+                Map<String, SecureFile> batchFiles = new HashMap<>();
+                List<SecureFile> secureFiles = new ArrayList<>(uploads.size());
+                long totalSize = 0;
+                for (StagedUpload upload : uploads) {
+                    String committedBlobId = referenceOrCommitBlob(upload, userId, batchFiles);
+                    if (committedBlobId != null) {
+                        committedBlobIds.add(committedBlobId);
+                    }
+                    SecureFile secureFile = upload.file.build();
+                    batchFiles.putIfAbsent(upload.contentHash, secureFile);
+                    secureFiles.add(secureFile);
+                    totalSize += upload.fileSize;
+                }
+                transactionTemplate.executeWithoutResult(status -> fileRepository.insertAll(secureFiles));
+                reservation.commit();
+                listingCache.invalidate(userId);
+                transfer.completed(totalSize);
+                return secureFiles;
+            } catch (Exception e) {
+                committedBlobIds.forEach(this::deleteBlobQuietly);
+                throw e;
+            } finally {
+                locks.forEach(Lock::unlock);
+            }
+        } finally {
+            uploads.forEach(StagedUpload::close);
+        }
+    }
+
+    private static LocalDateTime expiresAt(Duration expiresIn) {
+        if (expiresIn == null) {
+            return null;
+        }
+        if (expiresIn.isNegative() || expiresIn.isZero()) {
+            throw new IllegalArgumentException("expiresIn must be positive: " + expiresIn);
+        }
+        return LocalDateTime.now().plus(expiresIn);
+    }
+
+    /**
+     * Waits for every staging task, so none is still writing once the batch is given
+     * up, and rethrows the first failure after collecting the successful ones
+     */
+    private static void awaitAll(List<Future<StagedUpload>> staging, List<StagedUpload> uploads) throws Exception {
+        Exception failure = null;
+        for (Future<StagedUpload> future : staging) {
+            try {
+                uploads.add(future.get());
+            } catch (ExecutionException e) {
+                if (failure == null) {
+                    failure = e.getCause() instanceof Exception cause ? cause : e;
+                }
+            } catch (InterruptedException e) {
+                staging.forEach(pending -> pending.cancel(true));
+                Thread.currentThread().interrupt();
+                throw e;
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    /**
+     * Encrypts an upload into an uncommitted blob, fingerprinting and, if worthwhile,
+     * compressing the plaintext on the way through
+     */
+    private StagedUpload stageUpload(MultipartFile file, String userId, LocalDateTime expiresAt) throws Exception {
+        Mac contentMac = encryptionService.contentMac(userId);
+        BlobStore.BlobWriter writer = blobStore.create();
+        Deflater deflater = null;
+        try (InputStream in = new BufferedInputStream(new MacInputStream(file.getInputStream(), contentMac),
+                compressionService.getSampleSize())) {
+            String codec = compressionService.selectCodec(file.getContentType(), in);
+            InputStream plainContent = in;
+            if (codec != null) {
+                deflater = compressionService.newDeflater();
+                plainContent = compressionService.compress(codec, in, deflater);
+            }
+            DataKeyService.DataKey dataKey = dataKeyService.generate();
+            EncryptionService.StreamEncryptionResult encryptionResult = encryptionService.encrypt(
+                    dataKey.getKey(), plainContent, writer.getOutputStream());
+            fileMetrics.recordCrypto(FileMetrics.ENCRYPT, encryptionResult.getPlainLength(), encryptionResult.getCipherNanos());
+            long fileSize = deflater != null ? deflater.getBytesRead() : encryptionResult.getPlainLength();
+            if (deflater != null) {
+                fileMetrics.recordCompression(fileSize, encryptionResult.getPlainLength());
+            }
+            String contentHash = HexFormat.of().formatHex(contentMac.doFinal());
+
+            String downloadKey = generateDownloadKey();
+            SecureFile.SecureFileBuilder secureFile = SecureFile.builder()
+                    .fileName(UUID.randomUUID().toString())
+                    .originalFileName(file.getOriginalFilename())
+                    .contentType(file.getContentType())
+                    .fileSize(fileSize)
+                    .contentHash(contentHash)
+                    .uploadDate(LocalDateTime.now())
+                    .expiresAt(expiresAt)
+                    .downloadKey(downloadKey)
+                    .downloadKeyHash(encryptionService.hashDownloadKey(downloadKey))
+                    .userId(userId);
+            return new StagedUpload(writer, secureFile, contentHash, fileSize, encryptionResult.getIv(),
+                    encryptionResult.getSegmentSize(), dataKey, codec);
+        } catch (Exception e) {
+            writer.close();
+            throw e;
+        } finally {
+            if (deflater != null) {
+                deflater.end();
+            }
+        }
+    }
+
+    /**
+     * Points the upload's record at a blob with the same content if the user already has
+     * one, among the stored files or the given files of the same batch, and otherwise
+     * commits the staged blob. Must be called holding the content's dedup lock.
+     * @return the blob committed for this upload, or null if it references an existing one
+     */
+    private String referenceOrCommitBlob(StagedUpload upload, String userId, Map<String, SecureFile> batchFiles)
+            throws IOException {
+        SecureFile existing = batchFiles.get(upload.contentHash);
+        if (existing == null) {
+            existing = fileRepository.findFirstByUserIdAndContentHash(userId, upload.contentHash).orElse(null);
+        }
+        if (existing != null) {
+            // Leaving the writer uncommitted discards the staged copy
+            upload.file.blobId(existing.getBlobId())
+                    .cipherDigest(existing.getCipherDigest())
+                    .encryptionIv(existing.getEncryptionIv())
+                    .segmentSize(existing.getSegmentSize())
+                    .wrappedDataKey(existing.getWrappedDataKey())
+                    .keyVersion(existing.getKeyVersion())
+                    .compressionCodec(existing.getCompressionCodec());
+            fileMetrics.recordDeduplicated(upload.fileSize);
+            return null;
+        }
+        String blobId = upload.writer.commit();
+        upload.file.blobId(blobId)
+                .cipherDigest(blobStore.contentDigest(blobId))
+                .encryptionIv(upload.iv)
+                .segmentSize(upload.segmentSize)
+                .wrappedDataKey(upload.dataKey.getWrappedKey())
+                .keyVersion(upload.dataKey.getKeyVersion())
+                .compressionCodec(upload.codec);
+        return blobId;
+    }
+
     /**
      * Generates a random 6-character alphanumeric download key
      * @return the generated download key
      */
-    private String generateDownloadKey() {
+    static String generateDownloadKey() {
         String chars = "ABCDEFGHIJKLMNOPQRSTUVWXYZ0123456789";
         StringBuilder key = new StringBuilder();
         Random random = new Random();
@@ -68,82 +334,485 @@ public class FileService {
     }
     
     /**
-     * Retrieves and decrypts a file
+     * Authorizes a download and prepares to stream the decrypted content. Nothing is
+     * read or decrypted until {@link FileDownloadStream#writeTo(OutputStream)} is called,
+     * which then decrypts segment by segment into the given stream.
      * @param fileId the ID of the file to retrieve
      * @param downloadKey the key required to download the file
      * @param userId the Firebase user ID
-     * @return the decrypted file content
+     * @return the file metadata and a writer for its decrypted content
      * @throws IllegalArgumentException if the download key is invalid or userId doesn't match
      */
-    public FileDownloadDto downloadFile(Long fileId, String downloadKey, String userId) throws Exception {
+    public FileDownloadStream openDownload(Long fileId, String downloadKey, String userId) {
         SecureFile secureFile = fileRepository.findById(fileId)
+                .filter(file -> !file.isExpired())
                 .orElseThrow(() -> new IllegalArgumentException("File not found with ID: " + fileId));
-        
+        authorizeDownload(secureFile, downloadKey, userId);
+        return toDownloadStream(secureFile);
+    }
+
+    /**
+     * Authorizes several downloads with a single query and prepares to stream them as
+     * one ZIP archive. When the archive is written, the files are decrypted one after
+     * another straight into their entries, so memory stays at what one download needs.
+     * Entries are named after the original file names, numbered where they clash.
+     * @param downloadKeys the download key of each file by file ID, in archive order
+     * @param userId the Firebase user ID
+     * @return a writer for the archive
+     * @throws NoSuchElementException if one of the files does not exist
+     * @throws IllegalArgumentException if the batch is empty or too large, a download key is invalid or userId doesn't match
+     * @throws UsageLimiter.RateLimitExceededException if the user has to wait for download bandwidth first
+     */
+    public ContentWriter openArchive(Map<Long, String> downloadKeys, String userId) {
+        if (downloadKeys.isEmpty() || downloadKeys.size() > MAX_BATCH_SIZE) {
+            throw new IllegalArgumentException("A batch must hold 1 to " + MAX_BATCH_SIZE + " files");
+        }
+        Map<Long, SecureFile> files = new HashMap<>();
+        fileRepository.findAllById(downloadKeys.keySet()).forEach(file -> files.put(file.getId(), file));
+
+        List<FileDownloadStream> downloads = new ArrayList<>(downloadKeys.size());
+        downloadKeys.forEach((fileId, downloadKey) -> {
+            SecureFile secureFile = files.get(fileId);
+            if (secureFile == null || secureFile.isExpired()) {
+                throw new NoSuchElementException("File not found with ID: " + fileId);
+            }
+            authorizeDownload(secureFile, downloadKey, userId);
+            downloads.add(toDownloadStream(secureFile));
+        });
+        usageLimiter.acquireDownload(userId, downloads.stream().mapToLong(FileDownloadStream::getContentLength).sum());
+        return out -> writeArchive(downloads, out);
+    }
+
+    private static void writeArchive(List<FileDownloadStream> downloads, OutputStream out) throws Exception {
+        ZipOutputStream zip = new ZipOutputStream(out);
+        zip.setLevel(Deflater.BEST_SPEED);
+        Set<String> entryNames = new HashSet<>();
+        for (FileDownloadStream download : downloads) {
+            zip.putNextEntry(new ZipEntry(uniqueEntryName(download.getFileName(), entryNames)));
+            download.writeTo(zip);
+            zip.closeEntry();
+        }
+        // Finishing rather than closing leaves the response stream to its owner
+        zip.finish();
+        out.flush();
+    }
+
+    /**
+     * Drops any directory part, so entries cannot escape the extraction directory,
+     * and numbers names that are already taken, as in {@code report (1).pdf}
+     */
+    private static String uniqueEntryName(String fileName, Set<String> taken) {
+        String name = fileName == null ? "" : fileName.substring(Math.max(fileName.lastIndexOf('/'), fileName.lastIndexOf('\\')) + 1);
+        if (name.isBlank() || name.equals(".") || name.equals("..")) {
+            name = "file";
+        }
+        int extension = name.lastIndexOf('.');
+        String base = extension > 0 ? name.substring(0, extension) : name;
+        String suffix = extension > 0 ? name.substring(extension) : "";
+        String candidate = name;
+        for (int n = 1; !taken.add(candidate); n++) {
+            candidate = base + " (" + n + ")" + suffix;
+        }
+        return candidate;
+    }
+
+    private void authorizeDownload(SecureFile secureFile, String downloadKey, String userId) {
         // Validate the download key
-        if (!secureFile.getDownloadKey().equals(downloadKey)) {
-            throw new IllegalArgumentException("Invalid download key for file ID: " + fileId);
+        if (!isValidDownloadKey(secureFile.getDownloadKeyHash(), secureFile.getLegacyDownloadKey(), downloadKey)) {
+            throw new IllegalArgumentException("Invalid download key for file ID: " + secureFile.getId());
         }
         
         // Validate the user ID
         if (!secureFile.getUserId().equals(userId)) {
             throw new IllegalArgumentException("User not authorized to access this file");
         }
-        
-        // Decrypt the file content
-        byte[] decryptedData = encryptionService.decrypt(
-                secureFile.getEncryptedData(),
-                secureFile.getEncryptionIv()
-        );
-        
-        return new FileDownloadDto(
-                decryptedData,
+    }
+
+    private FileDownloadStream toDownloadStream(SecureFile secureFile) {
+        // Blob-backed segmented files can be decrypted from any segment onwards, unless
+        // compression has shifted plaintext offsets away from segment boundaries
+        boolean seekable = secureFile.getBlobId() != null && secureFile.getSegmentSize() != null
+                && secureFile.getCompressionCodec() == null;
+        return new FileDownloadStream(
                 secureFile.getOriginalFileName(),
-                secureFile.getContentType()
+                secureFile.getContentType(),
+                secureFile.getFileSize(),
+                secureFile.getBlobId() != null ? "\"" + secureFile.getBlobId() + "\"" : null,
+                out -> writeDecryptedContent(secureFile, out),
+                seekable ? (out, start, end) -> writeDecryptedRange(secureFile, out, start, end) : null
         );
     }
-    
+
+    private void writeDecryptedContent(SecureFile secureFile, OutputStream out) throws Exception {
+        try (FileMetrics.Transfer transfer = fileMetrics.startTransfer(FileMetrics.DOWNLOAD)) {
+            if (secureFile.getSegmentSize() == null) {
+                // Single-shot ciphertext can only be authenticated as a whole
+                byte[] encryptedData;
+                try (InputStream encryptedContent = openEncryptedContent(secureFile)) {
+                    encryptedData = encryptedContent.readAllBytes();
+                }
+                long cipherStart = System.nanoTime();
+                byte[] plainContent = encryptionService.decrypt(encryptedData, secureFile.getEncryptionIv());
+                fileMetrics.recordCrypto(FileMetrics.DECRYPT, secureFile.getFileSize(), System.nanoTime() - cipherStart);
+                out.write(plainContent);
+                out.flush();
+            } else {
+                InflaterOutputStream inflatingOut = secureFile.getCompressionCodec() != null
+                        ? CompressionService.decompress(secureFile.getCompressionCodec(), out)
+                        : null;
+                OutputStream plainOut = inflatingOut != null ? inflatingOut : out;
+                if (segmentCache.isEnabled() && secureFile.getBlobId() != null) {
+                    writeCachedSegments(secureFile, plainOut, 0, -1);
+                } else {
+                    try (InputStream encryptedContent = openEncryptedContent(secureFile)) {
+                        long cipherNanos = encryptionService.decrypt(
+                                dataKeyService.keyFor(secureFile),
+                                encryptedContent,
+                                plainOut,
+                                secureFile.getEncryptionIv(),
+                                secureFile.getSegmentSize()
+                        );
+                        fileMetrics.recordCrypto(FileMetrics.DECRYPT, secureFile.getFileSize(), cipherNanos);
+                    }
+                }
+                if (inflatingOut != null) {
+                    inflatingOut.finish();
+                    out.flush();
+                }
+            }
+            transfer.completed(secureFile.getFileSize());
+        }
+    }
+
     /**
-     * Gets the download key for a file
+     * Writes the decrypted bytes {@code [start, end]} of a blob-backed segmented file
+     * through the segment cache, decrypting only the segments it is missing. Cipher
+     * time is not recorded per request here, the cache statistics show the misses.
+     * @param end the last byte to write, inclusive, or -1 for everything from {@code start} on
+     */
+    private void writeCachedSegments(SecureFile secureFile, OutputStream out, long start, long end) throws Exception {
+        String blobId = secureFile.getBlobId();
+        SecretKey key = dataKeyService.keyFor(secureFile);
+        String iv = secureFile.getEncryptionIv();
+        int segmentSize = secureFile.getSegmentSize();
+        byte[] buffer = new byte[segmentSize];
+        try (SeekableByteChannel channel = blobStore.open(blobId)) {
+            int firstSegment = (int) (start / segmentSize);
+            int lastSegment = end < 0
+                    ? (int) EncryptionService.segmentCount(channel.size(), segmentSize) - 1
+                    : (int) (end / segmentSize);
+            for (int segmentIndex = firstSegment; segmentIndex <= lastSegment; segmentIndex++) {
+                int index = segmentIndex;
+                int from = segmentIndex == firstSegment ? (int) (start % segmentSize) : 0;
+                int to = end >= 0 && segmentIndex == lastSegment ? (int) (end % segmentSize) + 1 : -1;
+                segmentCache.writeSegment(blobId, segmentIndex,
+                        () -> encryptionService.decryptSegment(key, channel, iv, segmentSize, index),
+                        out, from, to, buffer);
+            }
+        }
+        out.flush();
+    }
+
+    /**
+     * Loads only what is needed to authorize a request and checks the download key
      * @param fileId the ID of the file
-     * @return the download key
+     * @param downloadKey the key presented by the client
+     * @return the file's access columns
+     * @throws NoSuchElementException if the file does not exist
+     * @throws IllegalArgumentException if the download key is invalid
      */
-    public String getDownloadKey(Long fileId) {
-        SecureFile secureFile = fileRepository.findById(fileId)
-                .orElseThrow(() -> new IllegalArgumentException("File not found with ID: " + fileId));
-        return secureFile.getDownloadKey();
+    public FileAccess getFileAccess(Long fileId, String downloadKey) {
+        FileAccess access = fileRepository.findAccessById(fileId)
+                .filter(file -> !file.isExpired())
+                .orElseThrow(() -> new NoSuchElementException("File not found with ID: " + fileId));
+        if (!isValidDownloadKey(access.getDownloadKeyHash(), access.getLegacyDownloadKey(), downloadKey)) {
+            throw new IllegalArgumentException("Invalid download key for file ID: " + fileId);
+        }
+        return access;
+    }
+
+    /**
+     * Compares in constant time, so response timing reveals nothing about the stored key
+     */
+    private boolean isValidDownloadKey(String storedHash, String storedKey, String downloadKey) {
+        if (downloadKey == null) {
+            return false;
+        }
+        byte[] expected;
+        byte[] actual;
+        if (storedHash != null) {
+            expected = storedHash.getBytes(StandardCharsets.US_ASCII);
+            actual = encryptionService.hashDownloadKey(downloadKey).getBytes(StandardCharsets.US_ASCII);
+        } else {
+            // Rows written before download keys were hashed
+            expected = storedKey.getBytes(StandardCharsets.UTF_8);
+            actual = downloadKey.getBytes(StandardCharsets.UTF_8);
+        }
+        return MessageDigest.isEqual(expected, actual);
     }
      /**
-     * Lists all files for a specific user
+     * Lists all files for a specific user, from the {@link FileListingCache} unless they changed
      * @param userId the Firebase user ID
      * @return list of files metadata for the specified user
      */
-    public List<SecureFile> getFilesByUserId(String userId) {
-        return fileRepository.findByUserIdOrderByUploadDateDesc(userId);
+    public List<FileSummary> getFilesByUserId(String userId) {
+        return listingCache.get(userId, () -> fileRepository.findSummariesByUserId(userId, LocalDateTime.now()));
     }
+
+    /**
+     * @param userId the Firebase user ID
+     * @return the ETag of the user's current files, which changes whenever one is stored
+     * or deleted, or null if listings are not cached
+     */
+    public String getListingETag(String userId) {
+        return listingCache.getETag(userId);
+    }
+    /**
+     * Lists one keyset page of files matching the query, newest first
+     * @param query the filters and page size
+     * @param cursor the cursor returned with the previous page, or null for the first page
+     * @return the page of file metadata and the cursor of the following page
+     * @throws IllegalArgumentException if the cursor is malformed
+     */
+    public FilePage getFilePage(FileQuery query, String cursor) {
+        int limit = Math.max(1, Math.min(query.getLimit(), MAX_PAGE_SIZE));
+        if (cursor != null && !cursor.isEmpty()) {
+            decodeCursor(cursor, query);
+        }
+        // Fetch one extra row to learn whether another page follows
+        query.setLimit(limit + 1);
+        List<FileSummary> files = fileRepository.findSummaries(query);
+
+        String nextCursor = null;
+        if (files.size() > limit) {
+            files = files.subList(0, limit);
+            nextCursor = encodeCursor(files.get(limit - 1));
+        }
+        return new FilePage(files, nextCursor);
+    }
+
+    private static String encodeCursor(FileSummary last) {
+        String position = last.getUploadDate() + CURSOR_SEPARATOR + last.getId();
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(position.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static void decodeCursor(String cursor, FileQuery query) {
+        try {
+            String position = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            int separator = position.lastIndexOf(CURSOR_SEPARATOR);
+            query.setAfterUploadDate(LocalDateTime.parse(position.substring(0, separator)));
+            query.setAfterId(Long.parseLong(position.substring(separator + 1)));
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException("Invalid cursor: " + cursor, e);
+        }
+    }
+
     /**
      * Lists all files
      * @return list of all files metadata
      */
-    public List<SecureFile> getAllFiles() {
-        return fileRepository.findAllByOrderByUploadDateDesc();
+    public List<FileSummary> getAllFiles() {
+        return fileRepository.findAllSummaries(LocalDateTime.now());
     }
     
     /**
-     * Deletes a file by ID
+     * Deletes a file by ID, and its blob once no other record references it
      * @param fileId the ID of the file to delete
+     * @param downloadKey the key required to delete the file
      * @param userId the Firebase user ID
-     * @throws IllegalArgumentException if the user is not authorized to delete this file
+     * @throws NoSuchElementException if the file does not exist
+     * @throws IllegalArgumentException if the key is invalid or the user is not authorized to delete this file
      */
-    public void deleteFile(Long fileId, String userId) {
-        SecureFile secureFile = fileRepository.findById(fileId)
-                .orElseThrow(() -> new IllegalArgumentException("File not found with ID: " + fileId));
+    public void deleteFile(Long fileId, String downloadKey, String userId) {
+        FileAccess access = getFileAccess(fileId, downloadKey);
         
         // Validate the user ID
-        if (!secureFile.getUserId().equals(userId)) {
+        if (!access.getUserId().equals(userId)) {
             throw new IllegalArgumentException("User not authorized to delete this file");
         }
         
-        fileRepository.deleteById(fileId);
+        if (access.getContentHash() == null) {
+            deleteFileAndUnreferencedBlob(access);
+            return;
+        }
+        Lock lock = dedupLock(access.getUserId(), access.getContentHash());
+        lock.lock();
+        try {
+            deleteFileAndUnreferencedBlob(access);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Deletes several files without waiting for their storage to be reclaimed. The files
+     * are marked expired, which hides them at once, and the {@link ExpiredFileSweeper}
+     * deletes them later. Nothing is deleted unless every key is valid.
+     * @param downloadKeys the download key of each file by file ID
+     * @param userId the Firebase user ID
+     * @return the number of files marked for deletion
+     * @throws NoSuchElementException if one of the files does not exist
+     * @throws IllegalArgumentException if the batch is empty or too large, a download key is invalid or userId doesn't match
+     */
+    public int expireFiles(Map<Long, String> downloadKeys, String userId) {
+        if (downloadKeys.isEmpty() || downloadKeys.size() > MAX_BATCH_SIZE) {
+            throw new IllegalArgumentException("A batch must hold 1 to " + MAX_BATCH_SIZE + " files");
+        }
+        Map<Long, FileAccess> files = new HashMap<>();
+        fileRepository.findAccessByIds(downloadKeys.keySet()).forEach(access -> files.put(access.getId(), access));
+        downloadKeys.forEach((fileId, downloadKey) -> {
+            FileAccess access = files.get(fileId);
+            if (access == null || access.isExpired()) {
+                throw new NoSuchElementException("File not found with ID: " + fileId);
+            }
+            if (!isValidDownloadKey(access.getDownloadKeyHash(), access.getLegacyDownloadKey(), downloadKey)) {
+                throw new IllegalArgumentException("Invalid download key for file ID: " + fileId);
+            }
+            if (!access.getUserId().equals(userId)) {
+                throw new IllegalArgumentException("User not authorized to delete this file");
+            }
+        });
+        int expired = fileRepository.expireFiles(downloadKeys.keySet(), userId, LocalDateTime.now());
+        listingCache.invalidate(userId);
+        return expired;
+    }
+
+    /**
+     * Deletes expired files with one JDBC batch, then their blobs once no other record
+     * references them. Files another request deleted in the meantime are skipped. A
+     * driver reporting {@link Statement#SUCCESS_NO_INFO} leaves open whether this batch
+     * or another request deleted the row, so such files are not counted and their usage
+     * is left to {@link UsageLimiter#reconcile()}, but their blobs are still reclaimed.
+     * @param files the access columns of the expired files
+     * @return the number of files known to be deleted by this call
+     */
+    public int deleteExpiredFiles(List<FileAccess> files) {
+        int[] counts = transactionTemplate.execute(status ->
+                fileRepository.deleteAllByIds(files.stream().map(FileAccess::getId).toList()));
+        int deleted = 0;
+        Set<String> userIds = new HashSet<>();
+        for (int i = 0; i < files.size(); i++) {
+            if (counts[i] == 0) {
+                continue;
+            }
+            FileAccess access = files.get(i);
+            if (counts[i] > 0) {
+                deleted++;
+                usageLimiter.recordDeleted(access.getUserId(), access.getFileSize());
+            }
+            userIds.add(access.getUserId());
+            if (access.getBlobId() != null) {
+                segmentCache.invalidate(access.getBlobId());
+                deleteBlobIfUnreferenced(access);
+            }
+        }
+        userIds.forEach(listingCache::invalidate);
+        return deleted;
+    }
+
+    private void deleteBlobIfUnreferenced(FileAccess access) {
+        if (access.getContentHash() == null) {
+            if (fileRepository.countByBlobId(access.getBlobId()) == 0) {
+                deleteBlobQuietly(access.getBlobId());
+            }
+            return;
+        }
+        // An upload deduplicating against the deleted record holds this lock until its
+        // own record is saved, so the count below includes it
+        Lock lock = dedupLock(access.getUserId(), access.getContentHash());
+        lock.lock();
+        try {
+            if (fileRepository.countByBlobId(access.getBlobId()) == 0) {
+                deleteBlobQuietly(access.getBlobId());
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void deleteFileAndUnreferencedBlob(FileAccess access) {
+        if (fileRepository.deleteFileById(access.getId()) > 0) {
+            usageLimiter.recordDeleted(access.getUserId(), access.getFileSize());
+            listingCache.invalidate(access.getUserId());
+        }
+        if (access.getBlobId() != null) {
+            segmentCache.invalidate(access.getBlobId());
+        }
+        if (access.getBlobId() != null && fileRepository.countByBlobId(access.getBlobId()) == 0) {
+            deleteBlobQuietly(access.getBlobId());
+        }
+    }
+
+    /**
+     * Re-encrypts a blob-backed file stored before envelope encryption under a data key
+     * of its own, together with every record sharing its blob. The plaintext is streamed
+     * from the old blob into a new one; the records are then switched over in a single
+     * update, and the old blob is deleted once nothing references it. Compressed content
+     * stays compressed, only its encryption changes.
+     * @param fileId the file ID
+     * @return the number of plaintext bytes read plus ciphertext bytes written, 0 if the
+     * file no longer needs re-encrypting
+     */
+    public long reencryptWithDataKey(Long fileId) throws Exception {
+        SecureFile secureFile = fileRepository.findById(fileId).orElse(null);
+        if (secureFile == null || secureFile.getContentHash() == null) {
+            return reencryptBlob(secureFile);
+        }
+        // Keeps uploads from deduplicating against the old blob while it is replaced
+        Lock lock = dedupLock(secureFile.getUserId(), secureFile.getContentHash());
+        lock.lock();
+        try {
+            return reencryptBlob(fileRepository.findById(fileId).orElse(null));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private long reencryptBlob(SecureFile secureFile) throws Exception {
+        if (secureFile == null || secureFile.getWrappedDataKey() != null || secureFile.getBlobId() == null) {
+            return 0;
+        }
+        String blobId = secureFile.getBlobId();
+        DataKeyService.DataKey dataKey = dataKeyService.generate();
+        EncryptionService.StreamEncryptionResult encryptionResult;
+        String newBlobId;
+        try (BlobStore.BlobWriter writer = blobStore.create();
+             InputStream plainContent = openPlainContent(secureFile)) {
+            encryptionResult = encryptionService.encrypt(dataKey.getKey(), plainContent, writer.getOutputStream());
+            newBlobId = writer.commit();
+        }
+        fileMetrics.recordCrypto(FileMetrics.ENCRYPT, encryptionResult.getPlainLength(), encryptionResult.getCipherNanos());
+
+        int updated = fileRepository.replaceUnwrappedBlob(blobId, newBlobId, blobStore.contentDigest(newBlobId),
+                encryptionResult.getIv(),
+                encryptionResult.getSegmentSize(), dataKey.getWrappedKey(), dataKey.getKeyVersion());
+        if (updated == 0) {
+            // Deleted or re-encrypted meanwhile
+            deleteBlobQuietly(newBlobId);
+            return 0;
+        }
+        segmentCache.invalidate(blobId);
+        if (fileRepository.countByBlobId(blobId) == 0) {
+            deleteBlobQuietly(blobId);
+        }
+        return encryptionResult.getPlainLength() + encryptionResult.getEncryptedLength();
+    }
+
+    /**
+     * Opens the plaintext of a blob-backed file encrypted with the legacy key, as stored,
+     * so still compressed if it was
+     */
+    private InputStream openPlainContent(SecureFile secureFile) throws Exception {
+        if (secureFile.getSegmentSize() == null) {
+            // Single-shot ciphertext can only be authenticated as a whole
+            byte[] encryptedData;
+            try (InputStream encryptedContent = openEncryptedContent(secureFile)) {
+                encryptedData = encryptedContent.readAllBytes();
+            }
+            return new ByteArrayInputStream(encryptionService.decrypt(encryptedData, secureFile.getEncryptionIv()));
+        }
+        return encryptionService.decryptingStream(dataKeyService.keyFor(secureFile), blobStore.open(secureFile.getBlobId()),
+                secureFile.getEncryptionIv(), secureFile.getSegmentSize());
     }
 
    public SecureFile getFileById(Long fileId) {
@@ -151,27 +820,258 @@ public class FileService {
                .orElseThrow(() -> new IllegalArgumentException("File not found with ID: " + fileId));
    }
 
-    public static class FileDownloadDto {
-        private final byte[] content;
+    /**
+     * Reads the first bytes of a file's stored ciphertext
+     * @param fileId the ID of the file
+     * @param downloadKey the key required to read the file
+     * @param length the maximum number of bytes to read
+     * @return up to {@code length} bytes of ciphertext
+     * @throws NoSuchElementException if the file does not exist
+     * @throws IllegalArgumentException if the download key is invalid
+     */
+    public byte[] getEncryptedPreview(Long fileId, String downloadKey, int length) throws IOException {
+        FileAccess access = getFileAccess(fileId, downloadKey);
+        if (access.getBlobId() != null) {
+            try (InputStream encryptedContent = Channels.newInputStream(blobStore.open(access.getBlobId()))) {
+                return encryptedContent.readNBytes(length);
+            }
+        }
+        // Legacy rows keep their ciphertext in the LOB column
+        try (InputStream encryptedContent = openEncryptedContent(getFileById(fileId))) {
+            return encryptedContent.readNBytes(length);
+        }
+    }
+
+    private void writeDecryptedRange(SecureFile secureFile, OutputStream out, long start, long end) throws Exception {
+        if (segmentCache.isEnabled()) {
+            try (FileMetrics.Transfer transfer = fileMetrics.startTransfer(FileMetrics.DOWNLOAD)) {
+                writeCachedSegments(secureFile, out, start, end);
+                transfer.completed(end - start + 1);
+            }
+            return;
+        }
+        try (FileMetrics.Transfer transfer = fileMetrics.startTransfer(FileMetrics.DOWNLOAD);
+             SeekableByteChannel channel = blobStore.open(secureFile.getBlobId())) {
+            long cipherNanos = encryptionService.decryptRange(
+                    dataKeyService.keyFor(secureFile),
+                    channel,
+                    out,
+                    secureFile.getEncryptionIv(),
+                    secureFile.getSegmentSize(),
+                    start,
+                    end
+            );
+            fileMetrics.recordCrypto(FileMetrics.DECRYPT, end - start + 1, cipherNanos);
+            transfer.completed(end - start + 1);
+        }
+    }
+
+    /**
+     * Opens the stored ciphertext of a file, either from the blob store or from
+     * the legacy LOB column for rows that have not been migrated yet
+     */
+    private InputStream openEncryptedContent(SecureFile secureFile) throws IOException {
+        if (secureFile.getBlobId() != null) {
+            return Channels.newInputStream(blobStore.open(secureFile.getBlobId()));
+        }
+        // Read on its own, as the entity is loaded without its LOB
+        ByteArrayOutputStream encryptedData = new ByteArrayOutputStream();
+        if (fileRepository.copyEncryptedData(secureFile.getId(), encryptedData) < 0) {
+            throw new IllegalStateException("No stored content for file ID: " + secureFile.getId());
+        }
+        return new ByteArrayInputStream(encryptedData.toByteArray());
+    }
+
+    private Lock dedupLock(String userId, String contentHash) {
+        return dedupLocks[dedupLockIndex(userId, contentHash)];
+    }
+
+    /**
+     * @return the distinct dedup locks of a batch's contents, in stripe order so that
+     * concurrent batches always acquire them in the same order
+     */
+    private List<Lock> dedupLocks(String userId, List<StagedUpload> uploads) {
+        return uploads.stream()
+                .mapToInt(upload -> dedupLockIndex(userId, upload.contentHash))
+                .distinct()
+                .sorted()
+                .mapToObj(index -> dedupLocks[index])
+                .toList();
+    }
+
+    private int dedupLockIndex(String userId, String contentHash) {
+        return Math.floorMod(31 * userId.hashCode() + contentHash.hashCode(), dedupLocks.length);
+    }
+
+    private static Lock[] newLocks(int count) {
+        Lock[] locks = new Lock[count];
+        for (int i = 0; i < count; i++) {
+            locks[i] = new ReentrantLock();
+        }
+        return locks;
+    }
+
+    private void deleteBlobQuietly(String blobId) {
+        try {
+            blobStore.delete(blobId);
+        } catch (IOException e) {
+            log.warn("Failed to delete blob {}", blobId, e);
+        }
+    }
+
+    /**
+     * An encrypted upload waiting in an uncommitted blob for the dedup decision.
+     * Closing it discards the blob unless it was committed.
+     */
+    private static class StagedUpload implements AutoCloseable {
+        private final BlobStore.BlobWriter writer;
+        private final SecureFile.SecureFileBuilder file;
+        private final String contentHash;
+        private final long fileSize;
+        private final String iv;
+        private final int segmentSize;
+        private final DataKeyService.DataKey dataKey;
+        private final String codec;
+
+        StagedUpload(BlobStore.BlobWriter writer, SecureFile.SecureFileBuilder file, String contentHash,
+                     long fileSize, String iv, int segmentSize, DataKeyService.DataKey dataKey, String codec) {
+            this.writer = writer;
+            this.file = file;
+            this.contentHash = contentHash;
+            this.fileSize = fileSize;
+            this.iv = iv;
+            this.segmentSize = segmentSize;
+            this.dataKey = dataKey;
+            this.codec = codec;
+        }
+
+        @Override
+        public void close() {
+            try {
+                writer.close();
+            } catch (IOException e) {
+                log.warn("Failed to discard staged upload", e);
+            }
+        }
+    }
+
+    /**
+     * Feeds every byte read through it into a MAC
+     */
+    private static class MacInputStream extends FilterInputStream {
+        private final Mac mac;
+
+        MacInputStream(InputStream in, Mac mac) {
+            super(in);
+            this.mac = mac;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = in.read();
+            if (b >= 0) {
+                mac.update((byte) b);
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int count = in.read(b, off, len);
+            if (count > 0) {
+                mac.update(b, off, count);
+            }
+            return count;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            throw new IOException("Skipping would leave bytes out of the content hash");
+        }
+    }
+
+    public static class FilePage {
+        private final List<FileSummary> files;
+        private final String nextCursor;
+
+        public FilePage(List<FileSummary> files, String nextCursor) {
+            this.files = files;
+            this.nextCursor = nextCursor;
+        }
+
+        public List<FileSummary> getFiles() {
+            return files;
+        }
+
+        public String getNextCursor() {
+            return nextCursor;
+        }
+    }
+
+    @FunctionalInterface
+    public interface ContentWriter {
+        void writeTo(OutputStream out) throws Exception;
+    }
+
+    @FunctionalInterface
+    public interface RangeWriter {
+        void writeTo(OutputStream out, long start, long end) throws Exception;
+    }
+
+    public static class FileDownloadStream {
         private final String fileName;
         private final String contentType;
-        
-        public FileDownloadDto(byte[] content, String fileName, String contentType) {
-            this.content = content;
+        private final long contentLength;
+        private final String eTag;
+        private final ContentWriter contentWriter;
+        private final RangeWriter rangeWriter;
+
+        public FileDownloadStream(String fileName, String contentType, long contentLength, String eTag,
+                                  ContentWriter contentWriter, RangeWriter rangeWriter) {
             this.fileName = fileName;
             this.contentType = contentType;
+            this.contentLength = contentLength;
+            this.eTag = eTag;
+            this.contentWriter = contentWriter;
+            this.rangeWriter = rangeWriter;
         }
-        
-        public byte[] getContent() {
-            return content;
-        }
-        
+
         public String getFileName() {
             return fileName;
         }
-        
+
         public String getContentType() {
             return contentType;
         }
+
+        public long getContentLength() {
+            return contentLength;
+        }
+
+        public String getETag() {
+            return eTag;
+        }
+
+        /**
+         * @return whether byte ranges can be decrypted on their own, which compressed
+         * content and single-shot ciphertext do not allow
+         */
+        public boolean isSeekable() {
+            return rangeWriter != null;
+        }
+
+        public void writeTo(OutputStream out) throws Exception {
+            contentWriter.writeTo(out);
+        }
+
+        /**
+         * Writes the decrypted bytes {@code [start, end]}, only supported when {@link #isSeekable()}
+         */
+        public void writeRangeTo(OutputStream out, long start, long end) throws Exception {
+            if (rangeWriter == null) {
+                throw new UnsupportedOperationException("File does not support range reads");
+            }
+            rangeWriter.writeTo(out, start, end);
+        }
     }
 }
@@ -0,0 +1,292 @@
+package com.filesystem.secure.service;
+
+import com.filesystem.secure.model.SecureFile;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.jvm.ExecutorServiceMetrics;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.stream.Stream;
+
+/**
+ * Asynchronous uploads. The request thread only spools the upload to local disk and
+ * queues it; a fixed pool of ingest workers then encrypts and stores it through
+ * {@link FileService#uploadFile(MultipartFile, String)}, and clients poll the job for
+ * the stored file. At most {@code ingest.workers} uploads are processed and
+ * {@code ingest.queue-capacity} wait at any time; beyond that uploads are refused
+ * before they are spooled, so a burst cannot take every request thread and database
+ * connection at once.
+ * <p>
+ * Failures are per job and never retried here:
+ * <ul>
+ * <li>An upload refused at submission (empty, queue full, or failing to spool) is not
+ * queued, and its slot and any partly written spool file are released right away.</li>
+ * <li>A job that fails in its worker ends {@code FAILED}, with the reason when the
+ * client can act on it (an invalid file or an exceeded quota) and a generic message
+ * otherwise. Nothing of it is stored, as {@link FileService} discards staged content,
+ * and its spool file and slot are released, so other jobs are unaffected.</li>
+ * <li>Retrying means submitting the upload again as a new job, since the spooled copy
+ * is gone once a job has finished either way.</li>
+ * </ul>
+ * Jobs live in memory only. Uploads still queued when the application stops are lost,
+ * their spool files are removed on the next start and their handles are unknown.
+ */
+@Slf4j
+@Service
+@ConditionalOnProperty(name = "ingest.async.enabled", havingValue = "true")
+public class IngestionService {
+
+    private final FileService fileService;
+    private final Path spoolDirectory;
+    private final Duration jobTtl;
+    private final Semaphore slots;
+    private final ExecutorService workers;
+    private final Map<String, IngestJob> jobs = new ConcurrentHashMap<>();
+
+    public IngestionService(FileService fileService,
+                            @Value("${ingest.spool-dir:./data/spool}") String spoolDirectory,
+                            @Value("${ingest.workers:2}") int workerCount,
+                            @Value("${ingest.queue-capacity:64}") int queueCapacity,
+                            @Value("${ingest.job-ttl:PT1H}") Duration jobTtl,
+                            MeterRegistry registry) throws IOException {
+        this.fileService = fileService;
+        this.spoolDirectory = Files.createDirectories(Path.of(spoolDirectory).toAbsolutePath());
+        this.jobTtl = jobTtl;
+        this.slots = new Semaphore(workerCount + queueCapacity);
+        ThreadFactory threads = Thread.ofPlatform().name("ingest-", 0).daemon().factory();
+        this.workers = ExecutorServiceMetrics.monitor(registry, Executors.newFixedThreadPool(workerCount, threads), "ingest");
+        Gauge.builder("ingest.slots.available", slots, Semaphore::availablePermits)
+                .description("Uploads that can still be accepted before ingestion refuses new ones")
+                .register(registry);
+        removeStaleSpoolFiles();
+    }
+
+    /**
+     * Spools an upload and queues it for encryption
+     * @param file the file to upload
+     * @param userId the Firebase user ID
+     * @return the queued job
+     * @throws IllegalArgumentException if the file is empty
+     * @throws IngestQueueFullException if the queue is full
+     */
+    public IngestJob submit(MultipartFile file, String userId) throws IOException {
+        if (file.isEmpty()) {
+            throw new IllegalArgumentException("File cannot be empty");
+        }
+        if (!slots.tryAcquire()) {
+            throw new IngestQueueFullException();
+        }
+        IngestJob job = new IngestJob(UUID.randomUUID().toString(), userId);
+        Path spoolFile = spoolDirectory.resolve(job.id);
+        try {
+            // Given an absolute path, a part the container already wrote to disk is moved rather than copied
+            file.transferTo(spoolFile.toFile());
+            SpooledFile spooled = new SpooledFile(spoolFile, file.getOriginalFilename(), file.getContentType(), file.getSize());
+            jobs.put(job.id, job);
+            workers.execute(() -> ingest(job, spooled));
+        } catch (IOException | RuntimeException e) {
+            jobs.remove(job.id);
+            deleteQuietly(spoolFile);
+            slots.release();
+            throw e;
+        }
+        return job;
+    }
+
+    /**
+     * @param ingestId the job ID
+     * @param userId the Firebase user ID
+     * @return the job
+     * @throws NoSuchElementException if the job does not exist or has expired
+     * @throws SecurityException if the job belongs to another user
+     */
+    public IngestJob getJob(String ingestId, String userId) {
+        IngestJob job = jobs.get(ingestId);
+        if (job == null) {
+            throw new NoSuchElementException("Ingest job not found: " + ingestId);
+        }
+        if (!job.userId.equals(userId)) {
+            throw new SecurityException("Ingest job belongs to another user");
+        }
+        return job;
+    }
+
+    private void ingest(IngestJob job, SpooledFile spooled) {
+        try {
+            job.status = IngestStatus.PROCESSING;
+            job.file = fileService.uploadFile(spooled, job.userId);
+            job.status = IngestStatus.COMPLETED;
+        } catch (Exception e) {
+            log.warn("Ingest job {} failed", job.id, e);
+            job.error = e instanceof IllegalArgumentException || e instanceof UsageLimiter.QuotaExceededException
+                    ? e.getMessage()
+                    : "Upload failed";
+            job.status = IngestStatus.FAILED;
+        } finally {
+            job.finishedAt = LocalDateTime.now();
+            deleteQuietly(spooled.path);
+            slots.release();
+        }
+    }
+
+    /**
+     * Forgets finished jobs older than the job TTL
+     */
+    @Scheduled(fixedDelayString = "${ingest.cleanup-interval:PT5M}", initialDelayString = "${ingest.cleanup-interval:PT5M}")
+    public void expireJobs() {
+        LocalDateTime cutoff = LocalDateTime.now().minus(jobTtl);
+        jobs.values().removeIf(job -> job.finishedAt != null && job.finishedAt.isBefore(cutoff));
+    }
+
+    private void removeStaleSpoolFiles() throws IOException {
+        List<Path> stale;
+        try (Stream<Path> files = Files.list(spoolDirectory)) {
+            stale = files.filter(Files::isRegularFile).toList();
+        }
+        stale.forEach(this::deleteQuietly);
+        if (!stale.isEmpty()) {
+            log.warn("Removed {} uploads spooled before the last shutdown", stale.size());
+        }
+    }
+
+    private void deleteQuietly(Path path) {
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            log.warn("Failed to delete spool file {}", path, e);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        workers.shutdownNow();
+    }
+
+    public enum IngestStatus {
+        QUEUED, PROCESSING, COMPLETED, FAILED
+    }
+
+    public static class IngestJob {
+        private final String id;
+        private final String userId;
+        private final LocalDateTime submittedAt = LocalDateTime.now();
+        private volatile IngestStatus status = IngestStatus.QUEUED;
+        private volatile SecureFile file;
+        private volatile String error;
+        private volatile LocalDateTime finishedAt;
+
+        IngestJob(String id, String userId) {
+            this.id = id;
+            this.userId = userId;
+        }
+
+        public String getId() {
+            return id;
+        }
+
+        public LocalDateTime getSubmittedAt() {
+            return submittedAt;
+        }
+
+        public IngestStatus getStatus() {
+            return status;
+        }
+
+        /**
+         * @return the stored file once the job has completed, otherwise null
+         */
+        public SecureFile getFile() {
+            return file;
+        }
+
+        public String getError() {
+            return error;
+        }
+    }
+
+    public static class IngestQueueFullException extends RuntimeException {
+        public IngestQueueFullException() {
+            super("Ingest queue is full");
+        }
+    }
+
+    /**
+     * An upload spooled to disk, presented to {@link FileService} like the original part
+     */
+    private static class SpooledFile implements MultipartFile {
+        private final Path path;
+        private final String originalFilename;
+        private final String contentType;
+        private final long size;
+
+        SpooledFile(Path path, String originalFilename, String contentType, long size) {
+            this.path = path;
+            this.originalFilename = originalFilename;
+            this.contentType = contentType;
+            this.size = size;
+        }
+
+        @Override
+        public String getName() {
+            return "file";
+        }
+
+        @Override
+        public String getOriginalFilename() {
+            return originalFilename;
+        }
+
+        @Override
+        public String getContentType() {
+            return contentType;
+        }
+
+        @Override
+        public boolean isEmpty() {
+            return size == 0;
+        }
+
+        @Override
+        public long getSize() {
+            return size;
+        }
+
+        @Override
+        public byte[] getBytes() throws IOException {
+            return Files.readAllBytes(path);
+        }
+
+        @Override
+        public InputStream getInputStream() throws IOException {
+            return Files.newInputStream(path);
+        }
+
+        @Override
+        public void transferTo(File dest) throws IOException {
+            Files.copy(path, dest.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+}
@@ -0,0 +1,37 @@
+package com.filesystem.secure.service;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Paces background work on files to a byte and a file rate budget, so that neither is
+ * exceeded on average; each file is charged the larger of its byte and its file share.
+ * Time left unused carries over for at most one second, which bounds the burst after an
+ * idle stretch. A budget of zero is unlimited. Not thread-safe, one per worker.
+ */
+class IoThrottle {
+
+    private static final long MAX_CREDIT_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private final double nanosPerByte;
+    private final double nanosPerFile;
+    private long nextSlot = System.nanoTime();
+
+    IoThrottle(long maxBytesPerSecond, double maxFilesPerSecond) {
+        this.nanosPerByte = maxBytesPerSecond > 0 ? 1e9 / maxBytesPerSecond : 0;
+        this.nanosPerFile = maxFilesPerSecond > 0 ? 1e9 / maxFilesPerSecond : 0;
+    }
+
+    /**
+     * Charges one file and sleeps until the budgets allow the next
+     * @param bytes the bytes read and written for the file
+     */
+    void acquire(long bytes) throws InterruptedException {
+        long cost = (long) Math.max(bytes * nanosPerByte, nanosPerFile);
+        long now = System.nanoTime();
+        nextSlot = Math.max(nextSlot, now - MAX_CREDIT_NANOS) + cost;
+        long wait = nextSlot - now;
+        if (wait > 0) {
+            TimeUnit.NANOSECONDS.sleep(wait);
+        }
+    }
+}
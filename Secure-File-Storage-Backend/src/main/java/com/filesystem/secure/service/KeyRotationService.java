@@ -0,0 +1,121 @@
+package com.filesystem.secure.service;
+
+import com.filesystem.secure.keys.KeyEncryptionKeyStore;
+import com.filesystem.secure.model.FileDataKey;
+import com.filesystem.secure.model.UploadSession;
+import com.filesystem.secure.repository.SecureFileRepository;
+import com.filesystem.secure.repository.UploadSessionRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.domain.Limit;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Rotates the key-encryption key and rewraps the data keys of stored files and of
+ * uploads in progress with the new version. File content is never re-encrypted, only
+ * the wrapped keys of a batch of rows are updated per transaction, in ID order. An
+ * upload completed with a key its session held before being rewrapped leaves a file
+ * row for the next pass. A pass starts right after a
+ * rotation and again periodically, which also picks up rows that were written with
+ * an older version while a pass was running.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class KeyRotationService {
+
+    private static final int BATCH_SIZE = 500;
+    // Only replaces the key the row was read with, a concurrent change wins
+    private static final String REWRAP_SQL =
+            "update secure_files set wrapped_data_key = ?, key_version = ? where id = ? and wrapped_data_key = ?";
+    private static final String REWRAP_SESSION_SQL =
+            "update upload_sessions set wrapped_data_key = ?, key_version = ? where id = ? and wrapped_data_key = ?";
+
+    private final SecureFileRepository fileRepository;
+    private final UploadSessionRepository sessionRepository;
+    private final DataKeyService dataKeyService;
+    private final KeyEncryptionKeyStore keyStore;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+
+    private final AtomicBoolean rewrapping = new AtomicBoolean();
+
+    /**
+     * Creates a new key-encryption key version and starts rewrapping in the background
+     * @return the new current version
+     */
+    public int rotate() throws IOException {
+        int version = keyStore.rotate();
+        log.info("Rotated key-encryption key to version {}", version);
+        Thread.ofPlatform().name("key-rewrap").daemon().start(this::rewrapDataKeys);
+        return version;
+    }
+
+    /**
+     * @return the number of files and upload sessions whose data key is not wrapped with the current version yet
+     */
+    public long countPending() {
+        int version = dataKeyService.getCurrentVersion();
+        return fileRepository.countDataKeysNotWrappedWith(version) + sessionRepository.countNotWrappedWith(version);
+    }
+
+    /**
+     * Rewraps every data key of a file or upload session not wrapped with the current version,
+     * unless a pass is running already
+     * @return the number of rewrapped data keys
+     */
+    @Scheduled(fixedDelayString = "${keys.rewrap-interval:PT1H}", initialDelayString = "${keys.rewrap-interval:PT1H}")
+    public int rewrapDataKeys() {
+        if (!rewrapping.compareAndSet(false, true)) {
+            return 0;
+        }
+        int rewrapped = 0;
+        try {
+            int version = dataKeyService.getCurrentVersion();
+            Long afterId = 0L;
+            List<FileDataKey> keys;
+            while (!(keys = fileRepository.findDataKeysNotWrappedWith(version, afterId, Limit.of(BATCH_SIZE))).isEmpty()) {
+                List<Object[]> updates = new ArrayList<>(keys.size());
+                for (FileDataKey key : keys) {
+                    DataKeyService.DataKey rewrappedKey = dataKeyService.rewrap(key.getWrappedDataKey(), key.getKeyVersion());
+                    updates.add(new Object[] {
+                            rewrappedKey.getWrappedKey(), rewrappedKey.getKeyVersion(), key.getId(), key.getWrappedDataKey()
+                    });
+                }
+                transactionTemplate.executeWithoutResult(status -> jdbcTemplate.batchUpdate(REWRAP_SQL, updates));
+                rewrapped += keys.size();
+                afterId = keys.get(keys.size() - 1).getId();
+            }
+            String afterSessionId = "";
+            List<UploadSession> sessions;
+            while (!(sessions = sessionRepository.findNotWrappedWith(version, afterSessionId, Limit.of(BATCH_SIZE))).isEmpty()) {
+                List<Object[]> updates = new ArrayList<>(sessions.size());
+                for (UploadSession session : sessions) {
+                    DataKeyService.DataKey rewrappedKey = dataKeyService.rewrap(session.getWrappedDataKey(), session.getKeyVersion());
+                    updates.add(new Object[] {
+                            rewrappedKey.getWrappedKey(), rewrappedKey.getKeyVersion(), session.getId(), session.getWrappedDataKey()
+                    });
+                }
+                transactionTemplate.executeWithoutResult(status -> jdbcTemplate.batchUpdate(REWRAP_SESSION_SQL, updates));
+                rewrapped += sessions.size();
+                afterSessionId = sessions.get(sessions.size() - 1).getId();
+            }
+            if (rewrapped > 0) {
+                log.info("Rewrapped {} data keys with key-encryption key version {}", rewrapped, version);
+            }
+        } catch (Exception e) {
+            log.error("Data key rewrapping stopped after {} keys", rewrapped, e);
+        } finally {
+            rewrapping.set(false);
+        }
+        return rewrapped;
+    }
+}
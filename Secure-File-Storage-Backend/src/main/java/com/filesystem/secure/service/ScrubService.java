@@ -0,0 +1,347 @@
+package com.filesystem.secure.service;
+
+import com.filesystem.secure.model.MigrationCheckpoint;
+import com.filesystem.secure.model.SecureFile;
+import com.filesystem.secure.repository.MigrationCheckpointRepository;
+import com.filesystem.secure.repository.SecureFileRepository;
+import com.filesystem.secure.storage.BlobStore;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Limit;
+import org.springframework.stereotype.Service;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Finds bit-rot and lost blobs before a download does. A background thread walks the
+ * blob-backed files in ID order, reads each blob and compares its SHA-256 with the
+ * {@code cipherDigest} stored at upload; files stored before digests were recorded are
+ * checked against the digest the blob store reports and then get it recorded. Reads
+ * are paced to an I/O budget and, optionally, confined to {@code scrub.active-hours},
+ * and progress is checkpointed, so a pass is spread over as many windows as it needs
+ * and survives restarts. A new pass starts {@code scrub.pass-interval} after the last
+ * one started. Problems are logged, counted in {@code scrub.files} and listed at
+ * {@code /actuator/scrub}.
+ */
+@Slf4j
+@Service
+@ConditionalOnProperty(name = "scrub.enabled", havingValue = "true", matchIfMissing = true)
+public class ScrubService {
+
+    static final String CHECKPOINT_NAME = "scrub";
+
+    private static final String DIGEST_ALGORITHM = "SHA-256";
+    private static final int MAX_REPORTED_FINDINGS = 1000;
+    private static final Duration IDLE_POLL = Duration.ofMinutes(1);
+    private static final int READ_BUFFER_SIZE = 64 * 1024;
+
+    private final SecureFileRepository fileRepository;
+    private final MigrationCheckpointRepository checkpointRepository;
+    private final BlobStore blobStore;
+    private final MeterRegistry registry;
+    private final int batchSize;
+    private final long maxBytesPerSecond;
+    private final double maxFilesPerSecond;
+    private final Duration passInterval;
+    private final LocalTime activeFrom;
+    private final LocalTime activeUntil;
+
+    private final List<Finding> findings = new CopyOnWriteArrayList<>();
+    private volatile List<Finding> previousFindings = List.of();
+    private volatile String state = "starting";
+    private volatile boolean newPassRequested;
+    private volatile Thread worker;
+
+    public ScrubService(SecureFileRepository fileRepository,
+                        MigrationCheckpointRepository checkpointRepository,
+                        BlobStore blobStore,
+                        MeterRegistry registry,
+                        @Value("${scrub.batch-size:100}") int batchSize,
+                        @Value("${scrub.max-bytes-per-second:10MB}") DataSize maxBytesPerSecond,
+                        @Value("${scrub.max-files-per-second:20}") double maxFilesPerSecond,
+                        @Value("${scrub.pass-interval:P7D}") Duration passInterval,
+                        @Value("${scrub.active-hours:}") String activeHours) {
+        this.fileRepository = fileRepository;
+        this.checkpointRepository = checkpointRepository;
+        this.blobStore = blobStore;
+        this.registry = registry;
+        this.batchSize = batchSize;
+        this.maxBytesPerSecond = maxBytesPerSecond.toBytes();
+        this.maxFilesPerSecond = maxFilesPerSecond;
+        this.passInterval = passInterval;
+        if (activeHours.isBlank()) {
+            this.activeFrom = null;
+            this.activeUntil = null;
+        } else {
+            // For example 01:00-06:00, or 22:00-05:00 across midnight
+            String[] bounds = activeHours.split("-");
+            if (bounds.length != 2) {
+                throw new IllegalArgumentException("scrub.active-hours must look like 01:00-06:00: " + activeHours);
+            }
+            this.activeFrom = LocalTime.parse(bounds[0].trim());
+            this.activeUntil = LocalTime.parse(bounds[1].trim());
+        }
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        worker = Thread.ofPlatform().name("scrub").daemon().start(this::run);
+    }
+
+    /**
+     * Abandons the current pass, if any, and starts a new one right away
+     */
+    public void requestNewPass() {
+        newPassRequested = true;
+        Thread thread = worker;
+        if (thread != null) {
+            LockSupport.unpark(thread);
+        }
+    }
+
+    /**
+     * @return the progress of the current or last pass and the problems found
+     */
+    public Map<String, Object> getStatus() {
+        Map<String, Object> status = new LinkedHashMap<>();
+        status.put("state", state);
+        status.put("blobBackedFiles", fileRepository.countBlobBackedFiles());
+        checkpointRepository.findById(CHECKPOINT_NAME).ifPresent(checkpoint -> {
+            status.put("lastFileId", checkpoint.getLastFileId());
+            status.put("scrubbedFiles", checkpoint.getProcessedFiles());
+            status.put("problemFiles", checkpoint.getFailedFiles());
+            status.put("scrubbedBytes", checkpoint.getProcessedBytes());
+            status.put("startedAt", checkpoint.getStartedAt());
+            status.put("updatedAt", checkpoint.getUpdatedAt());
+            status.put("completedAt", checkpoint.getCompletedAt());
+        });
+        status.put("findings", List.copyOf(findings));
+        status.put("previousPassFindings", previousFindings);
+        return status;
+    }
+
+    private void run() {
+        IoThrottle throttle = new IoThrottle(maxBytesPerSecond, maxFilesPerSecond);
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                if (!isActive(LocalTime.now())) {
+                    state = "outside_active_hours";
+                    idle();
+                    continue;
+                }
+                MigrationCheckpoint checkpoint = currentPass();
+                if (checkpoint == null) {
+                    state = "idle";
+                    idle();
+                    continue;
+                }
+                state = "running";
+                List<Long> ids = fileRepository.findBlobBackedFileIds(checkpoint.getLastFileId(), Limit.of(batchSize));
+                if (ids.isEmpty()) {
+                    completePass(checkpoint);
+                    continue;
+                }
+                for (Long id : ids) {
+                    throttle.acquire(scrubFile(id, checkpoint));
+                }
+                checkpoint.setLastFileId(ids.get(ids.size() - 1));
+                checkpoint.setUpdatedAt(LocalDateTime.now());
+                checkpointRepository.save(checkpoint);
+            } catch (InterruptedException e) {
+                return;
+            } catch (Exception e) {
+                log.warn("Scrub batch failed, retrying later", e);
+                state = "retrying";
+                idle();
+            }
+        }
+    }
+
+    /**
+     * @return the pass to continue, or null if the next pass is not due yet
+     */
+    private MigrationCheckpoint currentPass() {
+        MigrationCheckpoint checkpoint = checkpointRepository.findById(CHECKPOINT_NAME).orElse(null);
+        LocalDateTime now = LocalDateTime.now();
+        if (!newPassRequested && checkpoint != null) {
+            if (checkpoint.getCompletedAt() == null) {
+                return checkpoint;
+            }
+            if (checkpoint.getStartedAt().plus(passInterval).isAfter(now)) {
+                return null;
+            }
+        }
+        newPassRequested = false;
+        findings.clear();
+        return checkpointRepository.save(MigrationCheckpoint.builder()
+                .name(CHECKPOINT_NAME)
+                .lastFileId(0L)
+                .processedFiles(0L)
+                .failedFiles(0L)
+                .processedBytes(0L)
+                .startedAt(now)
+                .updatedAt(now)
+                .build());
+    }
+
+    private void completePass(MigrationCheckpoint checkpoint) {
+        checkpoint.setCompletedAt(LocalDateTime.now());
+        checkpoint.setUpdatedAt(checkpoint.getCompletedAt());
+        checkpointRepository.save(checkpoint);
+        previousFindings = List.copyOf(findings);
+        findings.clear();
+        log.info("Scrub pass completed: {} files, {} bytes, {} with problems",
+                checkpoint.getProcessedFiles(), checkpoint.getProcessedBytes(), checkpoint.getFailedFiles());
+    }
+
+    /**
+     * @return the bytes read
+     */
+    private long scrubFile(Long id, MigrationCheckpoint checkpoint) throws IOException {
+        SecureFile secureFile = fileRepository.findById(id).orElse(null);
+        if (secureFile == null || secureFile.getBlobId() == null) {
+            return 0;
+        }
+        String blobId = secureFile.getBlobId();
+        long bytes = 0;
+        Problem problem = null;
+        if (!blobStore.exists(blobId)) {
+            problem = Problem.MISSING;
+        } else {
+            MessageDigest digest = newDigest();
+            try (InputStream in = Channels.newInputStream(blobStore.open(blobId))) {
+                byte[] buffer = new byte[READ_BUFFER_SIZE];
+                int read;
+                while ((read = in.read(buffer)) >= 0) {
+                    digest.update(buffer, 0, read);
+                    bytes += read;
+                }
+            } catch (IOException e) {
+                log.warn("Scrub failed to read blob {}", blobId, e);
+                problem = Problem.UNREADABLE;
+            }
+            if (problem == null) {
+                String actual = HexFormat.of().formatHex(digest.digest());
+                String expected = secureFile.getCipherDigest();
+                if (expected == null) {
+                    expected = blobStore.contentDigest(blobId);
+                    if (actual.equals(expected)) {
+                        fileRepository.recordCipherDigest(blobId, actual);
+                    }
+                }
+                if (!actual.equals(expected)) {
+                    problem = Problem.CORRUPT;
+                }
+            }
+        }
+
+        checkpoint.setProcessedFiles(checkpoint.getProcessedFiles() + 1);
+        checkpoint.setProcessedBytes(checkpoint.getProcessedBytes() + bytes);
+        Counter.builder("scrub.bytes")
+                .description("Ciphertext bytes read by the scrub")
+                .baseUnit("bytes")
+                .register(registry)
+                .increment(bytes);
+        // Deleted or re-encrypted since it was loaded, rather than damaged
+        if (problem != null && fileRepository.countByBlobId(blobId) == 0) {
+            problem = null;
+        }
+        Counter.builder("scrub.files")
+                .description("Files verified by the scrub, by outcome")
+                .tag("result", problem == null ? "ok" : problem.name().toLowerCase())
+                .register(registry)
+                .increment();
+        if (problem != null) {
+            log.error("Scrub found blob {} of file ID: {} {}", blobId, id, problem.name().toLowerCase());
+            checkpoint.setFailedFiles(checkpoint.getFailedFiles() + 1);
+            if (findings.size() < MAX_REPORTED_FINDINGS) {
+                findings.add(new Finding(id, secureFile.getUserId(), blobId, problem, LocalDateTime.now()));
+            }
+        }
+        return bytes;
+    }
+
+    private boolean isActive(LocalTime time) {
+        if (activeFrom == null) {
+            return true;
+        }
+        if (!activeFrom.isAfter(activeUntil)) {
+            return !time.isBefore(activeFrom) && time.isBefore(activeUntil);
+        }
+        return !time.isBefore(activeFrom) || time.isBefore(activeUntil);
+    }
+
+    /**
+     * Waits a while, or until a new pass is requested
+     */
+    private void idle() {
+        LockSupport.parkNanos(IDLE_POLL.toNanos());
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance(DIGEST_ALGORITHM);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public enum Problem {
+        MISSING, UNREADABLE, CORRUPT
+    }
+
+    public static class Finding {
+        private final Long fileId;
+        private final String userId;
+        private final String blobId;
+        private final Problem problem;
+        private final LocalDateTime detectedAt;
+
+        public Finding(Long fileId, String userId, String blobId, Problem problem, LocalDateTime detectedAt) {
+            this.fileId = fileId;
+            this.userId = userId;
+            this.blobId = blobId;
+            this.problem = problem;
+            this.detectedAt = detectedAt;
+        }
+
+        public Long getFileId() {
+            return fileId;
+        }
+
+        public String getUserId() {
+            return userId;
+        }
+
+        public String getBlobId() {
+            return blobId;
+        }
+
+        public Problem getProblem() {
+            return problem;
+        }
+
+        public LocalDateTime getDetectedAt() {
+            return detectedAt;
+        }
+    }
+}
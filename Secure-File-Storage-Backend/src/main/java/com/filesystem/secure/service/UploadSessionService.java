@@ -0,0 +1,386 @@
+package com.filesystem.secure.service;
+
+import com.filesystem.secure.model.SecureFile;
+import com.filesystem.secure.model.UploadChunk;
+import com.filesystem.secure.model.UploadSession;
+import com.filesystem.secure.repository.SecureFileRepository;
+import com.filesystem.secure.repository.UploadChunkRepository;
+import com.filesystem.secure.repository.UploadSessionRepository;
+import com.filesystem.secure.storage.BlobStore;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.Limit;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.util.unit.DataSize;
+
+import javax.crypto.SecretKey;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.time.Duration;
+import java.nio.channels.SeekableByteChannel;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.UUID;
+
+/**
+ * Resumable uploads in three steps: initiate a session, send numbered chunks in any
+ * order and in parallel, then complete. The chunk size is a multiple of the encryption
+ * segment size, so each chunk is encrypted on arrival at its own segment offset and
+ * written to its own region of a staged blob. Every attempt to send a chunk encrypts
+ * under a fresh base IV recorded on its {@link UploadChunk} row, so failed chunks can be
+ * sent again without ever reusing a nonce. Completing the session re-encrypts the staged
+ * chunks under one base IV into the final blob and swaps the session for a
+ * {@link SecureFile} in one transaction. Sessions idle for longer than the TTL are
+ * collected in the background.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class UploadSessionService {
+
+    private static final int CLEANUP_BATCH_SIZE = 100;
+
+    private final UploadSessionRepository sessionRepository;
+    private final UploadChunkRepository chunkRepository;
+    private final SecureFileRepository fileRepository;
+    private final EncryptionService encryptionService;
+    private final DataKeyService dataKeyService;
+    private final BlobStore blobStore;
+    private final FileMetrics fileMetrics;
+    private final UsageLimiter usageLimiter;
+    private final FileListingCache listingCache;
+    private final TransactionTemplate transactionTemplate;
+
+    @Value("${uploads.chunk-size:8MB}")
+    private DataSize chunkSize;
+
+    @Value("${uploads.session-ttl:PT24H}")
+    private Duration sessionTtl;
+
+    @Value("${uploads.chunk-claim-timeout:PT10M}")
+    private Duration chunkClaimTimeout;
+
+    /**
+     * Starts a chunked upload
+     * @param userId the Firebase user ID
+     * @param fileName the original file name
+     * @param contentType the content type, defaulting to {@code application/octet-stream}
+     * @param totalSize the plaintext size of the whole file in bytes
+     * @return the new session, which tells the client the chunk size and count
+     * @throws IllegalArgumentException if the file name or size is invalid
+     * @throws UsageLimiter.QuotaExceededException if the file would not fit the user's quota
+     */
+    public UploadSession initiate(String userId, String fileName, String contentType, long totalSize) {
+        if (fileName == null || fileName.isBlank()) {
+            throw new IllegalArgumentException("File name cannot be empty");
+        }
+        if (totalSize < 0) {
+            throw new IllegalArgumentException("File size cannot be negative");
+        }
+        usageLimiter.checkStorage(userId, totalSize);
+
+        int segmentSize = encryptionService.getSegmentSize();
+        long segmentsPerChunk = Math.max(1, chunkSize.toBytes() / segmentSize);
+        LocalDateTime now = LocalDateTime.now();
+        DataKeyService.DataKey dataKey = dataKeyService.generate();
+        UploadSession session = UploadSession.builder()
+                .id(UUID.randomUUID().toString())
+                .userId(userId)
+                .originalFileName(fileName)
+                .contentType(contentType == null || contentType.isBlank() ? "application/octet-stream" : contentType)
+                .totalSize(totalSize)
+                .chunkSize(Math.toIntExact(segmentsPerChunk * segmentSize))
+                .segmentSize(segmentSize)
+                .wrappedDataKey(dataKey.getWrappedKey())
+                .keyVersion(dataKey.getKeyVersion())
+                .createdAt(now)
+                .updatedAt(now)
+                .build();
+        if ((long) session.getChunkCount() * (session.getChunkSize() / segmentSize) > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("File too large: " + totalSize + " bytes");
+        }
+        return sessionRepository.save(session);
+    }
+
+    /**
+     * Encrypts one chunk into its region of the staged blob, under a base IV drawn for
+     * this attempt alone. Sending a chunk again replaces the previous attempt, whether it
+     * was staged or failed, but not one still encrypting: an attempt holds the chunk until
+     * it ends or for at most the claim timeout, after which a new attempt may take over.
+     * @param uploadId the session ID
+     * @param userId the Firebase user ID
+     * @param chunkIndex the zero-based chunk number
+     * @param content the plaintext of the chunk, exactly {@link UploadSession#getChunkLength(int)} bytes
+     * @throws NoSuchElementException if the session does not exist
+     * @throws SecurityException if the session belongs to another user
+     * @throws IllegalArgumentException if the chunk index or length is invalid
+     * @throws IllegalStateException if the chunk is being sent by another attempt
+     * @throws UsageLimiter.RateLimitExceededException if the user has to wait for upload bandwidth first
+     */
+    public void uploadChunk(String uploadId, String userId, int chunkIndex, InputStream content) throws Exception {
+        UploadSession session = getSession(uploadId, userId);
+        if (chunkIndex < 0 || chunkIndex >= session.getChunkCount()) {
+            throw new IllegalArgumentException("Chunk index " + chunkIndex + " outside of 0-" + (session.getChunkCount() - 1));
+        }
+
+        long expectedLength = session.getChunkLength(chunkIndex);
+        usageLimiter.acquireUpload(userId, expectedLength);
+        int segmentsPerChunk = session.getChunkSize() / session.getSegmentSize();
+        int firstSegmentIndex = chunkIndex * segmentsPerChunk;
+        long offset = EncryptionService.segmentOffset(firstSegmentIndex, session.getSegmentSize());
+        String iv = encryptionService.generateIv();
+        claim(uploadId, chunkIndex, iv);
+
+        try (FileMetrics.Transfer transfer = fileMetrics.startTransfer(FileMetrics.UPLOAD)) {
+            EncryptionService.StreamEncryptionResult result;
+            try (OutputStream out = blobStore.openStaged(uploadId, offset)) {
+                // Never write past this chunk's region, whatever the client sends
+                result = encryptionService.encryptSegments(
+                        dataKeyService.keyFor(session),
+                        new BoundedInputStream(content, expectedLength),
+                        out,
+                        iv,
+                        session.getSegmentSize(),
+                        firstSegmentIndex,
+                        chunkIndex == session.getChunkCount() - 1
+                );
+            }
+            if (result.getPlainLength() != expectedLength || content.read() >= 0) {
+                throw new IllegalArgumentException("Chunk " + chunkIndex + " must hold exactly " + expectedLength + " bytes");
+            }
+            fileMetrics.recordCrypto(FileMetrics.ENCRYPT, result.getPlainLength(), result.getCipherNanos());
+
+            if (chunkRepository.markStaged(uploadId, chunkIndex, iv, LocalDateTime.now()) == 0) {
+                throw new IllegalStateException("Chunk " + chunkIndex + " of upload " + uploadId + " was taken over by another attempt");
+            }
+            sessionRepository.touch(uploadId, LocalDateTime.now());
+            transfer.completed(result.getPlainLength());
+        } catch (Exception e) {
+            chunkRepository.release(uploadId, chunkIndex, iv);
+            throw e;
+        }
+    }
+
+    private void claim(String uploadId, int chunkIndex, String iv) {
+        LocalDateTime now = LocalDateTime.now();
+        try {
+            chunkRepository.claim(uploadId, chunkIndex, iv, now);
+        } catch (DataIntegrityViolationException e) {
+            if (chunkRepository.reclaim(uploadId, chunkIndex, iv, now, now.minus(chunkClaimTimeout)) == 0) {
+                throw new IllegalStateException("Chunk " + chunkIndex + " of upload " + uploadId + " is being sent", e);
+            }
+        }
+    }
+
+    /**
+     * @param session the upload session
+     * @return the indexes of the chunks received so far, in ascending order
+     */
+    public List<Integer> getReceivedChunks(UploadSession session) {
+        return chunkRepository.findChunkIndexes(session.getId());
+    }
+
+    /**
+     * Re-encrypts the staged chunks into the final blob and replaces the session by the
+     * file record. The staged blob is only read, so a failed completion can be retried,
+     * also after re-sending chunks.
+     * @param uploadId the session ID
+     * @param userId the Firebase user ID
+     * @return the stored secure file metadata
+     * @throws IllegalStateException if chunks are still missing or being sent
+     * @throws UsageLimiter.QuotaExceededException if the file no longer fits the user's quota
+     */
+    public SecureFile complete(String uploadId, String userId) throws Exception {
+        UploadSession session = getSession(uploadId, userId);
+        List<UploadChunk> chunks = chunkRepository.findStaged(uploadId);
+        if (chunks.size() < session.getChunkCount()) {
+            throw new IllegalStateException(chunks.size() + " of " + session.getChunkCount() + " chunks received");
+        }
+        try (UsageLimiter.Reservation reservation = usageLimiter.reserveStorage(userId, session.getTotalSize())) {
+            SecureFile saved = commitSession(session, chunks);
+            reservation.commit();
+            listingCache.invalidate(userId);
+            return saved;
+        }
+    }
+
+    private SecureFile commitSession(UploadSession session, List<UploadChunk> chunks) throws Exception {
+        String uploadId = session.getId();
+        long expectedLength = EncryptionService.encryptedLength(session.getTotalSize(), session.getSegmentSize());
+        try (SeekableByteChannel staged = blobStore.openStagedForReading(uploadId)) {
+            if (staged.size() != expectedLength) {
+                throw new IllegalStateException("Staged upload " + uploadId + " has the wrong length");
+            }
+        }
+
+        // A fresh IV for every completion, since a retry may see re-sent chunks
+        String iv = encryptionService.generateIv();
+        String blobId = assemble(session, chunks, iv);
+
+        String downloadKey = FileService.generateDownloadKey();
+        SecureFile secureFile = SecureFile.builder()
+                .fileName(UUID.randomUUID().toString())
+                .originalFileName(session.getOriginalFileName())
+                .contentType(session.getContentType())
+                .fileSize(session.getTotalSize())
+                .blobId(blobId)
+                .cipherDigest(blobStore.contentDigest(blobId))
+                .encryptionIv(iv)
+                .segmentSize(session.getSegmentSize())
+                .wrappedDataKey(session.getWrappedDataKey())
+                .keyVersion(session.getKeyVersion())
+                .uploadDate(LocalDateTime.now())
+                .downloadKey(downloadKey)
+                .downloadKeyHash(encryptionService.hashDownloadKey(downloadKey))
+                .userId(session.getUserId())
+                .build();
+        SecureFile saved;
+        try {
+            saved = transactionTemplate.execute(status -> {
+                chunkRepository.deleteByUploadId(uploadId);
+                sessionRepository.deleteById(uploadId);
+                return fileRepository.save(secureFile);
+            });
+        } catch (RuntimeException e) {
+            blobStore.delete(blobId);
+            throw e;
+        }
+        try {
+            blobStore.deleteStaged(uploadId);
+        } catch (IOException e) {
+            log.warn("Failed to delete staged data of completed upload {}", uploadId, e);
+        }
+        return saved;
+    }
+
+    /**
+     * Decrypts each staged chunk with the IV of the attempt that sent it and encrypts it
+     * again at the same segment offset under the file's base IV. The GCM tags also catch a
+     * region overwritten by an attempt that was taken over while still writing.
+     * @return the identifier of the committed blob
+     */
+    private String assemble(UploadSession session, List<UploadChunk> chunks, String iv) throws Exception {
+        SecretKey key = dataKeyService.keyFor(session);
+        int segmentSize = session.getSegmentSize();
+        int segmentsPerChunk = session.getChunkSize() / segmentSize;
+        try (BlobStore.BlobWriter writer = blobStore.create()) {
+            for (UploadChunk chunk : chunks) {
+                int firstSegmentIndex = chunk.getChunkIndex() * segmentsPerChunk;
+                EncryptionService.StreamEncryptionResult result;
+                try (InputStream plain = encryptionService.decryptingStream(key, blobStore.openStagedForReading(session.getId()),
+                        chunk.getEncryptionIv(), segmentSize, firstSegmentIndex, segmentsPerChunk)) {
+                    result = encryptionService.encryptSegments(key, plain, writer.getOutputStream(), iv, segmentSize,
+                            firstSegmentIndex, chunk.getChunkIndex() == session.getChunkCount() - 1);
+                }
+                fileMetrics.recordCrypto(FileMetrics.ENCRYPT, result.getPlainLength(), result.getCipherNanos());
+            }
+            return writer.commit();
+        }
+    }
+
+    /**
+     * Cancels an upload and discards everything staged for it
+     * @param uploadId the session ID
+     * @param userId the Firebase user ID
+     */
+    public void abort(String uploadId, String userId) throws IOException {
+        getSession(uploadId, userId);
+        discard(uploadId);
+    }
+
+    /**
+     * Discards sessions without chunk activity for longer than the session TTL
+     */
+    @Scheduled(fixedDelayString = "${uploads.cleanup-interval:PT15M}", initialDelayString = "${uploads.cleanup-interval:PT15M}")
+    public void collectAbandonedSessions() {
+        LocalDateTime cutoff = LocalDateTime.now().minus(sessionTtl);
+        int collected = 0;
+        List<String> ids;
+        while (!(ids = sessionRepository.findIdsUpdatedBefore(cutoff, Limit.of(CLEANUP_BATCH_SIZE))).isEmpty()) {
+            for (String id : ids) {
+                try {
+                    discard(id);
+                    collected++;
+                } catch (Exception e) {
+                    log.warn("Failed to discard abandoned upload {}", id, e);
+                    return;
+                }
+            }
+        }
+        if (collected > 0) {
+            log.info("Discarded {} abandoned uploads", collected);
+        }
+    }
+
+    private void discard(String uploadId) throws IOException {
+        blobStore.deleteStaged(uploadId);
+        transactionTemplate.executeWithoutResult(status -> {
+            chunkRepository.deleteByUploadId(uploadId);
+            sessionRepository.deleteById(uploadId);
+        });
+    }
+
+    /**
+     * @param uploadId the session ID
+     * @param userId the Firebase user ID
+     * @return the upload session
+     * @throws NoSuchElementException if the session does not exist
+     * @throws SecurityException if the session belongs to another user
+     */
+    public UploadSession getSession(String uploadId, String userId) {
+        UploadSession session = sessionRepository.findById(uploadId)
+                .orElseThrow(() -> new NoSuchElementException("Upload not found: " + uploadId));
+        if (!session.getUserId().equals(userId)) {
+            throw new SecurityException("User not authorized to access this upload");
+        }
+        return session;
+    }
+
+    /**
+     * Ends after a fixed number of bytes, leaving the rest of the underlying stream unread
+     */
+    private static class BoundedInputStream extends FilterInputStream {
+        private long remaining;
+
+        BoundedInputStream(InputStream in, long limit) {
+            super(in);
+            this.remaining = limit;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (remaining <= 0) {
+                return -1;
+            }
+            int b = in.read();
+            if (b >= 0) {
+                remaining--;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (remaining <= 0) {
+                return -1;
+            }
+            int count = in.read(b, off, (int) Math.min(len, remaining));
+            if (count > 0) {
+                remaining -= count;
+            }
+            return count;
+        }
+
+        @Override
+        public void close() {
+            // The caller owns the underlying stream
+        }
+    }
+}
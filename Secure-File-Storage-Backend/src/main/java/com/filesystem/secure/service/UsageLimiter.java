@@ -0,0 +1,290 @@
+package com.filesystem.secure.service;
+
+import com.filesystem.secure.model.UserStorage;
+import com.filesystem.secure.repository.SecureFileRepository;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Per-user storage quotas and rate limits, checked before a request reads or encrypts
+ * any content. Every limit is off when set to zero.
+ * <p>
+ * Rate limits are token buckets for upload requests, upload bytes and download bytes,
+ * kept as a single theoretical arrival time per bucket and advanced with one CAS. A
+ * request is admitted while its user's bucket holds no more than {@code limits.burst}
+ * of backlog and is then charged in full, so a large file is never refused for its
+ * size alone but delays the user's next requests accordingly.
+ * <p>
+ * Stored bytes are counted per user in striped {@link LongAdder}s, loaded from
+ * {@code SUM(fileSize)} on first use and reconciled against it periodically, so
+ * writes that bypass this class only cause drift until the next reconciliation. The
+ * counts of users idle for {@value #IDLE_USAGE_HOURS} hours are dropped and summed
+ * again on their next request, so the map stays bounded by the active users; an upload
+ * outlasting that only has its committed bytes missed until the next reconciliation.
+ * Uploads in flight hold a {@link Reservation} that counts against the quota until it
+ * is committed or released.
+ */
+@Slf4j
+@Service
+public class UsageLimiter {
+
+    private static final int RECONCILE_BATCH_SIZE = 500;
+    private static final Duration IDLE_BUCKET_TTL = Duration.ofHours(1);
+    private static final int IDLE_USAGE_HOURS = 1;
+
+    private final SecureFileRepository fileRepository;
+    private final long storageQuota;
+    private final double nanosPerUploadRequest;
+    private final double nanosPerUploadByte;
+    private final double nanosPerDownloadByte;
+    private final long burstNanos;
+    private final Cache<String, Usage> usage;
+    private final Cache<String, UserBuckets> buckets;
+
+    public UsageLimiter(SecureFileRepository fileRepository,
+                        @Value("${limits.storage-quota:0}") DataSize storageQuota,
+                        @Value("${limits.upload-requests-per-second:0}") double uploadRequestsPerSecond,
+                        @Value("${limits.upload-bytes-per-second:0}") DataSize uploadBytesPerSecond,
+                        @Value("${limits.download-bytes-per-second:0}") DataSize downloadBytesPerSecond,
+                        @Value("${limits.burst:PT2S}") Duration burst) {
+        this.fileRepository = fileRepository;
+        this.storageQuota = storageQuota.toBytes();
+        this.nanosPerUploadRequest = nanosPerUnit(uploadRequestsPerSecond);
+        this.nanosPerUploadByte = nanosPerUnit(uploadBytesPerSecond.toBytes());
+        this.nanosPerDownloadByte = nanosPerUnit(downloadBytesPerSecond.toBytes());
+        this.burstNanos = burst.toNanos();
+        // A bucket idle for longer than its backlog is full again, so forgetting it changes nothing
+        this.buckets = Caffeine.newBuilder()
+                .expireAfterAccess(IDLE_BUCKET_TTL)
+                .build();
+        this.usage = Caffeine.newBuilder()
+                .expireAfterAccess(Duration.ofHours(IDLE_USAGE_HOURS))
+                .build();
+    }
+
+    /**
+     * Admits an upload request and charges its bytes to the user's upload bandwidth
+     * @param userId the Firebase user ID
+     * @param bytes the plaintext bytes about to be uploaded
+     * @throws RateLimitExceededException if the user has to wait first
+     */
+    public void acquireUpload(String userId, long bytes) {
+        if (nanosPerUploadRequest == 0 && nanosPerUploadByte == 0) {
+            return;
+        }
+        UserBuckets userBuckets = bucketsOf(userId);
+        acquire(userBuckets.uploadRequests, nanosPerUploadRequest, 1);
+        acquire(userBuckets.uploadBytes, nanosPerUploadByte, bytes);
+    }
+
+    /**
+     * Charges a download's bytes to the user's download bandwidth
+     * @param userId the Firebase user ID
+     * @param bytes the plaintext bytes about to be sent
+     * @throws RateLimitExceededException if the user has to wait first
+     */
+    public void acquireDownload(String userId, long bytes) {
+        if (nanosPerDownloadByte == 0) {
+            return;
+        }
+        acquire(bucketsOf(userId).downloadBytes, nanosPerDownloadByte, bytes);
+    }
+
+    /**
+     * Checks that the user has room for more content without reserving it, to refuse
+     * uploads that are stored later as early as possible
+     * @param userId the Firebase user ID
+     * @param bytes the plaintext bytes to be stored
+     * @throws QuotaExceededException if the bytes would exceed the user's quota
+     */
+    public void checkStorage(String userId, long bytes) {
+        if (storageQuota > 0 && usageOf(userId).total() + bytes > storageQuota) {
+            throw new QuotaExceededException(storageQuota);
+        }
+    }
+
+    /**
+     * Reserves room for an upload. Closing the reservation without committing it
+     * gives the room back.
+     * @param userId the Firebase user ID
+     * @param bytes the plaintext bytes to be stored
+     * @return the reservation
+     * @throws QuotaExceededException if the bytes would exceed the user's quota
+     */
+    public Reservation reserveStorage(String userId, long bytes) {
+        if (storageQuota == 0) {
+            return new Reservation(null, 0);
+        }
+        Usage userUsage = usageOf(userId);
+        userUsage.reserved.add(bytes);
+        if (userUsage.total() > storageQuota) {
+            userUsage.reserved.add(-bytes);
+            throw new QuotaExceededException(storageQuota);
+        }
+        return new Reservation(userUsage, bytes);
+    }
+
+    /**
+     * Gives back the room of deleted content
+     * @param userId the Firebase user ID
+     * @param bytes the plaintext bytes deleted
+     */
+    public void recordDeleted(String userId, long bytes) {
+        Usage userUsage = usage.getIfPresent(userId);
+        if (userUsage != null) {
+            userUsage.stored.add(-bytes);
+        }
+    }
+
+    /**
+     * Corrects the stored byte counts of the users seen so far to what the database holds
+     */
+    @Scheduled(fixedDelayString = "${limits.reconcile-interval:PT10M}", initialDelayString = "${limits.reconcile-interval:PT10M}")
+    public void reconcile() {
+        List<String> userIds = new ArrayList<>(usage.asMap().keySet());
+        int corrected = 0;
+        for (int from = 0; from < userIds.size(); from += RECONCILE_BATCH_SIZE) {
+            List<String> batch = userIds.subList(from, Math.min(from + RECONCILE_BATCH_SIZE, userIds.size()));
+            Map<String, Long> storedBytes = new HashMap<>();
+            for (UserStorage storage : fileRepository.sumFileSizeByUserIds(batch)) {
+                storedBytes.put(storage.getUserId(), storage.getStoredBytes());
+            }
+            for (String userId : batch) {
+                // Quietly, so reconciling does not keep idle users from expiring
+                Usage userUsage = usage.policy().getIfPresentQuietly(userId);
+                if (userUsage == null) {
+                    continue;
+                }
+                long drift = storedBytes.getOrDefault(userId, 0L) - userUsage.stored.sum();
+                if (drift != 0) {
+                    userUsage.stored.add(drift);
+                    corrected++;
+                }
+            }
+        }
+        if (corrected > 0) {
+            log.info("Reconciled the stored bytes of {} users", corrected);
+        }
+    }
+
+    private Usage usageOf(String userId) {
+        Usage userUsage = usage.getIfPresent(userId);
+        if (userUsage != null) {
+            return userUsage;
+        }
+        // Summed outside the cache, so other users are not held up by the query
+        Usage loaded = new Usage();
+        loaded.stored.add(fileRepository.sumFileSizeByUserId(userId));
+        userUsage = usage.asMap().putIfAbsent(userId, loaded);
+        return userUsage != null ? userUsage : loaded;
+    }
+
+    private UserBuckets bucketsOf(String userId) {
+        return buckets.get(userId, id -> new UserBuckets());
+    }
+
+    private void acquire(AtomicLong bucket, double nanosPerUnit, long units) {
+        if (nanosPerUnit == 0) {
+            return;
+        }
+        while (true) {
+            long now = System.nanoTime();
+            long arrival = bucket.get();
+            long backlog = Math.max(0, arrival - now);
+            if (backlog > burstNanos) {
+                throw new RateLimitExceededException(backlog - burstNanos);
+            }
+            if (bucket.compareAndSet(arrival, now + backlog + (long) (units * nanosPerUnit))) {
+                return;
+            }
+        }
+    }
+
+    private static double nanosPerUnit(double unitsPerSecond) {
+        return unitsPerSecond > 0 ? 1e9 / unitsPerSecond : 0;
+    }
+
+    private static class Usage {
+        private final LongAdder stored = new LongAdder();
+        private final LongAdder reserved = new LongAdder();
+
+        long total() {
+            return stored.sum() + reserved.sum();
+        }
+    }
+
+    private static class UserBuckets {
+        private final AtomicLong uploadRequests = new AtomicLong(System.nanoTime());
+        private final AtomicLong uploadBytes = new AtomicLong(System.nanoTime());
+        private final AtomicLong downloadBytes = new AtomicLong(System.nanoTime());
+    }
+
+    /**
+     * Room held for an upload in flight
+     */
+    public static class Reservation implements AutoCloseable {
+        private final Usage usage;
+        private final long bytes;
+        private boolean done;
+
+        private Reservation(Usage usage, long bytes) {
+            this.usage = usage;
+            this.bytes = bytes;
+        }
+
+        /**
+         * Turns the reserved room into stored content, once the upload is persisted
+         */
+        public void commit() {
+            if (usage != null && !done) {
+                usage.reserved.add(-bytes);
+                usage.stored.add(bytes);
+            }
+            done = true;
+        }
+
+        @Override
+        public void close() {
+            if (usage != null && !done) {
+                usage.reserved.add(-bytes);
+            }
+            done = true;
+        }
+    }
+
+    public static class RateLimitExceededException extends RuntimeException {
+        private final long retryAfterNanos;
+
+        public RateLimitExceededException(long retryAfterNanos) {
+            super("Rate limit exceeded");
+            this.retryAfterNanos = retryAfterNanos;
+        }
+
+        /**
+         * @return the whole seconds to wait before retrying, at least one
+         */
+        public long getRetryAfterSeconds() {
+            return Math.max(1, (retryAfterNanos + TimeUnit.SECONDS.toNanos(1) - 1) / TimeUnit.SECONDS.toNanos(1));
+        }
+    }
+
+    public static class QuotaExceededException extends RuntimeException {
+        public QuotaExceededException(long quota) {
+            super("Storage quota of " + quota + " bytes exceeded");
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package com.filesystem.secure.storage;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.SeekableByteChannel;
+
+/**
+ * Stores encrypted file content outside the database. Blobs are immutable once
+ * committed and are addressed by the identifier returned from {@link BlobWriter#commit()}.
+ */
+public interface BlobStore {
+
+    /**
+     * Starts a new blob. Nothing becomes visible until the writer is committed,
+     * closing an uncommitted writer discards everything written to it.
+     * @return a writer for the new blob
+     */
+    BlobWriter create() throws IOException;
+
+    /**
+     * Opens a long-lived staging area for writing at the given position. Unlike
+     * {@link #create()}, staged content survives across calls and restarts, so content
+     * can be gathered from parts written concurrently and in any order, then read back
+     * with {@link #openStagedForReading(String)}. Concurrent writers must use separate
+     * regions; everything written is durable once the returned stream is closed.
+     * @param stagingId the staging area identifier, a UUID
+     * @param position the byte offset to start writing at
+     * @return a stream writing into the staging area from {@code position} on
+     */
+    OutputStream openStaged(String stagingId, long position) throws IOException;
+
+    /**
+     * Opens a staging area for reading
+     * @param stagingId the staging area identifier
+     * @return a seekable channel positioned at the start of the staged content
+     */
+    SeekableByteChannel openStagedForReading(String stagingId) throws IOException;
+
+    /**
+     * Discards a staging area, doing nothing if it does not exist
+     * @param stagingId the staging area identifier
+     */
+    void deleteStaged(String stagingId) throws IOException;
+
+    /**
+     * Opens a committed blob for reading
+     * @param blobId the blob identifier
+     * @return a seekable channel positioned at the start of the blob
+     */
+    SeekableByteChannel open(String blobId) throws IOException;
+
+    /**
+     * @param blobId the blob identifier
+     * @return the size of the blob in bytes
+     */
+    long size(String blobId) throws IOException;
+
+    /**
+     * @param blobId the blob identifier
+     * @return the hex SHA-256 of the content as committed, known to the store without
+     * reading the blob, so it can be stored with the file and checked against later
+     */
+    String contentDigest(String blobId) throws IOException;
+
+    /**
+     * @param blobId the blob identifier
+     * @return whether a committed blob with this identifier exists
+     */
+    boolean exists(String blobId);
+
+    /**
+     * Deletes a blob, doing nothing if it does not exist
+     * @param blobId the blob identifier
+     */
+    void delete(String blobId) throws IOException;
+
+    interface BlobWriter extends Closeable {
+
+        /**
+         * @return the stream receiving the blob content
+         */
+        OutputStream getOutputStream();
+
+        /**
+         * Makes the written content durable and visible
+         * @return the identifier of the committed blob
+         */
+        String commit() throws IOException;
+    }
+}
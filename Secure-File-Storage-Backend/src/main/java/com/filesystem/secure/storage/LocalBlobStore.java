@@ -0,0 +1,176 @@
+package com.filesystem.secure.storage;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.UUID;
+
+/**
+ * Keeps blobs as files on the local filesystem. Each blob is addressed by the
+ * SHA-256 of its content and stored under {@code <root>/<aa>/<bb>/<sha256>},
+ * content is staged in {@code <root>/tmp} and moved into place on commit. Blobs
+ * assembled from parts are staged in {@code <root>/uploads} until committed.
+ */
+@Component
+@ConditionalOnProperty(name = "storage.type", havingValue = "local", matchIfMissing = true)
+public class LocalBlobStore implements BlobStore {
+
+    private static final String DIGEST_ALGORITHM = "SHA-256";
+
+    private final Path root;
+    private final Path staging;
+    private final Path uploads;
+
+    public LocalBlobStore(@Value("${storage.local.root:./data/blobs}") String root) throws IOException {
+        this.root = Path.of(root).toAbsolutePath().normalize();
+        this.staging = this.root.resolve("tmp");
+        this.uploads = this.root.resolve("uploads");
+        Files.createDirectories(this.staging);
+        Files.createDirectories(this.uploads);
+    }
+
+    @Override
+    public BlobWriter create() throws IOException {
+        Path tempFile = staging.resolve(UUID.randomUUID() + ".part");
+        FileChannel channel = FileChannel.open(tempFile, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        return new LocalBlobWriter(tempFile, channel);
+    }
+
+    @Override
+    public OutputStream openStaged(String stagingId, long position) throws IOException {
+        FileChannel channel = FileChannel.open(resolveStaged(stagingId), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        channel.position(position);
+        return new FilterOutputStream(Channels.newOutputStream(channel)) {
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                out.write(b, off, len);
+            }
+
+            @Override
+            public void close() throws IOException {
+                try (channel) {
+                    channel.force(false);
+                }
+            }
+        };
+    }
+
+    @Override
+    public SeekableByteChannel openStagedForReading(String stagingId) throws IOException {
+        return FileChannel.open(resolveStaged(stagingId), StandardOpenOption.READ);
+    }
+
+    @Override
+    public void deleteStaged(String stagingId) throws IOException {
+        Files.deleteIfExists(resolveStaged(stagingId));
+    }
+
+    @Override
+    public SeekableByteChannel open(String blobId) throws IOException {
+        return FileChannel.open(resolve(blobId), StandardOpenOption.READ);
+    }
+
+    @Override
+    public long size(String blobId) throws IOException {
+        return Files.size(resolve(blobId));
+    }
+
+    @Override
+    public String contentDigest(String blobId) {
+        return blobId; // Content-addressed
+    }
+
+    @Override
+    public boolean exists(String blobId) {
+        return Files.exists(resolve(blobId));
+    }
+
+    @Override
+    public void delete(String blobId) throws IOException {
+        Files.deleteIfExists(resolve(blobId));
+    }
+
+    private Path resolve(String blobId) {
+        if (blobId == null || !blobId.matches("[0-9a-f]{64}")) {
+            throw new IllegalArgumentException("Invalid blob ID: " + blobId);
+        }
+        return root.resolve(blobId.substring(0, 2)).resolve(blobId.substring(2, 4)).resolve(blobId);
+    }
+
+    private Path resolveStaged(String stagingId) {
+        if (stagingId == null || !stagingId.matches("[0-9a-f]{8}-[0-9a-f]{4}-[0-9a-f]{4}-[0-9a-f]{4}-[0-9a-f]{12}")) {
+            throw new IllegalArgumentException("Invalid staging ID: " + stagingId);
+        }
+        return uploads.resolve(stagingId + ".part");
+    }
+
+    private class LocalBlobWriter implements BlobWriter {
+
+        private final Path tempFile;
+        private final FileChannel channel;
+        private final DigestOutputStream outputStream;
+        private boolean committed;
+
+        LocalBlobWriter(Path tempFile, FileChannel channel) {
+            this.tempFile = tempFile;
+            this.channel = channel;
+            this.outputStream = new DigestOutputStream(Channels.newOutputStream(channel), newDigest());
+        }
+
+        @Override
+        public OutputStream getOutputStream() {
+            return outputStream;
+        }
+
+        @Override
+        public String commit() throws IOException {
+            outputStream.flush();
+            channel.force(true);
+            channel.close();
+
+            String blobId = HexFormat.of().formatHex(outputStream.getMessageDigest().digest());
+            Path target = resolve(blobId);
+            Files.createDirectories(target.getParent());
+            try {
+                Files.move(tempFile, target, StandardCopyOption.ATOMIC_MOVE);
+            } catch (FileAlreadyExistsException e) {
+                // Identical content is already stored
+                Files.deleteIfExists(tempFile);
+            }
+            committed = true;
+            return blobId;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (!committed) {
+                channel.close();
+                Files.deleteIfExists(tempFile);
+            }
+        }
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance(DIGEST_ALGORITHM);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(DIGEST_ALGORITHM + " not available", e);
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package com.filesystem.secure.benchmark;
+
+import com.filesystem.secure.service.EncryptionService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.SecureRandom;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Small-file encryption throughput. {@link #perCallSetup()} repeats the work the service
+ * used to do on every call (new SecureRandom, key derivation, Cipher lookup) and serves
+ * as the baseline for {@link #encrypt()}, which reuses the cached key and pooled ciphers.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EncryptionBenchmark {
+
+    private static final String SECRET = "benchmarkSecretKey1234567890123456";
+
+    @Param({"1024", "4096", "65536"})
+    private int payloadSize;
+
+    private byte[] payload;
+    private EncryptionService encryptionService;
+
+    @Setup
+    public void setUp() {
+        payload = new byte[payloadSize];
+        new Random(42).nextBytes(payload);
+
+        encryptionService = new EncryptionService();
+        ReflectionTestUtils.setField(encryptionService, "secretKey", SECRET);
+        ReflectionTestUtils.setField(encryptionService, "segmentSize", 65536);
+    }
+
+    @Benchmark
+    public byte[] perCallSetup() throws Exception {
+        byte[] iv = new byte[12];
+        new SecureRandom().nextBytes(iv);
+
+        byte[] keyBytes = SECRET.getBytes(StandardCharsets.UTF_8);
+        byte[] key32Bytes = new byte[32];
+        System.arraycopy(keyBytes, 0, key32Bytes, 0, Math.min(keyBytes.length, 32));
+        SecretKey key = new SecretKeySpec(key32Bytes, "AES");
+
+        Cipher cipher = Cipher.getInstance("AES/GCM/NoPadding");
+        cipher.init(Cipher.ENCRYPT_MODE, key, new GCMParameterSpec(128, iv));
+        return cipher.doFinal(payload);
+    }
+
+    @Benchmark
+    public EncryptionService.EncryptionResult encrypt() throws Exception {
+        return encryptionService.encrypt(payload);
+    }
+}
@@ -0,0 +1,93 @@
+package com.filesystem.secure.benchmark;
+
+import com.filesystem.secure.model.SecureFile;
+import com.filesystem.secure.service.FileService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.util.FileSystemUtils;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * End-to-end upload and download through {@link FileService}: encryption, the local
+ * blob store and the metadata write against embedded H2. Every upload has content of
+ * its own, so none is served by deduplication. Files uploaded during an iteration are
+ * deleted after it so large payloads do not fill the disk.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 5)
+@Fork(value = 1, jvmArgs = {"-Xms1g", "-Xmx1g"})
+public class FileServiceBenchmark {
+
+    private static final String USER_ID = "benchmark-user";
+
+    @Param({"1024", "1048576", "67108864", "1073741824"})
+    private long payloadSize;
+
+    private Path blobRoot;
+    private ConfigurableApplicationContext context;
+    private FileService fileService;
+    private SecureFile downloadTarget;
+    private final Queue<SecureFile> uploadedFiles = new ConcurrentLinkedQueue<>();
+
+    @Setup
+    public void setUp() throws Exception {
+        blobRoot = Files.createTempDirectory("file-service-benchmark");
+        context = LocalStack.start(blobRoot);
+        fileService = context.getBean(FileService.class);
+        downloadTarget = fileService.uploadFile(payload(), USER_ID);
+    }
+
+    @TearDown(Level.Iteration)
+    public void deleteUploads() {
+        SecureFile file;
+        while ((file = uploadedFiles.poll()) != null) {
+            fileService.deleteFile(file.getId(), file.getDownloadKey(), USER_ID);
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        context.close();
+        FileSystemUtils.deleteRecursively(blobRoot);
+    }
+
+    @Benchmark
+    public SecureFile upload() throws Exception {
+        SecureFile saved = fileService.uploadFile(payload(), USER_ID);
+        uploadedFiles.add(saved);
+        return saved;
+    }
+
+    @Benchmark
+    public void download() throws Exception {
+        fileService.openDownload(downloadTarget.getId(), downloadTarget.getDownloadKey(), USER_ID)
+                .writeTo(OutputStream.nullOutputStream());
+    }
+
+    private MultipartFile payload() {
+        return Payloads.multipartFile("payload.bin", "application/octet-stream", payloadSize, Payloads.nextSalt());
+    }
+}
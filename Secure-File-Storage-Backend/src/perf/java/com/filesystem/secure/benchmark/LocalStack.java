@@ -0,0 +1,50 @@
+package com.filesystem.secure.benchmark;
+
+import com.filesystem.secure.SecureApplication;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Starts the backend in-process against an in-memory H2 database and a blob store in
+ * a local directory, standing in for the environment-driven production settings.
+ */
+public final class LocalStack {
+
+    private LocalStack() {
+    }
+
+    /**
+     * @param blobRoot the directory for the local blob store
+     * @param overrides extra {@code --key=value} arguments, taking precedence over the defaults
+     * @return the running application context, to be closed by the caller
+     */
+    public static ConfigurableApplicationContext start(Path blobRoot, String... overrides) {
+        // Devtools would otherwise relaunch the calling main method in a restart class loader
+        System.setProperty("spring.devtools.restart.enabled", "false");
+        List<String> args = new ArrayList<>(List.of(
+                "--spring.datasource.url=jdbc:h2:mem:perf-" + System.nanoTime() + ";DB_CLOSE_DELAY=-1;DB_CLOSE_ON_EXIT=FALSE",
+                "--spring.datasource.username=sa",
+                "--spring.datasource.password=",
+                "--spring.datasource.driver-class-name=org.h2.Driver",
+                "--spring.jpa.hibernate.ddl-auto=create-drop",
+                "--spring.jpa.show-sql=false",
+                "--spring.jpa.properties.hibernate.format_sql=false",
+                "--spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect",
+                "--spring.datasource.hikari.maximum-pool-size=20",
+                "--spring.datasource.hikari.minimum-idle=2",
+                "--spring.datasource.hikari.connection-timeout=30000",
+                "--spring.h2.console.enabled=false",
+                "--storage.local.root=" + blobRoot.toAbsolutePath(),
+                "--storage.migrate-lobs=false",
+                "--keys.local.root=" + blobRoot.resolve("keys").toAbsolutePath(),
+                "--server.port=0",
+                "--logging.level.root=WARN"
+        ));
+        args.addAll(List.of(overrides));
+        return SpringApplication.run(SecureApplication.class, args.toArray(new String[0]));
+    }
+}
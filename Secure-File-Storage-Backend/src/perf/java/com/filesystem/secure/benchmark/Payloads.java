@@ -0,0 +1,139 @@
+package com.filesystem.secure.benchmark;
+
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Pseudo-random payloads of any size that never materialize on the heap: the
+ * content repeats one random block, which makes no difference to AES-GCM. Uploads
+ * of identical content are deduplicated, so payloads meant to be stored as new files
+ * take a salt from {@link #nextSalt()} that makes their first bytes unique.
+ */
+public final class Payloads {
+
+    private static final byte[] BLOCK = new byte[1 << 20];
+    private static final int SALT_LENGTH = Long.BYTES;
+    private static final AtomicLong SALTS = new AtomicLong(System.nanoTime());
+
+    static {
+        new Random(42).nextBytes(BLOCK);
+    }
+
+    private Payloads() {
+    }
+
+    /**
+     * @return a salt no other call in this process returns
+     */
+    public static long nextSalt() {
+        return SALTS.incrementAndGet();
+    }
+
+    /**
+     * @param size the number of bytes the stream yields
+     * @return a stream of {@code size} pseudo-random bytes, the same on every call
+     */
+    public static InputStream stream(long size) {
+        return stream(size, 0);
+    }
+
+    /**
+     * @param size the number of bytes the stream yields
+     * @param salt mixed into the first eight bytes, so streams of different salts differ
+     * @return a stream of {@code size} pseudo-random bytes
+     */
+    public static InputStream stream(long size, long salt) {
+        return new InputStream() {
+            private long remaining = size;
+
+            @Override
+            public int read() {
+                if (remaining <= 0) {
+                    return -1;
+                }
+                long position = size - remaining;
+                int value = (BLOCK[(int) (position % BLOCK.length)] ^ saltByte(position)) & 0xff;
+                remaining--;
+                return value;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) {
+                if (remaining <= 0) {
+                    return -1;
+                }
+                int offset = (int) ((size - remaining) % BLOCK.length);
+                int count = (int) Math.min(Math.min(len, remaining), BLOCK.length - offset);
+                System.arraycopy(BLOCK, offset, b, off, count);
+                long position = size - remaining;
+                for (long i = position; i < Math.min(SALT_LENGTH, position + count); i++) {
+                    b[off + (int) (i - position)] ^= saltByte(i);
+                }
+                remaining -= count;
+                return count;
+            }
+
+            private byte saltByte(long position) {
+                return position < SALT_LENGTH ? (byte) (salt >>> (8 * (SALT_LENGTH - 1 - position))) : 0;
+            }
+        };
+    }
+
+    /**
+     * @param name the original file name to report
+     * @param contentType the content type to report
+     * @param size the file size in bytes
+     * @param salt the salt of the content, see {@link #stream(long, long)}
+     * @return a multipart upload whose content is generated on every read
+     */
+    public static MultipartFile multipartFile(String name, String contentType, long size, long salt) {
+        return new MultipartFile() {
+            @Override
+            public String getName() {
+                return "file";
+            }
+
+            @Override
+            public String getOriginalFilename() {
+                return name;
+            }
+
+            @Override
+            public String getContentType() {
+                return contentType;
+            }
+
+            @Override
+            public boolean isEmpty() {
+                return size == 0;
+            }
+
+            @Override
+            public long getSize() {
+                return size;
+            }
+
+            @Override
+            public byte[] getBytes() {
+                throw new UnsupportedOperationException("Generated uploads are only readable as a stream");
+            }
+
+            @Override
+            public InputStream getInputStream() {
+                return stream(size, salt);
+            }
+
+            @Override
+            public void transferTo(File dest) throws IOException {
+                Files.copy(stream(size, salt), dest.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+        };
+    }
+}
@@ -0,0 +1,79 @@
+package com.filesystem.secure.benchmark;
+
+import com.filesystem.secure.service.EncryptionService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import javax.crypto.SecretKey;
+import javax.crypto.spec.SecretKeySpec;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Segmented encrypt/decrypt of 1 KB to 1 GB payloads. Plaintext is generated and
+ * ciphertext for decryption is read from a temp file, so heap use reflects only
+ * what the service itself allocates. Run with {@code -prof gc} for allocation rates;
+ * sample mode reports latency percentiles.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 5)
+@Fork(value = 1, jvmArgs = {"-Xms1g", "-Xmx1g"})
+public class StreamingEncryptionBenchmark {
+
+    @Param({"1024", "1048576", "67108864", "1073741824"})
+    private long payloadSize;
+
+    private EncryptionService encryptionService;
+    private SecretKey key;
+    private Path encryptedFile;
+    private String iv;
+
+    @Setup
+    public void setUp() throws Exception {
+        encryptionService = new EncryptionService();
+        ReflectionTestUtils.setField(encryptionService, "secretKey", "benchmarkSecretKey1234567890123456");
+        ReflectionTestUtils.setField(encryptionService, "segmentSize", 65536);
+        key = new SecretKeySpec(new byte[32], "AES");
+
+        encryptedFile = Files.createTempFile("encryption-benchmark", ".bin");
+        try (OutputStream out = Files.newOutputStream(encryptedFile)) {
+            iv = encryptionService.encrypt(key, Payloads.stream(payloadSize), out).getIv();
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(encryptedFile);
+    }
+
+    @Benchmark
+    public EncryptionService.StreamEncryptionResult encrypt() throws Exception {
+        return encryptionService.encrypt(key, Payloads.stream(payloadSize), OutputStream.nullOutputStream());
+    }
+
+    @Benchmark
+    public void decrypt() throws Exception {
+        try (InputStream in = Files.newInputStream(encryptedFile)) {
+            encryptionService.decrypt(key, in, OutputStream.nullOutputStream(), iv, 65536);
+        }
+    }
+}
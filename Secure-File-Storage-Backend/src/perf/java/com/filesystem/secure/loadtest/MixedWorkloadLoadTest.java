@@ -0,0 +1,421 @@
+package com.filesystem.secure.loadtest;
+
+import com.filesystem.secure.benchmark.LocalStack;
+import com.filesystem.secure.benchmark.Payloads;
+import com.sun.management.GarbageCollectionNotificationInfo;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.util.FileSystemUtils;
+import org.springframework.util.unit.DataSize;
+
+import javax.management.NotificationEmitter;
+import javax.management.NotificationListener;
+import javax.management.openmbean.CompositeData;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.SequenceInputStream;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+/**
+ * Drives a mix of uploads, listings and downloads against the backend running
+ * in-process on the {@link LocalStack}, so two builds can be compared on identical
+ * workloads. Every scenario, one per mix and concurrency level, first seeds each user
+ * with files, warms up, and then runs closed-loop clients for a fixed time. It reports
+ * throughput and p50/p99 latency per operation, plus the heap high-water mark and the
+ * GC pauses of the measured window. Clients share the JVM with the server, but stream
+ * generated uploads and discard downloads, so they add little to either. Every upload
+ * has content of its own, so uploads are stored rather than deduplicated.
+ * <p>
+ * {@code mvn -Pperf test-compile exec:exec@mixed-load-test -Dloadtest.args="--concurrency=8,32 --duration=30"}
+ * <p>
+ * Options: {@code --mixes=20/50/30} upload/list/download weights, several separated by
+ * commas; {@code --sizes=4KB:60,256KB:30,4MB:10} file sizes with their weights;
+ * {@code --concurrency=8,32}; {@code --users=16}; {@code --seed-files=10} per user;
+ * {@code --warmup=5} and {@code --duration=20} seconds. Any {@code --spring...} or other
+ * dotted option, such as {@code --spring.threads.virtual.enabled=true}, is passed on
+ * to the backend.
+ */
+public class MixedWorkloadLoadTest {
+
+    private static final Pattern DOTTED_OPTION = Pattern.compile("--[a-z-]+\\.[^=]+=.*");
+    private static final Pattern FILE_ENTRY = Pattern.compile("\"id\":(\\d+).*?\"downloadKey\":\"([^\"]+)\"");
+    private static final String BOUNDARY = "----mixed-load-test";
+
+    enum Operation { UPLOAD, LIST, DOWNLOAD }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = Arrays.stream(args)
+                .filter(arg -> arg.startsWith("--") && arg.contains("=") && !DOTTED_OPTION.matcher(arg).matches())
+                .collect(Collectors.toMap(arg -> arg.substring(2, arg.indexOf('=')), arg -> arg.substring(arg.indexOf('=') + 1)));
+        String[] serverArgs = Arrays.stream(args)
+                .filter(arg -> DOTTED_OPTION.matcher(arg).matches())
+                .toArray(String[]::new);
+        List<Mix> mixes = Arrays.stream(options.getOrDefault("mixes", "20/50/30").split(","))
+                .map(Mix::parse)
+                .toList();
+        SizeDistribution sizes = SizeDistribution.parse(options.getOrDefault("sizes", "4KB:60,256KB:30,4MB:10"));
+        List<Integer> concurrencyLevels = Arrays.stream(options.getOrDefault("concurrency", "8,32").split(","))
+                .map(Integer::parseInt)
+                .toList();
+        int users = Integer.parseInt(options.getOrDefault("users", "16"));
+        int seedFiles = Integer.parseInt(options.getOrDefault("seed-files", "10"));
+        Duration warmup = Duration.ofSeconds(Long.parseLong(options.getOrDefault("warmup", "5")));
+        Duration duration = Duration.ofSeconds(Long.parseLong(options.getOrDefault("duration", "20")));
+
+        Path blobRoot = Files.createTempDirectory("mixed-load-test");
+        try (ConfigurableApplicationContext context = LocalStack.start(blobRoot, serverArgs);
+             HttpClient http = HttpClient.newBuilder().executor(Executors.newVirtualThreadPerTaskExecutor()).build()) {
+            Client client = new Client(http, Integer.parseInt(context.getEnvironment().getProperty("local.server.port")));
+            GcPauses gcPauses = GcPauses.listen();
+            int scenario = 0;
+            for (Mix mix : mixes) {
+                for (int concurrency : concurrencyLevels) {
+                    // Fresh users per scenario, so earlier uploads do not skew listings and downloads
+                    String userPrefix = "load-" + scenario++ + "-";
+                    Workload workload = new Workload(client, mix, sizes, userPrefix, users);
+                    workload.seed(seedFiles);
+                    workload.run(concurrency, warmup);
+
+                    System.gc();
+                    resetHeapPeaks();
+                    gcPauses.reset();
+                    long start = System.nanoTime();
+                    Map<Operation, Stats> stats = workload.run(concurrency, duration);
+                    double elapsedSeconds = (System.nanoTime() - start) / 1e9;
+                    report(mix, concurrency, sizes, stats, elapsedSeconds, heapPeakBytes(), gcPauses);
+                }
+            }
+        } finally {
+            FileSystemUtils.deleteRecursively(blobRoot);
+        }
+    }
+
+    private static void report(Mix mix, int concurrency, SizeDistribution sizes, Map<Operation, Stats> stats,
+                               double elapsedSeconds, long heapPeakBytes, GcPauses gcPauses) {
+        long total = stats.values().stream().mapToLong(operation -> operation.latenciesMillis.size()).sum();
+        System.out.printf("%nscenario mix=%s sizes=%s concurrency=%d: %.1f ops/s, heap peak %d MB, "
+                        + "GC pauses %d totalling %d ms (max %d ms)%n",
+                mix, sizes, concurrency, total / elapsedSeconds, heapPeakBytes >> 20,
+                gcPauses.count(), gcPauses.totalMillis(), gcPauses.maxMillis());
+        System.out.printf("%-9s %10s %8s %10s %10s %10s %10s%n", "operation", "succeeded", "failed", "ops/s", "MB/s", "p50 ms", "p99 ms");
+        stats.forEach((operation, result) -> System.out.printf("%-9s %10d %8d %10.1f %10.1f %10d %10d%n",
+                operation.name().toLowerCase(), result.latenciesMillis.size(), result.failed,
+                result.latenciesMillis.size() / elapsedSeconds, result.bytes / elapsedSeconds / (1 << 20),
+                UploadConcurrencyLoadTest.percentile(result.latenciesMillis, 50),
+                UploadConcurrencyLoadTest.percentile(result.latenciesMillis, 99)));
+    }
+
+    private static void resetHeapPeaks() {
+        ManagementFactory.getMemoryPoolMXBeans().stream()
+                .filter(pool -> pool.getType() == MemoryType.HEAP)
+                .forEach(MemoryPoolMXBean::resetPeakUsage);
+    }
+
+    /**
+     * @return the sum of the heap pools' peaks, an upper bound as the pools may peak at different times
+     */
+    private static long heapPeakBytes() {
+        return ManagementFactory.getMemoryPoolMXBeans().stream()
+                .filter(pool -> pool.getType() == MemoryType.HEAP)
+                .mapToLong(pool -> pool.getPeakUsage().getUsed())
+                .sum();
+    }
+
+    /**
+     * The files each user owns and the clients that pick operations on them
+     */
+    private static class Workload {
+        private final Client client;
+        private final Mix mix;
+        private final SizeDistribution sizes;
+        private final List<String> userIds;
+        private final Map<String, List<StoredFile>> files;
+
+        Workload(Client client, Mix mix, SizeDistribution sizes, String userPrefix, int users) {
+            this.client = client;
+            this.mix = mix;
+            this.sizes = sizes;
+            this.userIds = new ArrayList<>(users);
+            this.files = new ConcurrentHashMap<>();
+            for (int i = 0; i < users; i++) {
+                String userId = userPrefix + i;
+                userIds.add(userId);
+                files.put(userId, Collections.synchronizedList(new ArrayList<>()));
+            }
+        }
+
+        void seed(int filesPerUser) throws Exception {
+            List<Future<?>> seeding = new ArrayList<>();
+            try (ExecutorService seeders = Executors.newFixedThreadPool(Math.min(8, userIds.size()))) {
+                for (String userId : userIds) {
+                    seeding.add(seeders.submit(() -> {
+                        for (int i = 0; i < filesPerUser; i++) {
+                            files.get(userId).add(client.upload(userId, sizes.next()));
+                        }
+                        return null;
+                    }));
+                }
+            }
+            for (Future<?> seeded : seeding) {
+                seeded.get(); // Rethrows the first failed seed upload
+            }
+        }
+
+        Map<Operation, Stats> run(int concurrency, Duration duration) throws InterruptedException {
+            Map<Operation, Stats> stats = new EnumMap<>(Operation.class);
+            for (Operation operation : Operation.values()) {
+                stats.put(operation, new Stats());
+            }
+            long deadline = System.nanoTime() + duration.toNanos();
+            try (ExecutorService clients = Executors.newVirtualThreadPerTaskExecutor()) {
+                for (int i = 0; i < concurrency; i++) {
+                    clients.submit(() -> {
+                        while (System.nanoTime() < deadline) {
+                            runOne(mix.next(), stats);
+                        }
+                    });
+                }
+            }
+            return stats;
+        }
+
+        private void runOne(Operation operation, Map<Operation, Stats> stats) {
+            String userId = userIds.get(ThreadLocalRandom.current().nextInt(userIds.size()));
+            long start = System.nanoTime();
+            long bytes;
+            try {
+                bytes = switch (operation) {
+                    case UPLOAD -> {
+                        StoredFile file = client.upload(userId, sizes.next());
+                        files.get(userId).add(file);
+                        yield file.size();
+                    }
+                    case LIST -> client.list(userId);
+                    case DOWNLOAD -> {
+                        List<StoredFile> owned = files.get(userId);
+                        StoredFile file = owned.get(ThreadLocalRandom.current().nextInt(owned.size()));
+                        yield client.download(userId, file);
+                    }
+                };
+            } catch (Exception e) {
+                stats.get(operation).failed();
+                return;
+            }
+            stats.get(operation).completed(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start), bytes);
+        }
+    }
+
+    /**
+     * Plain HTTP calls against the file API, streaming request and response bodies
+     */
+    private record Client(HttpClient http, int port) {
+
+        StoredFile upload(String userId, long size) throws IOException, InterruptedException {
+            long salt = Payloads.nextSalt(); // Outside the body supplier, so a resent body is the same
+            byte[] head = ("--" + BOUNDARY + "\r\n"
+                    + "Content-Disposition: form-data; name=\"userId\"\r\n\r\n" + userId + "\r\n"
+                    + "--" + BOUNDARY + "\r\n"
+                    + "Content-Disposition: form-data; name=\"file\"; filename=\"load.bin\"\r\n"
+                    + "Content-Type: application/octet-stream\r\n\r\n").getBytes(StandardCharsets.UTF_8);
+            byte[] tail = ("\r\n--" + BOUNDARY + "--\r\n").getBytes(StandardCharsets.UTF_8);
+            HttpRequest request = HttpRequest.newBuilder(uri("/api/files/upload"))
+                    .header("Content-Type", "multipart/form-data; boundary=" + BOUNDARY)
+                    .POST(HttpRequest.BodyPublishers.fromPublisher(HttpRequest.BodyPublishers.ofInputStream(() -> concat(
+                            new ByteArrayInputStream(head), Payloads.stream(size, salt), new ByteArrayInputStream(tail))),
+                            head.length + size + tail.length))
+                    .build();
+            String body = expectOk(http.send(request, HttpResponse.BodyHandlers.ofString()));
+            Matcher file = FILE_ENTRY.matcher(body);
+            if (!file.find()) {
+                throw new IOException("Unexpected upload response: " + body);
+            }
+            return new StoredFile(Long.parseLong(file.group(1)), file.group(2), size);
+        }
+
+        long list(String userId) throws IOException, InterruptedException {
+            HttpResponse<byte[]> response = http.send(HttpRequest.newBuilder(uri("/api/files/user/" + userId)).build(),
+                    HttpResponse.BodyHandlers.ofByteArray());
+            expectOk(response);
+            return response.body().length;
+        }
+
+        long download(String userId, StoredFile file) throws IOException, InterruptedException {
+            HttpRequest request = HttpRequest.newBuilder(uri("/api/files/download/" + file.id()
+                    + "?key=" + file.downloadKey() + "&userId=" + userId)).build();
+            HttpResponse<InputStream> response = http.send(request, HttpResponse.BodyHandlers.ofInputStream());
+            try (InputStream body = response.body()) {
+                expectOk(response);
+                return body.transferTo(OutputStream.nullOutputStream());
+            }
+        }
+
+        private URI uri(String path) {
+            return URI.create("http://localhost:" + port + path);
+        }
+
+        private static <T> T expectOk(HttpResponse<T> response) throws IOException {
+            if (response.statusCode() != 200) {
+                throw new IOException("HTTP " + response.statusCode() + " from " + response.uri());
+            }
+            return response.body();
+        }
+
+        private static InputStream concat(InputStream... streams) {
+            return new SequenceInputStream(Collections.enumeration(List.of(streams)));
+        }
+    }
+
+    private record StoredFile(long id, String downloadKey, long size) {
+    }
+
+    /**
+     * Latencies and bytes of one operation, collected from all clients
+     */
+    private static class Stats {
+        private final List<Long> latenciesMillis = new ArrayList<>();
+        private long bytes;
+        private long failed;
+
+        synchronized void completed(long latencyMillis, long transferred) {
+            latenciesMillis.add(latencyMillis);
+            bytes += transferred;
+        }
+
+        synchronized void failed() {
+            failed++;
+        }
+    }
+
+    /**
+     * Upload, list and download weights, such as {@code 20/50/30}
+     */
+    private record Mix(int upload, int list, int download) {
+
+        static Mix parse(String spec) {
+            String[] weights = spec.split("/");
+            if (weights.length != 3) {
+                throw new IllegalArgumentException("A mix gives upload/list/download weights, such as 20/50/30: " + spec);
+            }
+            return new Mix(Integer.parseInt(weights[0]), Integer.parseInt(weights[1]), Integer.parseInt(weights[2]));
+        }
+
+        Operation next() {
+            int pick = ThreadLocalRandom.current().nextInt(upload + list + download);
+            if (pick < upload) {
+                return Operation.UPLOAD;
+            }
+            return pick < upload + list ? Operation.LIST : Operation.DOWNLOAD;
+        }
+
+        @Override
+        public String toString() {
+            return upload + "/" + list + "/" + download;
+        }
+    }
+
+    /**
+     * File sizes with weights, such as {@code 4KB:60,256KB:30,4MB:10}
+     */
+    private record SizeDistribution(String spec, long[] sizes, int[] cumulativeWeights) {
+
+        static SizeDistribution parse(String spec) {
+            String[] entries = spec.split(",");
+            long[] sizes = new long[entries.length];
+            int[] cumulativeWeights = new int[entries.length];
+            int total = 0;
+            for (int i = 0; i < entries.length; i++) {
+                String[] entry = entries[i].split(":");
+                sizes[i] = DataSize.parse(entry[0].trim()).toBytes();
+                total += entry.length > 1 ? Integer.parseInt(entry[1].trim()) : 1;
+                cumulativeWeights[i] = total;
+            }
+            return new SizeDistribution(spec, sizes, cumulativeWeights);
+        }
+
+        long next() {
+            int pick = ThreadLocalRandom.current().nextInt(cumulativeWeights[cumulativeWeights.length - 1]);
+            int i = 0;
+            while (pick >= cumulativeWeights[i]) {
+                i++;
+            }
+            return sizes[i];
+        }
+
+        @Override
+        public String toString() {
+            return spec;
+        }
+    }
+
+    /**
+     * Collects stop-the-world GC pauses from the collectors' notifications
+     */
+    private static class GcPauses {
+        private final List<Long> pausesMillis = Collections.synchronizedList(new ArrayList<>());
+
+        static GcPauses listen() {
+            GcPauses pauses = new GcPauses();
+            NotificationListener listener = (notification, handback) -> {
+                if (!notification.getType().equals(GarbageCollectionNotificationInfo.GARBAGE_COLLECTION_NOTIFICATION)) {
+                    return;
+                }
+                GarbageCollectionNotificationInfo info = GarbageCollectionNotificationInfo.from((CompositeData) notification.getUserData());
+                // Concurrent cycles, as ZGC reports them, run alongside the application
+                if (!info.getGcAction().contains("cycle")) {
+                    pauses.pausesMillis.add(info.getGcInfo().getDuration());
+                }
+            };
+            for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+                ((NotificationEmitter) collector).addNotificationListener(listener, null, null);
+            }
+            return pauses;
+        }
+
+        void reset() {
+            pausesMillis.clear();
+        }
+
+        int count() {
+            return pausesMillis.size();
+        }
+
+        long totalMillis() {
+            synchronized (pausesMillis) {
+                return pausesMillis.stream().mapToLong(Long::longValue).sum();
+            }
+        }
+
+        long maxMillis() {
+            synchronized (pausesMillis) {
+                return pausesMillis.stream().mapToLong(Long::longValue).max().orElse(0);
+            }
+        }
+    }
+}
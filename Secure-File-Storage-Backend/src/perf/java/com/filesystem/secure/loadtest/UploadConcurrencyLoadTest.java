@@ -0,0 +1,198 @@
+package com.filesystem.secure.loadtest;
+
+import com.filesystem.secure.benchmark.LocalStack;
+import com.filesystem.secure.benchmark.Payloads;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.util.FileSystemUtils;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+/**
+ * Measures how many concurrent uploads the backend sustains with platform versus
+ * virtual request threads. Each client sends its multipart body at a capped rate to
+ * mimic slow networks, so server threads spend most of their time blocked on reads.
+ * <p>
+ * {@code mvn -Pperf test-compile exec:exec@upload-load-test -Dloadtest.args="--concurrency=200,1000"}
+ * <p>
+ * Options: {@code --modes=platform,virtual}, {@code --concurrency=100,400,1000},
+ * {@code --size=262144} bytes per upload, {@code --client-rate=131072} bytes/s per client.
+ */
+public class UploadConcurrencyLoadTest {
+
+    private static final String BOUNDARY = "----upload-load-test";
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = Arrays.stream(args)
+                .filter(arg -> arg.startsWith("--") && arg.contains("="))
+                .collect(Collectors.toMap(arg -> arg.substring(2, arg.indexOf('=')), arg -> arg.substring(arg.indexOf('=') + 1)));
+        List<String> modes = List.of(options.getOrDefault("modes", "platform,virtual").split(","));
+        List<Integer> concurrencyLevels = Arrays.stream(options.getOrDefault("concurrency", "100,400,1000").split(","))
+                .map(Integer::parseInt)
+                .toList();
+        long size = Long.parseLong(options.getOrDefault("size", "262144"));
+        long clientRate = Long.parseLong(options.getOrDefault("client-rate", "131072"));
+
+        System.out.printf("%-9s %12s %10s %9s %12s %10s %10s%n",
+                "mode", "concurrency", "succeeded", "failed", "uploads/s", "p50 ms", "p99 ms");
+        for (String mode : modes) {
+            Path blobRoot = Files.createTempDirectory("upload-load-test");
+            try (ConfigurableApplicationContext context = LocalStack.start(blobRoot,
+                    "--spring.threads.virtual.enabled=" + mode.equals("virtual"),
+                    "--diagnostics.pinned-threads.enabled=" + mode.equals("virtual"))) {
+                int port = Integer.parseInt(context.getEnvironment().getProperty("local.server.port"));
+                for (int concurrency : concurrencyLevels) {
+                    Result result = run(port, concurrency, size, clientRate);
+                    System.out.printf("%-9s %12d %10d %9d %12.1f %10d %10d%n",
+                            mode, concurrency, result.latenciesMillis.size(), result.failed,
+                            result.latenciesMillis.size() / result.elapsedSeconds,
+                            percentile(result.latenciesMillis, 50), percentile(result.latenciesMillis, 99));
+                }
+            } finally {
+                FileSystemUtils.deleteRecursively(blobRoot);
+            }
+        }
+    }
+
+    private static Result run(int port, int concurrency, long size, long clientRate) throws InterruptedException {
+        List<Long> latencies = Collections.synchronizedList(new ArrayList<>());
+        AtomicInteger failed = new AtomicInteger();
+
+        long start = System.nanoTime();
+        try (ExecutorService clients = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < concurrency; i++) {
+                String userId = "load-user-" + i;
+                clients.submit(() -> {
+                    long requestStart = System.nanoTime();
+                    try {
+                        if (upload(port, userId, size, clientRate) == 200) {
+                            latencies.add(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - requestStart));
+                            return;
+                        }
+                    } catch (IOException e) {
+                        // Counted as a failure below
+                    }
+                    failed.incrementAndGet();
+                });
+            }
+        }
+        double elapsedSeconds = (System.nanoTime() - start) / 1e9;
+        return new Result(new ArrayList<>(latencies), failed.get(), elapsedSeconds);
+    }
+
+    /**
+     * Sends one multipart upload of unique content over a plain socket, writing the file
+     * part no faster than {@code clientRate} bytes per second
+     * @return the HTTP status code of the response
+     */
+    private static int upload(int port, String userId, long size, long clientRate) throws IOException {
+        byte[] head = ("--" + BOUNDARY + "\r\n"
+                + "Content-Disposition: form-data; name=\"userId\"\r\n\r\n" + userId + "\r\n"
+                + "--" + BOUNDARY + "\r\n"
+                + "Content-Disposition: form-data; name=\"file\"; filename=\"load.bin\"\r\n"
+                + "Content-Type: application/octet-stream\r\n\r\n").getBytes(StandardCharsets.UTF_8);
+        byte[] tail = ("\r\n--" + BOUNDARY + "--\r\n").getBytes(StandardCharsets.UTF_8);
+        byte[] requestHead = ("POST /api/files/upload HTTP/1.1\r\n"
+                + "Host: localhost:" + port + "\r\n"
+                + "Content-Type: multipart/form-data; boundary=" + BOUNDARY + "\r\n"
+                + "Content-Length: " + (head.length + size + tail.length) + "\r\n"
+                + "Connection: close\r\n\r\n").getBytes(StandardCharsets.UTF_8);
+
+        try (Socket socket = new Socket("localhost", port)) {
+            OutputStream out = new BufferedOutputStream(socket.getOutputStream());
+            out.write(requestHead);
+            out.write(head);
+            out.flush();
+            try (InputStream body = new ThrottledInputStream(Payloads.stream(size, Payloads.nextSalt()), clientRate)) {
+                byte[] buffer = new byte[8192];
+                int read;
+                while ((read = body.read(buffer, 0, buffer.length)) > 0) {
+                    out.write(buffer, 0, read);
+                    out.flush();
+                }
+            }
+            out.write(tail);
+            out.flush();
+
+            BufferedReader response = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.ISO_8859_1));
+            String statusLine = response.readLine();
+            if (statusLine == null) {
+                throw new EOFException("Connection closed before the response");
+            }
+            return Integer.parseInt(statusLine.split(" ")[1]);
+        }
+    }
+
+    static long percentile(List<Long> values, int percentile) {
+        if (values.isEmpty()) {
+            return 0;
+        }
+        List<Long> sorted = values.stream().sorted().toList();
+        int index = (int) Math.ceil(percentile / 100.0 * sorted.size()) - 1;
+        return sorted.get(Math.max(0, index));
+    }
+
+    private record Result(List<Long> latenciesMillis, int failed, double elapsedSeconds) {
+    }
+
+    /**
+     * Caps the rate at which a stream can be read, sleeping between reads
+     */
+    static class ThrottledInputStream extends InputStream {
+
+        private final InputStream delegate;
+        private final long bytesPerSecond;
+        private final long startNanos = System.nanoTime();
+        private long bytesRead;
+
+        ThrottledInputStream(InputStream delegate, long bytesPerSecond) {
+            this.delegate = delegate;
+            this.bytesPerSecond = bytesPerSecond;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] single = new byte[1];
+            return read(single, 0, 1) < 0 ? -1 : single[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int count = delegate.read(b, off, (int) Math.min(len, Math.max(1, bytesPerSecond / 10)));
+            if (count > 0) {
+                bytesRead += count;
+                long dueNanos = startNanos + bytesRead * 1_000_000_000L / bytesPerSecond;
+                long waitNanos = dueNanos - System.nanoTime();
+                if (waitNanos > 0) {
+                    try {
+                        TimeUnit.NANOSECONDS.sleep(waitNanos);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new InterruptedIOException("Interrupted while throttling");
+                    }
+                }
+            }
+            return count;
+        }
+    }
+}
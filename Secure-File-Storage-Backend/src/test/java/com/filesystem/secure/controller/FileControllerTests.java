@@ -0,0 +1,158 @@
+package com.filesystem.secure.controller;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.util.LinkedMultiValueMap;
+import org.springframework.util.MultiValueMap;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+class FileControllerTests {
+
+	@Autowired
+	private TestRestTemplate restTemplate;
+
+	@Test
+	void unchangedListingIsAnsweredWithNotModified() {
+		String user = "listing-unchanged";
+		upload(user, "first.txt");
+		ResponseEntity<List> listed = list(user, null);
+		String eTag = listed.getHeaders().getETag();
+		assertThat(listed.getStatusCode()).isEqualTo(HttpStatus.OK);
+		assertThat(eTag).isNotNull();
+
+		ResponseEntity<List> polled = list(user, eTag);
+		assertThat(polled.getStatusCode()).isEqualTo(HttpStatus.NOT_MODIFIED);
+		assertThat(polled.getHeaders().getETag()).isEqualTo(eTag);
+		// Compression may weaken the ETag on the way back
+		assertThat(list(user, "W/" + eTag).getStatusCode()).isEqualTo(HttpStatus.NOT_MODIFIED);
+	}
+
+	@Test
+	void uploadAndDeleteChangeTheListingETag() {
+		String user = "listing-changed";
+		String emptyETag = list(user, null).getHeaders().getETag();
+
+		Map<?, ?> uploaded = upload(user, "added.txt");
+		ResponseEntity<List> afterUpload = list(user, emptyETag);
+		assertThat(afterUpload.getStatusCode()).isEqualTo(HttpStatus.OK);
+		assertThat(afterUpload.getBody()).hasSize(1);
+		String uploadETag = afterUpload.getHeaders().getETag();
+
+		ResponseEntity<Void> deleted = restTemplate.exchange("/api/files/{id}?key={key}&userId={userId}", HttpMethod.DELETE,
+				null, Void.class, uploaded.get("id"), uploaded.get("downloadKey"), user);
+		assertThat(deleted.getStatusCode()).isEqualTo(HttpStatus.OK);
+		ResponseEntity<List> afterDelete = list(user, uploadETag);
+		assertThat(afterDelete.getStatusCode()).isEqualTo(HttpStatus.OK);
+		assertThat(afterDelete.getBody()).isEmpty();
+	}
+
+	@Test
+	void downloadIsStreamedWhole() {
+		byte[] content = randomBytes(200_000);
+		Map<?, ?> uploaded = upload("download-whole", "whole.bin", content);
+
+		ResponseEntity<byte[]> response = download(uploaded, "download-whole", null);
+
+		assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+		assertThat(response.getHeaders().getContentLength()).isEqualTo(content.length);
+		assertThat(response.getHeaders().getFirst(HttpHeaders.ACCEPT_RANGES)).isEqualTo("bytes");
+		assertThat(response.getBody()).isEqualTo(content);
+	}
+
+	@Test
+	void rangeAcrossSegmentsIsAnsweredWithPartialContent() {
+		byte[] content = randomBytes(200_000);
+		Map<?, ?> uploaded = upload("download-range", "range.bin", content);
+
+		// Ends in the third 64 KiB segment, so three segments are decrypted for it
+		ResponseEntity<byte[]> response = download(uploaded, "download-range", "bytes=60000-140000");
+
+		assertThat(response.getStatusCode()).isEqualTo(HttpStatus.PARTIAL_CONTENT);
+		assertThat(response.getHeaders().getFirst(HttpHeaders.CONTENT_RANGE)).isEqualTo("bytes 60000-140000/200000");
+		assertThat(response.getBody()).isEqualTo(Arrays.copyOfRange(content, 60000, 140001));
+		assertThat(download(uploaded, "download-range", "bytes=200000-").getStatusCode())
+				.isEqualTo(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE);
+	}
+
+	@Test
+	void rangeOfACompressedFileIsAnsweredWithTheWholeFile() {
+		byte[] content = "a line of text that repeats\n".repeat(4000).getBytes(StandardCharsets.UTF_8);
+		Map<?, ?> uploaded = upload("download-compressed", "compressed.txt", content);
+
+		ResponseEntity<byte[]> response = download(uploaded, "download-compressed", "bytes=100-199");
+
+		assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+		assertThat(response.getHeaders().containsKey(HttpHeaders.ACCEPT_RANGES)).isFalse();
+		assertThat(response.getHeaders().containsKey(HttpHeaders.CONTENT_RANGE)).isFalse();
+		assertThat(response.getBody()).isEqualTo(content);
+	}
+
+	@Test
+	void downloadWithAWrongKeyIsForbidden() {
+		Map<?, ?> uploaded = upload("download-forbidden", "forbidden.bin", randomBytes(100));
+
+		ResponseEntity<byte[]> response = restTemplate.getForEntity("/api/files/download/{id}?key={key}&userId={userId}",
+				byte[].class, uploaded.get("id"), "WRONG", "download-forbidden");
+
+		assertThat(response.getStatusCode()).isEqualTo(HttpStatus.FORBIDDEN);
+	}
+
+	private ResponseEntity<byte[]> download(Map<?, ?> uploaded, String userId, String range) {
+		HttpHeaders headers = new HttpHeaders();
+		if (range != null) {
+			headers.set(HttpHeaders.RANGE, range);
+		}
+		return restTemplate.exchange("/api/files/download/{id}?key={key}&userId={userId}", HttpMethod.GET,
+				new HttpEntity<>(headers), byte[].class, uploaded.get("id"), uploaded.get("downloadKey"), userId);
+	}
+
+	private ResponseEntity<List> list(String userId, String ifNoneMatch) {
+		HttpHeaders headers = new HttpHeaders();
+		if (ifNoneMatch != null) {
+			headers.setIfNoneMatch(ifNoneMatch);
+		}
+		return restTemplate.exchange("/api/files/user/{userId}", HttpMethod.GET, new HttpEntity<>(headers), List.class, userId);
+	}
+
+	private Map<?, ?> upload(String userId, String name) {
+		return upload(userId, name, ("content of " + name).getBytes(StandardCharsets.UTF_8));
+	}
+
+	private Map<?, ?> upload(String userId, String name, byte[] content) {
+		MultiValueMap<String, Object> body = new LinkedMultiValueMap<>();
+		body.add("file", new ByteArrayResource(content) {
+			@Override
+			public String getFilename() {
+				return name;
+			}
+		});
+		ResponseEntity<Map> response = restTemplate.postForEntity("/api/files/upload?userId={userId}", body, Map.class, userId);
+		assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+		return response.getBody();
+	}
+
+	/**
+	 * Random, so incompressible content that is stored seekable
+	 */
+	private static byte[] randomBytes(int length) {
+		byte[] content = new byte[length];
+		new Random(length).nextBytes(content);
+		return content;
+	}
+}
@@ -0,0 +1,79 @@
+package com.filesystem.secure.controller;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.util.LinkedMultiValueMap;
+import org.springframework.util.MultiValueMap;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+		properties = "limits.storage-quota=1MB")
+class UploadAdmissionInterceptorTests {
+
+	private static final String BOUNDARY = "admission-test-boundary";
+
+	@LocalServerPort
+	private int port;
+
+	@Autowired
+	private TestRestTemplate restTemplate;
+
+	@Test
+	void overQuotaUploadIsRejectedBeforeItsBodyIsRead() throws Exception {
+		try (Socket socket = new Socket("localhost", port)) {
+			// Fails the test instead of hanging if the server waits for the rest of the body
+			socket.setSoTimeout(10_000);
+			OutputStream out = socket.getOutputStream();
+			String head = "POST /api/files/upload?userId=over-quota HTTP/1.1\r\n"
+					+ "Host: localhost\r\n"
+					+ "Content-Type: multipart/form-data; boundary=" + BOUNDARY + "\r\n"
+					+ "Content-Length: " + (64L << 20) + "\r\n"
+					+ "\r\n"
+					+ "--" + BOUNDARY + "\r\n"
+					+ "Content-Disposition: form-data; name=\"file\"; filename=\"big.bin\"\r\n"
+					+ "Content-Type: application/octet-stream\r\n"
+					+ "\r\n";
+			out.write(head.getBytes(StandardCharsets.US_ASCII));
+			byte[] start = new byte[1024];
+			Arrays.fill(start, (byte) 'x');
+			out.write(start);
+			out.flush();
+
+			String statusLine = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.US_ASCII))
+					.readLine();
+			assertThat(statusLine).isEqualTo("HTTP/1.1 413 ");
+		}
+	}
+
+	@Test
+	void uploadWithinQuotaIsAdmitted() {
+		MultiValueMap<String, Object> body = new LinkedMultiValueMap<>();
+		body.add("file", new ByteArrayResource("small".getBytes(StandardCharsets.UTF_8)) {
+			@Override
+			public String getFilename() {
+				return "small.txt";
+			}
+		});
+
+		ResponseEntity<Map> response = restTemplate.postForEntity(
+				"/api/files/upload?userId={userId}", body, Map.class, "within-quota");
+
+		assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+		assertThat(response.getBody()).containsEntry("size", 5);
+	}
+}
@@ -0,0 +1,39 @@
+package com.filesystem.secure.keys;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermissions;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+class LocalKeyEncryptionKeyStoreTests {
+
+	@Test
+	void keyFilesAreOwnerOnly(@TempDir Path root) throws Exception {
+		assumeTrue(FileSystems.getDefault().supportedFileAttributeViews().contains("posix"));
+		LocalKeyEncryptionKeyStore store = new LocalKeyEncryptionKeyStore(root.toString());
+		int version = store.rotate();
+
+		for (int v = 1; v <= version; v++) {
+			assertThat(PosixFilePermissions.toString(Files.getPosixFilePermissions(root.resolve("kek-" + v + ".key"))))
+					.isEqualTo("rw-------");
+		}
+		assertThat(root.resolve("kek-" + version + ".key.tmp")).doesNotExist();
+	}
+
+	@Test
+	void rotatedKeysAreReadBack(@TempDir Path root) throws Exception {
+		LocalKeyEncryptionKeyStore store = new LocalKeyEncryptionKeyStore(root.toString());
+		int version = store.rotate();
+
+		LocalKeyEncryptionKeyStore reloaded = new LocalKeyEncryptionKeyStore(root.toString());
+		assertThat(reloaded.getCurrentVersion()).isEqualTo(version);
+		assertThat(reloaded.getKey(version).getEncoded()).isEqualTo(store.getKey(version).getEncoded());
+		assertThat(reloaded.getKey(1).getEncoded()).isEqualTo(store.getKey(1).getEncoded());
+	}
+}
@@ -0,0 +1,138 @@
+package com.filesystem.secure.repository;
+
+import com.filesystem.secure.model.FileSummary;
+import com.filesystem.secure.model.SecureFile;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest
+class SecureFileRepositoryTests {
+
+	@Autowired
+	private SecureFileRepository fileRepository;
+
+	@Autowired
+	private TransactionTemplate transactionTemplate;
+
+	@Test
+	void expiredFilesAreNotListed() {
+		String userId = "repository-expiry";
+		LocalDateTime now = LocalDateTime.now();
+		SecureFile kept = fileRepository.save(file(userId, "kept.txt", now, null));
+		SecureFile later = fileRepository.save(file(userId, "later.txt", now, now.plusDays(1)));
+		fileRepository.save(file(userId, "expired.txt", now, now.minusSeconds(1)));
+
+		assertThat(fileRepository.findSummaries(FileQuery.builder().userId(userId).limit(10).build()))
+				.extracting(FileSummary::getId)
+				.containsExactlyInAnyOrder(kept.getId(), later.getId());
+		assertThat(fileRepository.findSummariesByUserId(userId, now))
+				.extracting(FileSummary::getId)
+				.containsExactlyInAnyOrder(kept.getId(), later.getId());
+	}
+
+	@Test
+	void filesUploadedAtTheSameTimeArePagedByDescendingId() {
+		String userId = "repository-keyset";
+		// Whole seconds, so the cursor matches the stored value exactly
+		LocalDateTime uploadDate = LocalDateTime.of(2024, 1, 1, 12, 0);
+		List<Long> ids = new ArrayList<>();
+		for (int i = 0; i < 5; i++) {
+			ids.add(fileRepository.save(file(userId, "same-" + i + ".txt", uploadDate, null)).getId());
+		}
+		SecureFile newer = fileRepository.save(file(userId, "newer.txt", uploadDate.plusSeconds(1), null));
+		ids.sort(Comparator.reverseOrder());
+
+		List<Long> paged = new ArrayList<>();
+		FileQuery.FileQueryBuilder query = FileQuery.builder().userId(userId).limit(2);
+		List<FileSummary> page;
+		do {
+			page = fileRepository.findSummaries(query.build());
+			page.forEach(summary -> paged.add(summary.getId()));
+			if (!page.isEmpty()) {
+				FileSummary last = page.get(page.size() - 1);
+				query.afterUploadDate(last.getUploadDate()).afterId(last.getId());
+			}
+		} while (page.size() == 2);
+
+		List<Long> expected = new ArrayList<>(List.of(newer.getId()));
+		expected.addAll(ids);
+		assertThat(paged).containsExactlyElementsOf(expected);
+	}
+
+	@Test
+	void namePrefixMatchesWildcardCharactersLiterally() {
+		String userId = "repository-like";
+		LocalDateTime now = LocalDateTime.now();
+		SecureFile percent = fileRepository.save(file(userId, "100%_done.txt", now, null));
+		fileRepository.save(file(userId, "100abc.txt", now, null));
+		SecureFile underscore = fileRepository.save(file(userId, "a_b.txt", now, null));
+		fileRepository.save(file(userId, "axb.txt", now, null));
+		SecureFile backslash = fileRepository.save(file(userId, "back\\slash.txt", now, null));
+		fileRepository.save(file(userId, "backslash.txt", now, null));
+
+		assertThat(namesWithPrefix(userId, "100%")).containsExactly(percent.getId());
+		assertThat(namesWithPrefix(userId, "a_")).containsExactly(underscore.getId());
+		assertThat(namesWithPrefix(userId, "back\\")).containsExactly(backslash.getId());
+	}
+
+	@Test
+	void batchInsertSetsTheGeneratedIds() {
+		String userId = "repository-insert";
+		LocalDateTime now = LocalDateTime.now();
+		List<SecureFile> files = List.of(file(userId, "one.txt", now, null), file(userId, "two.txt", now, null),
+				file(userId, "three.txt", now, null));
+
+		transactionTemplate.executeWithoutResult(status -> fileRepository.insertAll(files));
+
+		assertThat(files).extracting(SecureFile::getId).doesNotContainNull().doesNotHaveDuplicates();
+		assertThat(files).allSatisfy(file ->
+				assertThat(fileRepository.findById(file.getId()).orElseThrow().getOriginalFileName())
+						.isEqualTo(file.getOriginalFileName()));
+	}
+
+	@Test
+	void batchDeleteReportsWhichFilesItRemoved() {
+		String userId = "repository-delete";
+		LocalDateTime now = LocalDateTime.now();
+		SecureFile first = fileRepository.save(file(userId, "first.txt", now, null));
+		SecureFile second = fileRepository.save(file(userId, "second.txt", now, null));
+		fileRepository.deleteById(second.getId());
+		SecureFile third = fileRepository.save(file(userId, "third.txt", now, null));
+
+		int[] counts = transactionTemplate.execute(status ->
+				fileRepository.deleteAllByIds(List.of(first.getId(), second.getId(), third.getId())));
+
+		// H2 reports a count for every statement, rather than SUCCESS_NO_INFO
+		assertThat(counts).containsExactly(1, 0, 1);
+		assertThat(fileRepository.existsById(first.getId())).isFalse();
+		assertThat(fileRepository.existsById(third.getId())).isFalse();
+	}
+
+	private List<Long> namesWithPrefix(String userId, String prefix) {
+		return fileRepository.findSummaries(FileQuery.builder().userId(userId).namePrefix(prefix).limit(10).build())
+				.stream()
+				.map(FileSummary::getId)
+				.toList();
+	}
+
+	private static SecureFile file(String userId, String name, LocalDateTime uploadDate, LocalDateTime expiresAt) {
+		return SecureFile.builder()
+				.fileName(name)
+				.originalFileName(name)
+				.contentType("text/plain")
+				.fileSize(10L)
+				.uploadDate(uploadDate)
+				.expiresAt(expiresAt)
+				.userId(userId)
+				.build();
+	}
+}
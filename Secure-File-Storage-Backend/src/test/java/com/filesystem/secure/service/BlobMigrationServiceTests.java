@@ -0,0 +1,56 @@
+package com.filesystem.secure.service;
+
+import com.filesystem.secure.model.SecureFile;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.mock.web.MockMultipartFile;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest
+class BlobMigrationServiceTests {
+
+	private static final String USER_ID = "blob-migration-tests";
+
+	@Autowired
+	private BlobMigrationService migration;
+
+	@Autowired
+	private FileService fileService;
+
+	@Autowired
+	private EncryptionService encryptionService;
+
+	@Autowired
+	private JdbcTemplate jdbcTemplate;
+
+	@Test
+	void lobContentIsMovedIntoTheBlobStore() throws Exception {
+		SecureFile file = fileService.uploadFile(new MockMultipartFile("file", "lob.txt", "text/plain",
+				"replaced".getBytes(StandardCharsets.UTF_8)), USER_ID);
+		byte[] content = "content from before the blob store".getBytes(StandardCharsets.UTF_8);
+		EncryptionService.EncryptionResult encrypted = encryptionService.encrypt(content);
+		jdbcTemplate.update("update secure_files set encrypted_data = ?, encryption_iv = ?, file_size = ?, blob_id = null, "
+						+ "cipher_digest = null, segment_size = null, wrapped_data_key = null, key_version = null, "
+						+ "compression_codec = null where id = ?",
+				encrypted.getEncryptedData(), encrypted.getIv(), content.length, file.getId());
+
+		assertThat(migration.migrate(file.getId())).isEqualTo(2L * encrypted.getEncryptedData().length);
+		assertThat(migration.migrate(file.getId())).isZero();
+
+		Map<String, Object> row = jdbcTemplate.queryForMap(
+				"select blob_id, cipher_digest, encrypted_data from secure_files where id = ?", file.getId());
+		assertThat(row.get("blob_id")).isNotNull();
+		assertThat(row.get("cipher_digest")).isNotNull();
+		assertThat(row.get("encrypted_data")).isNull();
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		fileService.openDownload(file.getId(), file.getDownloadKey(), USER_ID).writeTo(out);
+		assertThat(out.toByteArray()).isEqualTo(content);
+	}
+}
@@ -0,0 +1,116 @@
+package com.filesystem.secure.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import javax.crypto.SecretKey;
+import javax.crypto.spec.SecretKeySpec;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.zip.Deflater;
+import java.util.zip.InflaterOutputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class CompressionServiceTests {
+
+	private static final int SEGMENT_SIZE = 1024;
+	private static final SecretKey KEY = new SecretKeySpec(randomBytes(32), "AES");
+	private static final byte[] TEXT = "a line of text that repeats\n".repeat(4000).getBytes(StandardCharsets.UTF_8);
+
+	private CompressionService compressionService;
+	private EncryptionService encryptionService;
+
+	@BeforeEach
+	void setUp() {
+		compressionService = new CompressionService();
+		ReflectionTestUtils.setField(compressionService, "enabled", true);
+		ReflectionTestUtils.setField(compressionService, "level", 1);
+		ReflectionTestUtils.setField(compressionService, "maxRatio", 0.9);
+		encryptionService = new EncryptionService();
+		ReflectionTestUtils.setField(encryptionService, "secretKey", "testSecretKey12345678901234567890123");
+		ReflectionTestUtils.setField(encryptionService, "segmentSize", SEGMENT_SIZE);
+	}
+
+	@ParameterizedTest
+	@ValueSource(strings = {"text/plain", "application/json; charset=UTF-8", "image/svg+xml", "audio/wav"})
+	void compressibleContentIsDeflated(String contentType) throws Exception {
+		assertThat(compressionService.selectCodec(contentType, sample(TEXT))).isEqualTo(CompressionService.DEFLATE);
+	}
+
+	@ParameterizedTest
+	@ValueSource(strings = {"application/zip", "image/png", "video/mp4", "APPLICATION/GZIP",
+			"application/vnd.openxmlformats-officedocument.wordprocessingml.document"})
+	void compressedFormatsAreSkippedByContentType(String contentType) throws Exception {
+		// Even though this content would compress well
+		assertThat(compressionService.selectCodec(contentType, sample(TEXT))).isNull();
+	}
+
+	@Test
+	void incompressibleContentIsStoredAsIs() throws Exception {
+		assertThat(compressionService.selectCodec("application/octet-stream", sample(randomBytes(100_000)))).isNull();
+		assertThat(compressionService.selectCodec("text/plain", sample(new byte[0]))).isNull();
+	}
+
+	@Test
+	void disabledCompressionSelectsNoCodec() throws Exception {
+		ReflectionTestUtils.setField(compressionService, "enabled", false);
+
+		assertThat(compressionService.selectCodec("text/plain", sample(TEXT))).isNull();
+	}
+
+	@Test
+	void samplingLeavesTheStreamAtItsStart() throws Exception {
+		InputStream in = sample(TEXT);
+
+		compressionService.selectCodec("text/plain", in);
+
+		assertThat(in.readAllBytes()).isEqualTo(TEXT);
+	}
+
+	@Test
+	void compressedContentSurvivesEncryptionRoundTrip() throws Exception {
+		ByteArrayOutputStream encrypted = new ByteArrayOutputStream();
+		Deflater deflater = compressionService.newDeflater();
+		EncryptionService.StreamEncryptionResult result;
+		try (InputStream compressed = compressionService.compress(CompressionService.DEFLATE, new ByteArrayInputStream(TEXT),
+				deflater)) {
+			result = encryptionService.encrypt(KEY, compressed, encrypted);
+		} finally {
+			deflater.end();
+		}
+		assertThat(result.getPlainLength()).isLessThan(TEXT.length / 10);
+
+		ByteArrayOutputStream decrypted = new ByteArrayOutputStream();
+		InflaterOutputStream inflating = CompressionService.decompress(CompressionService.DEFLATE, decrypted);
+		encryptionService.decrypt(KEY, new ByteArrayInputStream(encrypted.toByteArray()), inflating, result.getIv(), SEGMENT_SIZE);
+		inflating.finish();
+
+		assertThat(decrypted.toByteArray()).isEqualTo(TEXT);
+	}
+
+	@Test
+	void unknownCodecIsRejected() {
+		assertThatThrownBy(() -> CompressionService.decompress("zstd", new ByteArrayOutputStream()))
+				.isInstanceOf(IllegalArgumentException.class);
+	}
+
+	private InputStream sample(byte[] content) {
+		return new BufferedInputStream(new ByteArrayInputStream(content), compressionService.getSampleSize());
+	}
+
+	private static byte[] randomBytes(int length) {
+		byte[] bytes = new byte[length];
+		new Random(length).nextBytes(bytes);
+		return bytes;
+	}
+}
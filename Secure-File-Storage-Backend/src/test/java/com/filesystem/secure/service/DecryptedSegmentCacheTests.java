@@ -0,0 +1,52 @@
+package com.filesystem.secure.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.util.unit.DataSize;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class DecryptedSegmentCacheTests {
+
+	private final DecryptedSegmentCache cache = new DecryptedSegmentCache(true, DataSize.ofMegabytes(1),
+			Duration.ofMinutes(5), new SimpleMeterRegistry());
+	private final byte[] buffer = new byte[64];
+
+	@Test
+	void cachedSegmentIsNotDecryptedAgain() throws Exception {
+		AtomicInteger loads = new AtomicInteger();
+
+		assertThat(read("blob-a", 0, loads, 0, -1)).isEqualTo("segment blob-a/0");
+		assertThat(read("blob-a", 0, loads, 8, 14)).isEqualTo("blob-a");
+		assertThat(loads).hasValue(1);
+	}
+
+	@Test
+	void invalidationDropsOnlyTheSegmentsOfThatBlob() throws Exception {
+		AtomicInteger loads = new AtomicInteger();
+		read("blob-a", 0, loads, 0, -1);
+		read("blob-a", 1, loads, 0, -1);
+		read("blob-b", 0, loads, 0, -1);
+
+		cache.invalidate("blob-a");
+
+		assertThat(read("blob-b", 0, loads, 0, -1)).isEqualTo("segment blob-b/0");
+		assertThat(loads).hasValue(3);
+		assertThat(read("blob-a", 1, loads, 0, -1)).isEqualTo("segment blob-a/1");
+		assertThat(loads).hasValue(4);
+	}
+
+	private String read(String blobId, int segmentIndex, AtomicInteger loads, int from, int to) throws Exception {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		cache.writeSegment(blobId, segmentIndex, () -> {
+			loads.incrementAndGet();
+			return ("segment " + blobId + "/" + segmentIndex).getBytes(StandardCharsets.UTF_8);
+		}, out, from, to, buffer);
+		return out.toString(StandardCharsets.UTF_8);
+	}
+}
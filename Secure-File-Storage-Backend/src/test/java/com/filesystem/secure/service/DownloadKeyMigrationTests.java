@@ -0,0 +1,48 @@
+package com.filesystem.secure.service;
+
+import com.filesystem.secure.model.SecureFile;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.mock.web.MockMultipartFile;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest
+class DownloadKeyMigrationTests {
+
+	private static final String USER_ID = "download-key-migration-tests";
+
+	@Autowired
+	private DownloadKeyMigration migration;
+
+	@Autowired
+	private FileService fileService;
+
+	@Autowired
+	private EncryptionService encryptionService;
+
+	@Autowired
+	private JdbcTemplate jdbcTemplate;
+
+	@Test
+	void plaintextKeyIsReplacedWithItsHash() throws Exception {
+		SecureFile file = fileService.uploadFile(new MockMultipartFile("file", "plain-key.txt", "text/plain",
+				"plain key".getBytes(StandardCharsets.UTF_8)), USER_ID);
+		jdbcTemplate.update("update secure_files set download_key = ?, download_key_hash = null where id = ?",
+				"PLAIN1", file.getId());
+		assertThat(migration.countPending()).isPositive();
+
+		migration.migrate(file.getId());
+
+		Map<String, Object> row = jdbcTemplate.queryForMap(
+				"select download_key, download_key_hash from secure_files where id = ?", file.getId());
+		assertThat(row.get("download_key")).isNull();
+		assertThat(row.get("download_key_hash")).isEqualTo(encryptionService.hashDownloadKey("PLAIN1"));
+		assertThat(fileService.getFileAccess(file.getId(), "PLAIN1").getId()).isEqualTo(file.getId());
+	}
+}
@@ -0,0 +1,206 @@
+package com.filesystem.secure.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class EncryptionServiceTests {
+
+	private static final int SEGMENT_SIZE = 1024;
+	private static final SecretKey KEY = new SecretKeySpec(randomBytes(32), "AES");
+
+	private EncryptionService encryptionService;
+
+	@BeforeEach
+	void setUp() {
+		encryptionService = new EncryptionService();
+		ReflectionTestUtils.setField(encryptionService, "secretKey", "testSecretKey12345678901234567890123");
+		ReflectionTestUtils.setField(encryptionService, "segmentSize", SEGMENT_SIZE);
+	}
+
+	@ParameterizedTest
+	@ValueSource(ints = {0, 1, SEGMENT_SIZE - 1, SEGMENT_SIZE, SEGMENT_SIZE + 1, 3 * SEGMENT_SIZE, 5000})
+	void segmentedRoundTrip(int length) throws Exception {
+		byte[] plain = randomBytes(length);
+
+		ByteArrayOutputStream encrypted = new ByteArrayOutputStream();
+		EncryptionService.StreamEncryptionResult result = encryptionService.encrypt(KEY, new ByteArrayInputStream(plain), encrypted);
+
+		assertThat(result.getPlainLength()).isEqualTo(length);
+		assertThat(result.getEncryptedLength()).isEqualTo(encrypted.size());
+		assertThat(EncryptionService.encryptedLength(length, SEGMENT_SIZE)).isEqualTo(encrypted.size());
+
+		ByteArrayOutputStream decrypted = new ByteArrayOutputStream();
+		encryptionService.decrypt(KEY, new ByteArrayInputStream(encrypted.toByteArray()), decrypted, result.getIv(), SEGMENT_SIZE);
+		assertThat(decrypted.toByteArray()).isEqualTo(plain);
+	}
+
+	@ParameterizedTest
+	@CsvSource({"0,0", "0,4999", "1023,1024", "1500,2600", "4096,4999"})
+	void rangeDecryptionReadsOnlyRequestedBytes(long start, long end, @TempDir Path tempDir) throws Exception {
+		byte[] plain = randomBytes(5000);
+		Path encryptedFile = tempDir.resolve("blob");
+		EncryptionService.StreamEncryptionResult result;
+		try (OutputStream out = Files.newOutputStream(encryptedFile)) {
+			result = encryptionService.encrypt(KEY, new ByteArrayInputStream(plain), out);
+		}
+
+		ByteArrayOutputStream decrypted = new ByteArrayOutputStream();
+		try (SeekableByteChannel channel = Files.newByteChannel(encryptedFile)) {
+			encryptionService.decryptRange(KEY, channel, decrypted, result.getIv(), SEGMENT_SIZE, start, end);
+		}
+		assertThat(decrypted.toByteArray()).isEqualTo(Arrays.copyOfRange(plain, (int) start, (int) end + 1));
+	}
+
+	@Test
+	void separatelyEncryptedPartsDecryptAsOneStream() throws Exception {
+		byte[] plain = randomBytes(5 * SEGMENT_SIZE + 100);
+		String iv = encryptionService.generateIv();
+		int partSize = 2 * SEGMENT_SIZE;
+
+		// Encrypt the parts out of order into their own regions, as chunked uploads do
+		byte[] encrypted = new byte[(int) EncryptionService.encryptedLength(plain.length, SEGMENT_SIZE)];
+		for (int part : new int[] {2, 0, 1}) {
+			int from = part * partSize;
+			int to = Math.min(plain.length, from + partSize);
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			encryptionService.encryptSegments(KEY, new ByteArrayInputStream(plain, from, to - from), out, iv, SEGMENT_SIZE,
+					part * (partSize / SEGMENT_SIZE), to == plain.length);
+			System.arraycopy(out.toByteArray(), 0, encrypted,
+					(int) EncryptionService.segmentOffset(part * (partSize / SEGMENT_SIZE), SEGMENT_SIZE), out.size());
+		}
+
+		ByteArrayOutputStream decrypted = new ByteArrayOutputStream();
+		encryptionService.decrypt(KEY, new ByteArrayInputStream(encrypted), decrypted, iv, SEGMENT_SIZE);
+		assertThat(decrypted.toByteArray()).isEqualTo(plain);
+	}
+
+	@ParameterizedTest
+	@ValueSource(ints = {0, SEGMENT_SIZE, 3 * SEGMENT_SIZE, 17 * SEGMENT_SIZE + 5})
+	void parallelSegmentsMatchSequentialOutput(int length) throws Exception {
+		byte[] plain = randomBytes(length);
+		String iv = encryptionService.generateIv();
+		byte[] sequential = encryptSequentially(plain, iv);
+
+		CryptoExecutor executor = new CryptoExecutor(4, new SimpleMeterRegistry());
+		try {
+			ReflectionTestUtils.setField(encryptionService, "cryptoExecutor", executor);
+			ReflectionTestUtils.setField(encryptionService, "parallelism", 3);
+
+			ByteArrayOutputStream parallel = new ByteArrayOutputStream();
+			EncryptionService.StreamEncryptionResult result = encryptionService.encryptSegments(
+					KEY, new ByteArrayInputStream(plain), parallel, iv, SEGMENT_SIZE, 0, true);
+			assertThat(parallel.toByteArray()).isEqualTo(sequential);
+			assertThat(result.getPlainLength()).isEqualTo(length);
+			assertThat(result.getEncryptedLength()).isEqualTo(sequential.length);
+
+			ByteArrayOutputStream decrypted = new ByteArrayOutputStream();
+			encryptionService.decrypt(KEY, new ByteArrayInputStream(parallel.toByteArray()), decrypted, iv, SEGMENT_SIZE);
+			assertThat(decrypted.toByteArray()).isEqualTo(plain);
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	@Test
+	void parallelDecryptionRejectsReorderedSegments() throws Exception {
+		ByteArrayOutputStream encrypted = new ByteArrayOutputStream();
+		EncryptionService.StreamEncryptionResult result = encryptionService.encrypt(
+				KEY, new ByteArrayInputStream(randomBytes(8 * SEGMENT_SIZE)), encrypted);
+		byte[] reordered = encrypted.toByteArray();
+		int segment = SEGMENT_SIZE + 16;
+		byte[] fifth = Arrays.copyOfRange(reordered, 4 * segment, 5 * segment);
+		System.arraycopy(reordered, 5 * segment, reordered, 4 * segment, segment);
+		System.arraycopy(fifth, 0, reordered, 5 * segment, segment);
+
+		CryptoExecutor executor = new CryptoExecutor(4, new SimpleMeterRegistry());
+		try {
+			ReflectionTestUtils.setField(encryptionService, "cryptoExecutor", executor);
+			ReflectionTestUtils.setField(encryptionService, "parallelism", 4);
+
+			assertThatThrownBy(() -> encryptionService.decrypt(
+					KEY, new ByteArrayInputStream(reordered), new ByteArrayOutputStream(), result.getIv(), SEGMENT_SIZE))
+					.isInstanceOf(javax.crypto.AEADBadTagException.class);
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	@Test
+	void truncatedCiphertextIsRejected() throws Exception {
+		ByteArrayOutputStream encrypted = new ByteArrayOutputStream();
+		EncryptionService.StreamEncryptionResult result = encryptionService.encrypt(
+				KEY, new ByteArrayInputStream(randomBytes(3 * SEGMENT_SIZE)), encrypted);
+
+		// Drop the final segment so the remaining ciphertext ends on a segment boundary
+		byte[] truncated = Arrays.copyOf(encrypted.toByteArray(), 2 * (SEGMENT_SIZE + 16));
+
+		assertThatThrownBy(() -> encryptionService.decrypt(
+				KEY, new ByteArrayInputStream(truncated), new ByteArrayOutputStream(), result.getIv(), SEGMENT_SIZE))
+				.isInstanceOf(javax.crypto.AEADBadTagException.class);
+	}
+
+	@Test
+	void contentHashIsScopedToTheUser() throws Exception {
+		byte[] content = randomBytes(2048);
+
+		assertThat(contentHash("alice", content)).isEqualTo(contentHash("alice", content));
+		assertThat(contentHash("alice", content)).isNotEqualTo(contentHash("bob", content));
+		assertThat(contentHash("alice", content)).isNotEqualTo(contentHash("alice", randomBytes(2047)));
+	}
+
+	/**
+	 * Encrypts one segment after another with a plain cipher, deriving each segment's nonce
+	 * and associated data the way the segmented format defines them
+	 */
+	private static byte[] encryptSequentially(byte[] plain, String ivBase64) throws Exception {
+		byte[] baseIv = Base64.getDecoder().decode(ivBase64);
+		int segments = Math.max(1, (plain.length + SEGMENT_SIZE - 1) / SEGMENT_SIZE);
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		for (int index = 0; index < segments; index++) {
+			byte[] nonce = baseIv.clone();
+			ByteBuffer counter = ByteBuffer.wrap(nonce);
+			counter.putInt(nonce.length - 4, counter.getInt(nonce.length - 4) ^ index);
+			Cipher cipher = Cipher.getInstance("AES/GCM/NoPadding");
+			cipher.init(Cipher.ENCRYPT_MODE, KEY, new GCMParameterSpec(128, nonce));
+			cipher.updateAAD(ByteBuffer.allocate(5).putInt(index).put((byte) (index == segments - 1 ? 1 : 0)).array());
+			int from = index * SEGMENT_SIZE;
+			out.write(cipher.doFinal(plain, from, Math.min(SEGMENT_SIZE, plain.length - from)));
+		}
+		return out.toByteArray();
+	}
+
+	private String contentHash(String userId, byte[] content) throws Exception {
+		return java.util.HexFormat.of().formatHex(encryptionService.contentMac(userId).doFinal(content));
+	}
+
+	private static byte[] randomBytes(int length) {
+		byte[] bytes = new byte[length];
+		new Random(length).nextBytes(bytes);
+		return bytes;
+	}
+}
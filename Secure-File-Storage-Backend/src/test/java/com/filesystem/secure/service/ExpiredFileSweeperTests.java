@@ -0,0 +1,137 @@
+package com.filesystem.secure.service;
+
+import com.filesystem.secure.model.SecureFile;
+import com.filesystem.secure.repository.SecureFileRepository;
+import com.filesystem.secure.storage.BlobStore;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.mock.web.MockMultipartFile;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.function.BooleanSupplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// A database of its own, so no other test context's sweeper deletes these files; sweeps only run when requested
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = {
+		"spring.datasource.url=jdbc:h2:mem:sweeper-tests;DB_CLOSE_DELAY=-1;DB_CLOSE_ON_EXIT=FALSE",
+		"expiry.batch-size=2",
+		"expiry.sweep-interval=PT1H"
+})
+class ExpiredFileSweeperTests {
+
+	@Autowired
+	private ExpiredFileSweeper sweeper;
+
+	@Autowired
+	private FileService fileService;
+
+	@Autowired
+	private SecureFileRepository fileRepository;
+
+	@Autowired
+	private BlobStore blobStore;
+
+	@Autowired
+	private JdbcTemplate jdbcTemplate;
+
+	@Autowired
+	private MeterRegistry registry;
+
+	@Autowired
+	private TestRestTemplate restTemplate;
+
+	@Test
+	void sweepDeletesExpiredFilesAcrossBatches() throws Exception {
+		String userId = "sweeper-batches";
+		List<SecureFile> expired = new ArrayList<>();
+		for (int i = 0; i < 5; i++) {
+			expired.add(upload(userId, "expired-" + i + ".bin"));
+		}
+		SecureFile kept = upload(userId, "kept.bin");
+		expired.forEach(file -> jdbcTemplate.update("update secure_files set expires_at = ? where id = ?",
+				LocalDateTime.now().minusMinutes(1), file.getId()));
+		double countedBefore = registry.counter("files.expired").count();
+
+		sweeper.requestSweep();
+
+		// Five files in batches of two, so one sweep has to go through three batches. A batch is
+		// counted only after its rows and blobs are gone, so the count tells when the sweep is done.
+		await(() -> registry.counter("files.expired").count() >= countedBefore + 5);
+		assertThat(expired).allSatisfy(file -> assertThat(fileRepository.existsById(file.getId())).isFalse());
+		assertThat(expired).allSatisfy(file -> assertThat(blobStore.exists(file.getBlobId())).isFalse());
+		assertThat(fileRepository.existsById(kept.getId())).isTrue();
+		assertThat(blobStore.exists(kept.getBlobId())).isTrue();
+		assertThat(registry.counter("files.expired").count()).isEqualTo(countedBefore + 5);
+	}
+
+	@Test
+	void bulkDeleteIsAcceptedAndSweptInTheBackground() throws Exception {
+		String userId = "sweeper-bulk-delete";
+		SecureFile first = upload(userId, "first.bin");
+		SecureFile second = upload(userId, "second.bin");
+		double countedBefore = registry.counter("files.expired").count();
+
+		ResponseEntity<Void> response = deleteFiles(userId, first, first.getDownloadKey(), second, second.getDownloadKey());
+
+		assertThat(response.getStatusCode()).isEqualTo(HttpStatus.ACCEPTED);
+		// Hidden at once, even before the sweep has run
+		assertThat(fileService.getFilesByUserId(userId)).isEmpty();
+		await(() -> registry.counter("files.expired").count() >= countedBefore + 2);
+		assertThat(fileRepository.existsById(first.getId())).isFalse();
+		assertThat(fileRepository.existsById(second.getId())).isFalse();
+		assertThat(blobStore.exists(first.getBlobId())).isFalse();
+		assertThat(blobStore.exists(second.getBlobId())).isFalse();
+	}
+
+	@Test
+	void bulkDeleteWithAWrongKeyDeletesNothing() throws Exception {
+		String userId = "sweeper-wrong-key";
+		SecureFile first = upload(userId, "first.bin");
+		SecureFile second = upload(userId, "second.bin");
+
+		ResponseEntity<Void> response = deleteFiles(userId, first, first.getDownloadKey(), second, "WRONG");
+
+		assertThat(response.getStatusCode()).isEqualTo(HttpStatus.FORBIDDEN);
+		assertThat(fileService.getFilesByUserId(userId)).hasSize(2);
+	}
+
+	// Variables by name, as repeated query parameters are grouped before positional ones would be expanded
+	private ResponseEntity<Void> deleteFiles(String userId, SecureFile first, String firstKey, SecureFile second,
+			String secondKey) {
+		return restTemplate.exchange("/api/files?id={first}&key={firstKey}&id={second}&key={secondKey}&userId={userId}",
+				HttpMethod.DELETE, null, Void.class, Map.of("first", first.getId(), "firstKey", firstKey,
+						"second", second.getId(), "secondKey", secondKey, "userId", userId));
+	}
+
+	private static void await(BooleanSupplier condition) throws InterruptedException {
+		long deadline = System.nanoTime() + Duration.ofSeconds(10).toNanos();
+		while (!condition.getAsBoolean()) {
+			if (System.nanoTime() > deadline) {
+				throw new AssertionError("Sweep did not finish");
+			}
+			Thread.sleep(20);
+		}
+	}
+
+	/**
+	 * Uploads content of its own, as blobs are shared by identical content
+	 */
+	private SecureFile upload(String userId, String name) throws Exception {
+		byte[] content = new byte[1024];
+		new Random().nextBytes(content);
+		return fileService.uploadFile(new MockMultipartFile("file", name, "application/octet-stream", content), userId);
+	}
+}
@@ -0,0 +1,82 @@
+package com.filesystem.secure.service;
+
+import com.filesystem.secure.model.FileSummary;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class FileListingCacheTests {
+
+	private final FileListingCache cache = new FileListingCache(true, 100, Duration.ofMinutes(10), new SimpleMeterRegistry());
+
+	@Test
+	void unchangedListingKeepsItsETagAndIsNotQueriedAgain() {
+		AtomicInteger loads = new AtomicInteger();
+		String eTag = cache.getETag("user-a");
+
+		assertThat(cache.get("user-a", loader(loads, summary(1L, null)))).extracting(FileSummary::getId).containsExactly(1L);
+		assertThat(cache.get("user-a", loader(loads, summary(2L, null)))).extracting(FileSummary::getId).containsExactly(1L);
+		assertThat(cache.getETag("user-a")).isEqualTo(eTag);
+		assertThat(loads).hasValue(1);
+	}
+
+	@Test
+	void invalidationChangesOnlyThatUsersETag() {
+		AtomicInteger loads = new AtomicInteger();
+		String eTagA = cache.getETag("user-a");
+		String eTagB = cache.getETag("user-b");
+		cache.get("user-a", loader(loads, summary(1L, null)));
+
+		cache.invalidate("user-a");
+
+		assertThat(cache.getETag("user-a")).isNotEqualTo(eTagA);
+		assertThat(cache.getETag("user-b")).isEqualTo(eTagB);
+		assertThat(cache.get("user-a", loader(loads, summary(2L, null)))).extracting(FileSummary::getId).containsExactly(2L);
+		assertThat(loads).hasValue(2);
+	}
+
+	@Test
+	void listingGetsANewVersionOnceAFileExpires() throws Exception {
+		AtomicInteger loads = new AtomicInteger();
+		cache.get("user-a", loader(loads, summary(1L, LocalDateTime.now().plusNanos(200_000_000)), summary(2L, null)));
+		String eTag = cache.getETag("user-a");
+
+		Thread.sleep(300);
+
+		String expiredETag = cache.getETag("user-a");
+		assertThat(expiredETag).isNotEqualTo(eTag);
+		assertThat(cache.get("user-a", loader(loads, summary(2L, null)))).extracting(FileSummary::getId).containsExactly(2L);
+		// Nothing left to expire, so the reloaded listing keeps its version
+		assertThat(cache.getETag("user-a")).isEqualTo(expiredETag);
+		assertThat(loads).hasValue(2);
+	}
+
+	@Test
+	void disabledCacheHasNoETagAndAlwaysQueries() {
+		FileListingCache disabled = new FileListingCache(false, 100, Duration.ofMinutes(10), new SimpleMeterRegistry());
+		AtomicInteger loads = new AtomicInteger();
+
+		assertThat(disabled.getETag("user-a")).isNull();
+		disabled.get("user-a", loader(loads, summary(1L, null)));
+		disabled.get("user-a", loader(loads, summary(1L, null)));
+		assertThat(loads).hasValue(2);
+	}
+
+	private static Supplier<List<FileSummary>> loader(AtomicInteger loads, FileSummary... files) {
+		return () -> {
+			loads.incrementAndGet();
+			return List.of(files);
+		};
+	}
+
+	private static FileSummary summary(Long id, LocalDateTime expiresAt) {
+		return new FileSummary(id, "file-" + id + ".txt", "text/plain", 10L, LocalDateTime.now(), "user-a", expiresAt);
+	}
+}
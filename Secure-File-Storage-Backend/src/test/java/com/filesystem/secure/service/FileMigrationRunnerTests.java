@@ -0,0 +1,97 @@
+package com.filesystem.secure.service;
+
+import com.filesystem.secure.model.MigrationCheckpoint;
+import com.filesystem.secure.repository.MigrationCheckpointRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.Limit;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.LongStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest
+class FileMigrationRunnerTests {
+
+	@Autowired
+	private MigrationCheckpointRepository checkpointRepository;
+
+	@Test
+	void passWithFailedFilesIsRetriedInsteadOfCompleted() throws Exception {
+		FlakyMigration migration = new FlakyMigration("flaky-test", 3);
+		FileMigrationRunner runner = new FileMigrationRunner(List.of(migration), checkpointRepository, 2,
+				DataSize.ofGigabytes(1), 1_000_000);
+
+		runner.start();
+		Map<String, Object> status = awaitState(runner, "failed");
+		assertThat(status).containsEntry("failedFiles", 1L);
+		assertThat(migration.pending).containsExactly(3L);
+
+		// The next run visits the failed file again and completes
+		runner.start();
+		status = awaitState(runner, "completed");
+		assertThat(status).containsEntry("failedFiles", 0L);
+		assertThat(migration.pending).isEmpty();
+		MigrationCheckpoint checkpoint = checkpointRepository.findById("flaky-test").orElseThrow();
+		assertThat(checkpoint.getProcessedFiles()).isEqualTo(5);
+	}
+
+	private static Map<String, Object> awaitState(FileMigrationRunner runner, String state) throws InterruptedException {
+		long deadline = System.nanoTime() + Duration.ofSeconds(10).toNanos();
+		while (System.nanoTime() < deadline) {
+			Map<String, Object> status = runner.getStatus().get(0);
+			if (state.equals(status.get("state"))) {
+				return status;
+			}
+			Thread.sleep(20);
+		}
+		throw new AssertionError("Migration did not reach state " + state);
+	}
+
+	/**
+	 * Migrates files 1 to 5, failing once on the given file
+	 */
+	private static class FlakyMigration implements FileMigration {
+		private final String name;
+		private final Set<Long> pending = ConcurrentHashMap.newKeySet();
+		private volatile long failOnce;
+
+		FlakyMigration(String name, long failOnce) {
+			this.name = name;
+			this.failOnce = failOnce;
+			LongStream.rangeClosed(1, 5).forEach(pending::add);
+		}
+
+		@Override
+		public String getName() {
+			return name;
+		}
+
+		@Override
+		public List<Long> findPendingIds(Long afterId, Limit limit) {
+			return pending.stream().filter(id -> id > afterId).sorted().limit(limit.max()).toList();
+		}
+
+		@Override
+		public long countPending() {
+			return pending.size();
+		}
+
+		@Override
+		public long migrate(Long fileId) {
+			if (fileId == failOnce) {
+				failOnce = 0;
+				throw new IllegalStateException("Failed to migrate file ID: " + fileId);
+			}
+			pending.remove(fileId);
+			return 0;
+		}
+	}
+}
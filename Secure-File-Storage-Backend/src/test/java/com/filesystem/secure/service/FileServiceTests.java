@@ -0,0 +1,186 @@
+package com.filesystem.secure.service;
+
+import com.filesystem.secure.model.SecureFile;
+import com.filesystem.secure.repository.SecureFileRepository;
+import com.filesystem.secure.storage.BlobStore;
+import org.hibernate.Hibernate;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.mock.web.MockMultipartFile;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@SpringBootTest
+class FileServiceTests {
+
+	private static final String USER_ID = "file-service-tests";
+
+	@Autowired
+	private FileService fileService;
+
+	@Autowired
+	private EncryptionService encryptionService;
+
+	@Autowired
+	private SecureFileRepository fileRepository;
+
+	@Autowired
+	private BlobStore blobStore;
+
+	@Autowired
+	private JdbcTemplate jdbcTemplate;
+
+	@Test
+	void uploadStoresOnlyTheHashOfTheDownloadKey() throws Exception {
+		SecureFile file = upload("hashed.txt", "hashed content");
+
+		assertThat(file.getDownloadKey()).isNotBlank();
+		Map<String, Object> row = jdbcTemplate.queryForMap(
+				"select download_key, download_key_hash from secure_files where id = ?", file.getId());
+		assertThat(row.get("download_key")).isNull();
+		assertThat(row.get("download_key_hash")).isEqualTo(encryptionService.hashDownloadKey(file.getDownloadKey()));
+	}
+
+	@Test
+	void downloadKeyIsCheckedAgainstItsHash() throws Exception {
+		SecureFile file = upload("checked.txt", "checked content");
+
+		assertThat(fileService.getFileAccess(file.getId(), file.getDownloadKey()).getId()).isEqualTo(file.getId());
+		assertThatThrownBy(() -> fileService.getFileAccess(file.getId(), file.getDownloadKey() + "x"))
+				.isInstanceOf(IllegalArgumentException.class);
+		assertThatThrownBy(() -> fileService.getFileAccess(file.getId(), null))
+				.isInstanceOf(IllegalArgumentException.class);
+	}
+
+	@Test
+	void legacyRowsAreCheckedAgainstTheirPlaintextKey() throws Exception {
+		SecureFile file = upload("legacy.txt", "legacy content");
+		jdbcTemplate.update("update secure_files set download_key = ?, download_key_hash = null where id = ?",
+				"LEGACY", file.getId());
+
+		assertThat(fileService.getFileAccess(file.getId(), "LEGACY").getId()).isEqualTo(file.getId());
+		assertThatThrownBy(() -> fileService.getFileAccess(file.getId(), "LEGACX"))
+				.isInstanceOf(IllegalArgumentException.class);
+		assertThatThrownBy(() -> fileService.getFileAccess(file.getId(), file.getDownloadKey()))
+				.isInstanceOf(IllegalArgumentException.class);
+	}
+
+	@Test
+	void loadingAFileLeavesOutItsLob() throws Exception {
+		SecureFile file = upload("lob.txt", "lob content");
+		makeLegacy(file, "legacy lob content");
+
+		SecureFile loaded = fileRepository.findById(file.getId()).orElseThrow();
+		assertThat(Hibernate.isPropertyInitialized(loaded, "encryptedData")).isFalse();
+		assertThat(Hibernate.isPropertyInitialized(loaded, "encryptionIv")).isTrue();
+	}
+
+	@Test
+	void legacyLobContentIsStillDownloaded() throws Exception {
+		SecureFile file = upload("lob-download.txt", "replaced content");
+		makeLegacy(file, "legacy lob content");
+
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		fileService.openDownload(file.getId(), file.getDownloadKey(), USER_ID).writeTo(out);
+		assertThat(out.toString(StandardCharsets.UTF_8)).isEqualTo("legacy lob content");
+	}
+
+	@Test
+	void batchDuplicatesShareABlobUntilTheLastOneIsDeleted() throws Exception {
+		byte[] content = randomBytes(5000);
+		List<SecureFile> files = fileService.uploadFiles(List.of(
+				new MockMultipartFile("files", "copy-1.bin", "application/octet-stream", content),
+				new MockMultipartFile("files", "other.bin", "application/octet-stream", randomBytes(5000)),
+				new MockMultipartFile("files", "copy-2.bin", "application/octet-stream", content)), USER_ID, null);
+		SecureFile first = files.get(0);
+		SecureFile second = files.get(2);
+		String blobId = first.getBlobId();
+		assertThat(second.getBlobId()).isEqualTo(blobId);
+		assertThat(files.get(1).getBlobId()).isNotEqualTo(blobId);
+		assertThat(fileRepository.countByBlobId(blobId)).isEqualTo(2);
+
+		fileService.deleteFile(first.getId(), first.getDownloadKey(), USER_ID);
+		assertThat(blobStore.exists(blobId)).isTrue();
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		fileService.openDownload(second.getId(), second.getDownloadKey(), USER_ID).writeTo(out);
+		assertThat(out.toByteArray()).isEqualTo(content);
+
+		fileService.deleteFile(second.getId(), second.getDownloadKey(), USER_ID);
+		assertThat(fileRepository.countByBlobId(blobId)).isZero();
+		assertThat(blobStore.exists(blobId)).isFalse();
+	}
+
+	@Test
+	void concurrentUploadsAndDeletesOfTheSameContentNeverLoseAReferencedBlob() throws Exception {
+		byte[] content = randomBytes(5000);
+		Set<String> blobIds = ConcurrentHashMap.newKeySet();
+		List<Callable<Void>> tasks = new ArrayList<>();
+		for (int i = 0; i < 8; i++) {
+			String name = "churn-" + i + ".bin";
+			tasks.add(() -> {
+				for (int round = 0; round < 10; round++) {
+					// Either deduplicated against a record another thread is deleting, or stored anew
+					SecureFile file = fileService.uploadFile(new MockMultipartFile("file", name,
+							"application/octet-stream", content), USER_ID);
+					blobIds.add(file.getBlobId());
+					ByteArrayOutputStream out = new ByteArrayOutputStream();
+					fileService.openDownload(file.getId(), file.getDownloadKey(), USER_ID).writeTo(out);
+					assertThat(out.toByteArray()).isEqualTo(content);
+					fileService.deleteFile(file.getId(), file.getDownloadKey(), USER_ID);
+				}
+				return null;
+			});
+		}
+
+		ExecutorService executor = Executors.newFixedThreadPool(8);
+		try {
+			for (Future<Void> result : executor.invokeAll(tasks)) {
+				result.get();
+			}
+		} finally {
+			executor.shutdown();
+		}
+
+		assertThat(blobIds).allSatisfy(blobId -> {
+			assertThat(fileRepository.countByBlobId(blobId)).isZero();
+			assertThat(blobStore.exists(blobId)).isFalse();
+		});
+	}
+
+	/**
+	 * Turns a file back into a row from before the blob store, with single-shot ciphertext in its LOB
+	 */
+	private void makeLegacy(SecureFile file, String content) throws Exception {
+		EncryptionService.EncryptionResult encrypted = encryptionService.encrypt(content.getBytes(StandardCharsets.UTF_8));
+		jdbcTemplate.update("update secure_files set encrypted_data = ?, encryption_iv = ?, file_size = ?, blob_id = null, "
+						+ "segment_size = null, wrapped_data_key = null, key_version = null, compression_codec = null where id = ?",
+				encrypted.getEncryptedData(), encrypted.getIv(), content.length(), file.getId());
+	}
+
+	private SecureFile upload(String name, String content) throws Exception {
+		return fileService.uploadFile(new MockMultipartFile("file", name, "text/plain",
+				content.getBytes(StandardCharsets.UTF_8)), USER_ID);
+	}
+
+	private static byte[] randomBytes(int length) {
+		byte[] bytes = new byte[length];
+		new Random().nextBytes(bytes);
+		return bytes;
+	}
+}
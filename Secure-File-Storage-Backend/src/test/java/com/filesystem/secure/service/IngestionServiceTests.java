@@ -0,0 +1,145 @@
+package com.filesystem.secure.service;
+
+import com.filesystem.secure.repository.SecureFileRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.util.LinkedMultiValueMap;
+import org.springframework.util.MultiValueMap;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = {
+		"ingest.async.enabled=true",
+		"ingest.workers=2",
+		"ingest.queue-capacity=4",
+		"limits.storage-quota=4KB"
+})
+class IngestionServiceTests {
+
+	@Autowired
+	private IngestionService ingestionService;
+
+	@Autowired
+	private FileService fileService;
+
+	@Autowired
+	private SecureFileRepository fileRepository;
+
+	@Autowired
+	private TestRestTemplate restTemplate;
+
+	@Test
+	void failedJobLeavesTheOthersAndNothingBehind() throws Exception {
+		IngestionService.IngestJob first = ingestionService.submit(file("first.bin", 1000, 1), "ingest-small");
+		IngestionService.IngestJob tooLarge = ingestionService.submit(file("large.bin", 8000, 2), "ingest-large");
+		IngestionService.IngestJob second = ingestionService.submit(file("second.bin", 1000, 3), "ingest-small");
+
+		assertThat(await(first, "ingest-small").getStatus()).isEqualTo(IngestionService.IngestStatus.COMPLETED);
+		assertThat(await(second, "ingest-small").getStatus()).isEqualTo(IngestionService.IngestStatus.COMPLETED);
+		IngestionService.IngestJob failed = await(tooLarge, "ingest-large");
+		assertThat(failed.getStatus()).isEqualTo(IngestionService.IngestStatus.FAILED);
+		assertThat(failed.getError()).contains("quota");
+		assertThat(failed.getFile()).isNull();
+
+		assertThat(fileRepository.sumFileSizeByUserId("ingest-large")).isZero();
+		assertThat(download(second.getFile().getId(), second.getFile().getDownloadKey(), "ingest-small"))
+				.isEqualTo(file("second.bin", 1000, 3).getBytes());
+		assertThat(spooledFiles()).isEmpty();
+	}
+
+	@Test
+	void failedUploadIsRetriedAsANewJob() throws Exception {
+		IngestionService.IngestJob failed = await(ingestionService.submit(file("retry.bin", 8000, 4), "ingest-retry"),
+				"ingest-retry");
+		assertThat(failed.getStatus()).isEqualTo(IngestionService.IngestStatus.FAILED);
+
+		IngestionService.IngestJob retried = await(ingestionService.submit(file("retry.bin", 2000, 4), "ingest-retry"),
+				"ingest-retry");
+		assertThat(retried.getId()).isNotEqualTo(failed.getId());
+		assertThat(retried.getStatus()).isEqualTo(IngestionService.IngestStatus.COMPLETED);
+		assertThat(fileRepository.sumFileSizeByUserId("ingest-retry")).isEqualTo(2000);
+	}
+
+	@Test
+	void emptyUploadIsRefusedWithoutAJob() {
+		assertThatThrownBy(() -> ingestionService.submit(file("empty.bin", 0, 5), "ingest-empty"))
+				.isInstanceOf(IllegalArgumentException.class);
+		assertThat(spooledFiles()).isEmpty();
+	}
+
+	@Test
+	void jobIsSubmittedAndPolledOverHttp() throws Exception {
+		MultiValueMap<String, Object> body = new LinkedMultiValueMap<>();
+		body.add("file", new ByteArrayResource(file("http.bin", 500, 6).getBytes()) {
+			@Override
+			public String getFilename() {
+				return "http.bin";
+			}
+		});
+
+		ResponseEntity<Map> submitted = restTemplate.postForEntity("/api/files/ingest?userId={userId}", body, Map.class,
+				"ingest-http");
+		assertThat(submitted.getStatusCode()).isEqualTo(HttpStatus.ACCEPTED);
+		assertThat(submitted.getHeaders().getLocation()).isNotNull();
+		String ingestId = (String) submitted.getBody().get("ingestId");
+
+		await(ingestionService.getJob(ingestId, "ingest-http"), "ingest-http");
+		ResponseEntity<Map> polled = restTemplate.getForEntity(submitted.getHeaders().getLocation() + "?userId={userId}",
+				Map.class, "ingest-http");
+		assertThat(polled.getBody()).containsEntry("status", "COMPLETED");
+		assertThat(((Map<?, ?>) polled.getBody().get("file")).get("size")).isEqualTo(500);
+
+		ResponseEntity<Map> foreign = restTemplate.getForEntity(submitted.getHeaders().getLocation() + "?userId={userId}",
+				Map.class, "someone-else");
+		assertThat(foreign.getStatusCode()).isEqualTo(HttpStatus.FORBIDDEN);
+	}
+
+	private IngestionService.IngestJob await(IngestionService.IngestJob job, String userId) throws InterruptedException {
+		long deadline = System.nanoTime() + Duration.ofSeconds(10).toNanos();
+		while (System.nanoTime() < deadline) {
+			IngestionService.IngestJob polled = ingestionService.getJob(job.getId(), userId);
+			if (polled.getStatus() == IngestionService.IngestStatus.COMPLETED
+					|| polled.getStatus() == IngestionService.IngestStatus.FAILED) {
+				return polled;
+			}
+			Thread.sleep(10);
+		}
+		throw new AssertionError("Ingest job " + job.getId() + " did not finish");
+	}
+
+	private byte[] download(Long fileId, String downloadKey, String userId) throws Exception {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		fileService.openDownload(fileId, downloadKey, userId).writeTo(out);
+		return out.toByteArray();
+	}
+
+	private static List<Path> spooledFiles() {
+		try (Stream<Path> files = Files.list(Path.of("target/test-data/spool"))) {
+			return files.toList();
+		} catch (Exception e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private static MockMultipartFile file(String name, int length, long seed) {
+		byte[] content = new byte[length];
+		new Random(seed).nextBytes(content);
+		return new MockMultipartFile("file", name, "application/octet-stream", content);
+	}
+}
@@ -0,0 +1,59 @@
+package com.filesystem.secure.service;
+
+import com.filesystem.secure.keys.KeyEncryptionKeyStore;
+import com.filesystem.secure.model.SecureFile;
+import com.filesystem.secure.model.UploadSession;
+import com.filesystem.secure.repository.UploadSessionRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest
+class KeyRotationServiceTests {
+
+	private static final String USER_ID = "key-rotation-tests";
+
+	@Autowired
+	private KeyRotationService keyRotationService;
+
+	@Autowired
+	private KeyEncryptionKeyStore keyStore;
+
+	@Autowired
+	private UploadSessionService uploadSessionService;
+
+	@Autowired
+	private UploadSessionRepository sessionRepository;
+
+	@Autowired
+	private FileService fileService;
+
+	@Test
+	void uploadSessionKeysAreRewrapped() throws Exception {
+		byte[] content = new byte[4000];
+		new Random(7).nextBytes(content);
+		UploadSession session = uploadSessionService.initiate(USER_ID, "rotated.bin", null, content.length);
+
+		int version = keyStore.rotate();
+		keyRotationService.rewrapDataKeys();
+
+		UploadSession rewrapped = sessionRepository.findById(session.getId()).orElseThrow();
+		assertThat(rewrapped.getKeyVersion()).isEqualTo(version);
+		assertThat(rewrapped.getWrappedDataKey()).isNotEqualTo(session.getWrappedDataKey());
+		assertThat(keyRotationService.countPending()).isZero();
+
+		// Chunks are still encrypted with the same data key, now unwrapped with the new version
+		uploadSessionService.uploadChunk(session.getId(), USER_ID, 0, new ByteArrayInputStream(content));
+		SecureFile file = uploadSessionService.complete(session.getId(), USER_ID);
+		assertThat(file.getKeyVersion()).isEqualTo(version);
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		fileService.openDownload(file.getId(), file.getDownloadKey(), USER_ID).writeTo(out);
+		assertThat(out.toByteArray()).isEqualTo(content);
+	}
+}
@@ -0,0 +1,119 @@
+package com.filesystem.secure.service;
+
+import com.filesystem.secure.model.SecureFile;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.mock.web.MockMultipartFile;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// A database and blob store of its own, so no other test context's scrub shares the checkpoint or the blobs
+@SpringBootTest(properties = {
+		"spring.datasource.url=jdbc:h2:mem:scrub-tests;DB_CLOSE_DELAY=-1;DB_CLOSE_ON_EXIT=FALSE",
+		"storage.local.root=target/test-data/scrub-blobs",
+		"scrub.max-files-per-second=1000",
+		"scrub.max-bytes-per-second=1GB"
+})
+class ScrubServiceTests {
+
+	private static final String USER_ID = "scrub-tests";
+	private static final Path BLOB_ROOT = Path.of("target/test-data/scrub-blobs");
+
+	@Autowired
+	private ScrubService scrubService;
+
+	@Autowired
+	private FileService fileService;
+
+	@Autowired
+	private MeterRegistry registry;
+
+	@Test
+	void corruptAndMissingBlobsAreReported() throws Exception {
+		SecureFile intact = upload("intact.bin");
+		SecureFile corrupt = upload("corrupt.bin");
+		SecureFile missing = upload("missing.bin");
+
+		// Flips one byte in the middle of the ciphertext
+		try (FileChannel channel = FileChannel.open(blobPath(corrupt.getBlobId()), StandardOpenOption.READ,
+				StandardOpenOption.WRITE)) {
+			ByteBuffer single = ByteBuffer.allocate(1);
+			long position = channel.size() / 2;
+			channel.read(single, position);
+			single.put(0, (byte) (single.get(0) ^ 0x01)).rewind();
+			channel.write(single, position);
+		}
+		Files.delete(blobPath(missing.getBlobId()));
+		double corruptBefore = filesCounted("corrupt");
+
+		scrubService.requestNewPass();
+		List<ScrubService.Finding> findings = awaitFindings(2);
+
+		assertThat(findings).extracting(ScrubService.Finding::getFileId)
+				.containsExactlyInAnyOrder(corrupt.getId(), missing.getId())
+				.doesNotContain(intact.getId());
+		assertThat(findings).filteredOn(finding -> finding.getFileId().equals(corrupt.getId()))
+				.singleElement()
+				.satisfies(finding -> {
+					assertThat(finding.getProblem()).isEqualTo(ScrubService.Problem.CORRUPT);
+					assertThat(finding.getBlobId()).isEqualTo(corrupt.getBlobId());
+					assertThat(finding.getUserId()).isEqualTo(USER_ID);
+				});
+		assertThat(findings).filteredOn(finding -> finding.getFileId().equals(missing.getId()))
+				.singleElement()
+				.extracting(ScrubService.Finding::getProblem)
+				.isEqualTo(ScrubService.Problem.MISSING);
+		assertThat(filesCounted("corrupt")).isEqualTo(corruptBefore + 1);
+	}
+
+	/**
+	 * Waits for the findings of the requested pass, reported under the previous pass once it has completed
+	 */
+	@SuppressWarnings("unchecked")
+	private List<ScrubService.Finding> awaitFindings(int expected) throws InterruptedException {
+		long deadline = System.nanoTime() + Duration.ofSeconds(10).toNanos();
+		while (System.nanoTime() < deadline) {
+			Map<String, Object> status = scrubService.getStatus();
+			List<ScrubService.Finding> findings = new ArrayList<>((List<ScrubService.Finding>) status.get("findings"));
+			if (status.get("completedAt") != null) {
+				findings.addAll((List<ScrubService.Finding>) status.get("previousPassFindings"));
+			}
+			if (findings.size() >= expected) {
+				return findings;
+			}
+			Thread.sleep(20);
+		}
+		throw new AssertionError("Scrub did not report " + expected + " findings: " + scrubService.getStatus());
+	}
+
+	private double filesCounted(String result) {
+		var counter = registry.find("scrub.files").tag("result", result).counter();
+		return counter == null ? 0 : counter.count();
+	}
+
+	private static Path blobPath(String blobId) {
+		return BLOB_ROOT.resolve(blobId.substring(0, 2)).resolve(blobId.substring(2, 4)).resolve(blobId);
+	}
+
+	/**
+	 * Uploads content of its own, as blobs are shared by identical content and outlive the test database
+	 */
+	private SecureFile upload(String name) throws Exception {
+		byte[] content = new byte[4096];
+		new Random().nextBytes(content);
+		return fileService.uploadFile(new MockMultipartFile("file", name, "application/octet-stream", content), USER_ID);
+	}
+}
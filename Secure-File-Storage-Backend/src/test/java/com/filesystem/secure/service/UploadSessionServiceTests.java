@@ -0,0 +1,143 @@
+package com.filesystem.secure.service;
+
+import com.filesystem.secure.model.SecureFile;
+import com.filesystem.secure.model.UploadSession;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+// Small chunks and segments, so a few kilobytes span several chunks; a database of its own for the different context
+@SpringBootTest(properties = {
+		"spring.datasource.url=jdbc:h2:mem:upload-session-tests;DB_CLOSE_DELAY=-1;DB_CLOSE_ON_EXIT=FALSE",
+		"encryption.segment-size=1024",
+		"uploads.chunk-size=2KB"
+})
+class UploadSessionServiceTests {
+
+	private static final String USER_ID = "upload-session-tests";
+
+	@Autowired
+	private UploadSessionService uploadSessionService;
+
+	@Autowired
+	private FileService fileService;
+
+	@Test
+	void chunksCompleteIntoTheUploadedFile() throws Exception {
+		byte[] content = randomBytes(5000, 4);
+		UploadSession session = uploadSessionService.initiate(USER_ID, "whole.bin", null, content.length);
+		assertThat(session.getChunkCount()).isEqualTo(3);
+
+		for (int index : new int[]{2, 0, 1}) {
+			uploadChunk(session, index, content);
+		}
+		assertThat(uploadSessionService.getReceivedChunks(session)).isEqualTo(List.of(0, 1, 2));
+
+		SecureFile file = uploadSessionService.complete(session.getId(), USER_ID);
+		assertThat(download(file)).isEqualTo(content);
+	}
+
+	@Test
+	void resentChunkReplacesThePreviousOne() throws Exception {
+		byte[] content = randomBytes(5000, 1);
+		UploadSession session = uploadSessionService.initiate(USER_ID, "resent.bin", null, content.length);
+
+		for (int index = 0; index < session.getChunkCount(); index++) {
+			uploadChunk(session, index, content);
+		}
+		byte[] changed = content.clone();
+		Arrays.fill(changed, 2048, 4096, (byte) 7);
+		uploadChunk(session, 1, changed);
+
+		SecureFile file = uploadSessionService.complete(session.getId(), USER_ID);
+		assertThat(download(file)).isEqualTo(changed);
+	}
+
+	@Test
+	void chunkOfAFailedAttemptCanBeSentAgain() throws Exception {
+		byte[] content = randomBytes(3000, 3);
+		UploadSession session = uploadSessionService.initiate(USER_ID, "failed.bin", null, content.length);
+		uploadChunk(session, 1, content);
+
+		// Too short, so the attempt fails after the chunk was claimed and partly encrypted
+		assertThatThrownBy(() -> uploadSessionService.uploadChunk(session.getId(), USER_ID, 0,
+				new ByteArrayInputStream(content, 0, 1000)))
+				.isInstanceOf(IllegalArgumentException.class);
+		assertThat(uploadSessionService.getReceivedChunks(session)).isEqualTo(List.of(1));
+		assertThatThrownBy(() -> uploadSessionService.complete(session.getId(), USER_ID))
+				.isInstanceOf(IllegalStateException.class);
+
+		uploadChunk(session, 0, content);
+		SecureFile file = uploadSessionService.complete(session.getId(), USER_ID);
+		assertThat(download(file)).isEqualTo(content);
+	}
+
+	@Test
+	void chunkBeingSentCannotBeSentAgain() throws Exception {
+		byte[] content = randomBytes(3000, 5);
+		UploadSession session = uploadSessionService.initiate(USER_ID, "in-flight.bin", null, content.length);
+		CountDownLatch reading = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+		CompletableFuture<Void> first = CompletableFuture.runAsync(() -> {
+			try {
+				uploadSessionService.uploadChunk(session.getId(), USER_ID, 0,
+						new FilterInputStream(new ByteArrayInputStream(content, 0, 2048)) {
+							@Override
+							public int read(byte[] b, int off, int len) throws IOException {
+								reading.countDown();
+								try {
+									release.await();
+								} catch (InterruptedException e) {
+									throw new IOException(e);
+								}
+								return super.read(b, off, len);
+							}
+						});
+			} catch (Exception e) {
+				throw new RuntimeException(e);
+			}
+		});
+		assertThat(reading.await(10, TimeUnit.SECONDS)).isTrue();
+
+		assertThatThrownBy(() -> uploadChunk(session, 0, content))
+				.isInstanceOf(IllegalStateException.class);
+		release.countDown();
+		first.get(10, TimeUnit.SECONDS);
+
+		uploadChunk(session, 1, content);
+		SecureFile file = uploadSessionService.complete(session.getId(), USER_ID);
+		assertThat(download(file)).isEqualTo(content);
+	}
+
+	private void uploadChunk(UploadSession session, int index, byte[] content) throws Exception {
+		int offset = index * session.getChunkSize();
+		uploadSessionService.uploadChunk(session.getId(), USER_ID, index,
+				new ByteArrayInputStream(content, offset, (int) session.getChunkLength(index)));
+	}
+
+	private byte[] download(SecureFile file) throws Exception {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		fileService.openDownload(file.getId(), file.getDownloadKey(), USER_ID).writeTo(out);
+		return out.toByteArray();
+	}
+
+	private static byte[] randomBytes(int length, long seed) {
+		byte[] bytes = new byte[length];
+		new Random(seed).nextBytes(bytes);
+		return bytes;
+	}
+}
@@ -1,6 +1,19 @@
 // API service for connecting to the backend
 const API_BASE_URL = 'https://secure-file-storage-29sa.onrender.com/api/files';
 
+// The server only keeps a hash of each download key and returns the key once, from the upload,
+// so keys are remembered in this browser to fill in the listings
+const DOWNLOAD_KEY_PREFIX = 'downloadKey:';
+
+const rememberDownloadKey = (fileId, downloadKey) => {
+  localStorage.setItem(`${DOWNLOAD_KEY_PREFIX}${fileId}`, downloadKey);
+};
+
+const withDownloadKeys = (files) => files.map(file => ({
+  ...file,
+  downloadKey: file.downloadKey || localStorage.getItem(`${DOWNLOAD_KEY_PREFIX}${file.id}`)
+}));
+
 // Get all files
 export const getAllFiles = async () => {
   try {
@@ -22,7 +35,7 @@ export const getFilesByUserId = async (userId) => {
     if (!response.ok) {
       throw new Error(`Error: ${response.status}`);
     }
-    return await response.json();
+    return withDownloadKeys(await response.json());
   } catch (error) {
     console.error('Error fetching files for user:', error);
     throw error;
@@ -34,9 +47,8 @@ export const uploadFile = async (file, userId) => {
   try {
     const formData = new FormData();
     formData.append('file', file);
-    formData.append('userId', userId);
 
-    const response = await fetch(`${API_BASE_URL}/upload`, {
+    const response = await fetch(`${API_BASE_URL}/upload?userId=${encodeURIComponent(userId)}`, {
       method: 'POST',
       body: formData,
     });
@@ -44,7 +56,9 @@ export const uploadFile = async (file, userId) => {
     if (!response.ok) {
       throw new Error(`Error: ${response.status}`);
     }
-    return await response.json();
+    const uploaded = await response.json();
+    rememberDownloadKey(uploaded.id, uploaded.downloadKey);
+    return uploaded;
   } catch (error) {
     console.error('Error uploading file:', error);
     throw error;